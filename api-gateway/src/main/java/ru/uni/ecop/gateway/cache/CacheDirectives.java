@@ -0,0 +1,56 @@
+package ru.uni.ecop.gateway.cache;
+
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * The subset of upstream Cache-Control directives that matters to a shared cache
+ */
+public record CacheDirectives(boolean noStore, boolean noCache, boolean privateResponse, Duration maxAge) {
+
+    public static CacheDirectives from(HttpHeaders headers) {
+        boolean noStore = false;
+        boolean noCache = false;
+        boolean privateResponse = false;
+        Duration maxAge = null;
+        Duration sharedMaxAge = null;
+
+        for (String value : headers.getOrEmpty(HttpHeaders.CACHE_CONTROL)) {
+            for (String directive : value.split(",")) {
+                String name = directive.trim().toLowerCase(Locale.ROOT);
+                if (name.equals("no-store")) {
+                    noStore = true;
+                } else if (name.startsWith("no-cache")) {
+                    noCache = true;
+                } else if (name.startsWith("private")) {
+                    privateResponse = true;
+                } else if (name.startsWith("s-maxage=")) {
+                    sharedMaxAge = parseSeconds(name.substring("s-maxage=".length()));
+                } else if (name.startsWith("max-age=")) {
+                    maxAge = parseSeconds(name.substring("max-age=".length()));
+                }
+            }
+        }
+        return new CacheDirectives(noStore, noCache, privateResponse, sharedMaxAge != null ? sharedMaxAge : maxAge);
+    }
+
+    /**
+     * Freshness lifetime: no-cache means always revalidate, an explicit max-age wins over the route default
+     */
+    public Duration freshness(Duration defaultTtl) {
+        if (noCache) {
+            return Duration.ZERO;
+        }
+        return maxAge != null ? maxAge : defaultTtl;
+    }
+
+    private static Duration parseSeconds(String value) {
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.replace("\"", "").trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
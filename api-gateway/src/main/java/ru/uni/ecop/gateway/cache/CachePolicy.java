@@ -0,0 +1,104 @@
+package ru.uni.ecop.gateway.cache;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Per-route caching rules: default freshness when upstream sends no max-age, how long
+ * an expired entry may still be revalidated or served (stale-while-revalidate,
+ * stale-if-error), and whether private responses may be stored (only safe when
+ * entries are keyed per user).
+ */
+public record CachePolicy(Duration ttl,
+                          Duration revalidationWindow,
+                          Duration staleWhileRevalidate,
+                          Duration staleIfError,
+                          boolean privateAllowed) {
+
+    // Describe a single connection, never replayed to another client
+    private static final List<String> HOP_BY_HOP_HEADERS = List.of(
+        HttpHeaders.CONNECTION,
+        "Keep-Alive",
+        HttpHeaders.PROXY_AUTHENTICATE,
+        HttpHeaders.PROXY_AUTHORIZATION,
+        HttpHeaders.TE,
+        HttpHeaders.TRAILER,
+        HttpHeaders.TRANSFER_ENCODING,
+        HttpHeaders.UPGRADE
+    );
+
+    /**
+     * Cache entry for an upstream response, or null when upstream forbids storing it.
+     * Responses setting cookies are never stored, a cookie belongs to the client it was sent to.
+     */
+    public CachedResponse createEntry(HttpStatusCode status, HttpHeaders responseHeaders, ByteBuffer body) {
+        if (!status.is2xxSuccessful()) {
+            return null;
+        }
+        CacheDirectives directives = CacheDirectives.from(responseHeaders);
+        if (directives.noStore()
+            || (directives.privateResponse() && !privateAllowed)
+            || responseHeaders.getVary().contains("*")
+            || responseHeaders.containsKey(HttpHeaders.SET_COOKIE)) {
+            return null;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(responseHeaders);
+        // Headers listed in Connection are hop-by-hop as well
+        for (String value : responseHeaders.getOrEmpty(HttpHeaders.CONNECTION)) {
+            for (String name : value.split(",")) {
+                headers.remove(name.trim());
+            }
+        }
+        HOP_BY_HOP_HEADERS.forEach(headers::remove);
+        headers.setContentLength(body.remaining());
+        if (headers.getETag() == null) {
+            // Lets clients revalidate against the gateway even if upstream sends no validator
+            headers.setETag(computeETag(body));
+        }
+
+        long expiryTime = expiryTime(System.currentTimeMillis(), directives);
+        return new CachedResponse(status, headers, body, expiryTime, retainUntil(expiryTime));
+    }
+
+    public long expiryTime(long now, CacheDirectives directives) {
+        return now + directives.freshness(ttl).toMillis();
+    }
+
+    public long retainUntil(long expiryTime) {
+        Duration retention = revalidationWindow;
+        if (staleWhileRevalidate.compareTo(retention) > 0) {
+            retention = staleWhileRevalidate;
+        }
+        if (staleIfError.compareTo(retention) > 0) {
+            retention = staleIfError;
+        }
+        return expiryTime + retention.toMillis();
+    }
+
+    public boolean canServeWhileRevalidating(CachedResponse entry) {
+        return System.currentTimeMillis() <= entry.getExpiryTime() + staleWhileRevalidate.toMillis();
+    }
+
+    public boolean canServeOnError(CachedResponse entry) {
+        return System.currentTimeMillis() <= entry.getExpiryTime() + staleIfError.toMillis();
+    }
+
+    private static String computeETag(ByteBuffer body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            digest.update(body.duplicate());
+            return "\"" + HexFormat.of().formatHex(digest.digest()) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ru.uni.ecop.gateway.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.config.ResponseCacheProperties;
+import ru.uni.ecop.gateway.security.IdentityHeaders;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Refreshes a stale entry outside of any client request, for stale-while-revalidate.
+ * Calls the route's upstream directly with the headers the entry depends on and a
+ * conditional request when the entry has a validator. There is no verified user to
+ * forward, the call carries the gateway's service identity instead.
+ */
+@Component
+@Slf4j
+public class CacheRefresher {
+
+    // Request headers that can change what upstream returns for the same URI
+    private static final List<String> FORWARDED_HEADERS = List.of(
+        HttpHeaders.AUTHORIZATION,
+        HttpHeaders.ACCEPT,
+        HttpHeaders.ACCEPT_LANGUAGE
+    );
+
+    private final WebClient webClient;
+    private final ResponseCacheProperties properties;
+    private final IdentityHeaders identityHeaders;
+
+    public CacheRefresher(WebClient.Builder loadBalancedWebClientBuilder, ResponseCacheProperties properties,
+                          IdentityHeaders identityHeaders) {
+        this.webClient = loadBalancedWebClientBuilder.build();
+        this.properties = properties;
+        this.identityHeaders = identityHeaders;
+    }
+
+    /**
+     * Fresh copy of the stale entry, or empty when upstream returned something not cacheable
+     */
+    public Mono<CachedResponse> refresh(URI routeUri, ServerHttpRequest request, CachedResponse stale, CachePolicy policy) {
+        // lb://service-id routes resolve through the load-balanced client as http://service-id
+        URI target = UriComponentsBuilder.fromUri(routeUri)
+            .scheme("lb".equals(routeUri.getScheme()) ? "http" : routeUri.getScheme())
+            .replacePath(request.getURI().getRawPath())
+            .replaceQuery(request.getURI().getRawQuery())
+            .build(true)
+            .toUri();
+
+        return webClient.get()
+            .uri(target)
+            .headers(headers -> {
+                for (String name : FORWARDED_HEADERS) {
+                    copyHeader(request, headers, name);
+                }
+                for (String name : stale.getHeaders().getVary()) {
+                    copyHeader(request, headers, name);
+                }
+                String identity = identityHeaders.encodeService(Instant.now());
+                if (identity != null) {
+                    headers.set(identityHeaders.getHeaderName(), identity);
+                }
+                if (stale.getHeaders().getETag() != null) {
+                    headers.setIfNoneMatch(stale.getHeaders().getETag());
+                }
+                if (stale.getHeaders().getLastModified() != -1) {
+                    headers.setIfModifiedSince(stale.getHeaders().getLastModified());
+                }
+            })
+            .exchangeToMono(response -> toCachedResponse(response, stale, policy));
+    }
+
+    private Mono<CachedResponse> toCachedResponse(ClientResponse response, CachedResponse stale, CachePolicy policy) {
+        HttpHeaders headers = response.headers().asHttpHeaders();
+        if (response.statusCode().value() == HttpStatus.NOT_MODIFIED.value()) {
+            long expiryTime = policy.expiryTime(System.currentTimeMillis(), CacheDirectives.from(headers));
+            return response.releaseBody()
+                .then(Mono.fromSupplier(() -> stale.revalidated(headers, expiryTime, policy.retainUntil(expiryTime))));
+        }
+        if (!response.statusCode().is2xxSuccessful()) {
+            log.debug("Background refresh of {} got status {}", response.request().getURI(), response.statusCode());
+            return response.releaseBody().then(Mono.empty());
+        }
+
+        int maxEntrySize = (int) properties.getLocal().getMaxEntrySize().toBytes();
+        return DataBufferUtils.join(response.bodyToFlux(DataBuffer.class), maxEntrySize)
+            .map(CacheRefresher::copyToHeap)
+            .defaultIfEmpty(ByteBuffer.allocate(0))
+            .flatMap(body -> Mono.justOrEmpty(policy.createEntry(response.statusCode(), headers, body)))
+            // Too large to cache, same as in the request path
+            .onErrorResume(DataBufferLimitException.class, e -> Mono.empty());
+    }
+
+    private static ByteBuffer copyToHeap(DataBuffer buffer) {
+        try {
+            ByteBuffer body = ByteBuffer.allocate(buffer.readableByteCount());
+            try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                while (iterator.hasNext()) {
+                    body.put(iterator.next());
+                }
+            }
+            return body.flip();
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    private static void copyHeader(ServerHttpRequest request, HttpHeaders target, String name) {
+        List<String> values = request.getHeaders().get(name);
+        if (values != null) {
+            target.put(name, values);
+        }
+    }
+}
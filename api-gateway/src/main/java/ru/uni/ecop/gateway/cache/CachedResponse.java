@@ -0,0 +1,88 @@
+package ru.uni.ecop.gateway.cache;
+
+import lombok.Getter;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Immutable snapshot of an upstream response. The body is a read-only heap buffer
+ * that is shared by all replays, each replay wraps its own duplicate.
+ * The entry is served as is until expiryTime and kept for revalidation until retainUntil.
+ */
+@Getter
+public class CachedResponse {
+
+    // Headers an upstream 304 may update on the stored response
+    private static final List<String> REVALIDATED_HEADERS = List.of(
+        HttpHeaders.CACHE_CONTROL,
+        HttpHeaders.DATE,
+        HttpHeaders.ETAG,
+        HttpHeaders.EXPIRES,
+        HttpHeaders.LAST_MODIFIED,
+        HttpHeaders.VARY
+    );
+
+    private final HttpStatusCode status;
+    private final HttpHeaders headers;
+    private final ByteBuffer body;
+    private final long expiryTime;
+    private final long retainUntil;
+
+    public CachedResponse(HttpStatusCode status, HttpHeaders headers, ByteBuffer body, long expiryTime, long retainUntil) {
+        this.status = status;
+        this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+        this.body = body.asReadOnlyBuffer();
+        this.expiryTime = expiryTime;
+        this.retainUntil = Math.max(expiryTime, retainUntil);
+    }
+
+    public boolean isFresh() {
+        return System.currentTimeMillis() <= expiryTime;
+    }
+
+    public boolean isRetained() {
+        return System.currentTimeMillis() <= retainUntil;
+    }
+
+    public boolean hasValidator() {
+        return headers.getETag() != null || headers.getLastModified() != -1;
+    }
+
+    /**
+     * Same body with headers and lifetime taken from an upstream 304
+     */
+    public CachedResponse revalidated(HttpHeaders notModifiedHeaders, long expiryTime, long retainUntil) {
+        HttpHeaders merged = new HttpHeaders();
+        merged.putAll(headers);
+        for (String name : REVALIDATED_HEADERS) {
+            List<String> values = notModifiedHeaders.get(name);
+            if (values != null) {
+                merged.put(name, values);
+            }
+        }
+        return new CachedResponse(status, merged, body, expiryTime, retainUntil);
+    }
+
+    public DataBuffer bodyBuffer(DataBufferFactory bufferFactory) {
+        return bufferFactory.wrap(body.duplicate());
+    }
+
+    /**
+     * Approximate memory held by this entry, used to bound the cache by bytes
+     */
+    public int weight() {
+        int headerBytes = 0;
+        for (var header : headers.entrySet()) {
+            headerBytes += header.getKey().length();
+            for (String value : header.getValue()) {
+                headerBytes += value.length();
+            }
+        }
+        return body.capacity() + headerBytes;
+    }
+}
@@ -0,0 +1,108 @@
+package ru.uni.ecop.gateway.cache;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary layout for cached responses stored in Redis:
+ * version, status, expiry, retention, length-prefixed headers, then the raw body bytes.
+ */
+public class CachedResponseCodec implements RedisSerializer<CachedResponse> {
+
+    private static final byte VERSION = 2;
+
+    @Override
+    public byte[] serialize(CachedResponse value) {
+        if (value == null) {
+            return null;
+        }
+
+        List<byte[]> headerBytes = new ArrayList<>();
+        int size = 1 + 2 + 8 + 8 + 2;
+        for (Map.Entry<String, List<String>> header : value.getHeaders().entrySet()) {
+            byte[] name = header.getKey().getBytes(StandardCharsets.UTF_8);
+            headerBytes.add(name);
+            size += 2 + name.length + 2;
+            for (String headerValue : header.getValue()) {
+                byte[] bytes = headerValue.getBytes(StandardCharsets.UTF_8);
+                headerBytes.add(bytes);
+                size += 2 + bytes.length;
+            }
+        }
+        ByteBuffer body = value.getBody().duplicate();
+        size += 4 + body.remaining();
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put(VERSION);
+        out.putShort((short) value.getStatus().value());
+        out.putLong(value.getExpiryTime());
+        out.putLong(value.getRetainUntil());
+        out.putShort((short) value.getHeaders().size());
+        int index = 0;
+        for (Map.Entry<String, List<String>> header : value.getHeaders().entrySet()) {
+            putBytes(out, headerBytes.get(index++));
+            out.putShort((short) header.getValue().size());
+            for (int i = 0; i < header.getValue().size(); i++) {
+                putBytes(out, headerBytes.get(index++));
+            }
+        }
+        out.putInt(body.remaining());
+        out.put(body);
+        return out.array();
+    }
+
+    @Override
+    public CachedResponse deserialize(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            byte version = in.get();
+            if (version != VERSION) {
+                throw new SerializationException("Unsupported cached response version " + version);
+            }
+            HttpStatusCode status = HttpStatusCode.valueOf(in.getShort());
+            long expiryTime = in.getLong();
+            long retainUntil = in.getLong();
+
+            HttpHeaders headers = new HttpHeaders();
+            int headerCount = Short.toUnsignedInt(in.getShort());
+            for (int i = 0; i < headerCount; i++) {
+                String name = getString(in);
+                int valueCount = Short.toUnsignedInt(in.getShort());
+                for (int j = 0; j < valueCount; j++) {
+                    headers.add(name, getString(in));
+                }
+            }
+
+            int bodyLength = in.getInt();
+            ByteBuffer body = ByteBuffer.allocate(bodyLength);
+            body.put(in.slice(in.position(), bodyLength));
+            return new CachedResponse(status, headers, body.flip(), expiryTime, retainUntil);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new SerializationException("Truncated cached response", e);
+        }
+    }
+
+    private static void putBytes(ByteBuffer out, byte[] bytes) {
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[Short.toUnsignedInt(in.getShort())];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
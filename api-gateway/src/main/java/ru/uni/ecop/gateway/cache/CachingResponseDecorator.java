@@ -0,0 +1,156 @@
+package ru.uni.ecop.gateway.cache;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+/**
+ * Passes the upstream body through to the client unchanged while copying it once
+ * into a heap buffer, so a successful response can be cached after it completes.
+ * When a stale entry exists, an upstream 304 refreshes and replays it, and an upstream
+ * 5xx is replaced by the stale entry while the route's stale-if-error window allows.
+ */
+public class CachingResponseDecorator extends ServerHttpResponseDecorator {
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+    private static final ByteBuffer EMPTY_BODY = ByteBuffer.allocate(0);
+
+    private final int maxEntrySize;
+    private final CachePolicy policy;
+    private final CachedResponse stale;
+    private final Function<CachedResponse, Mono<Void>> staleWriter;
+    private ByteBuffer captured;
+    private CachedResponse refreshed;
+    private boolean servedStale;
+    private boolean cacheable = true;
+
+    public CachingResponseDecorator(ServerHttpResponse delegate, int maxEntrySize, CachePolicy policy,
+                                    CachedResponse stale, Function<CachedResponse, Mono<Void>> staleWriter) {
+        super(delegate);
+        this.maxEntrySize = maxEntrySize;
+        this.policy = policy;
+        this.stale = stale;
+        this.staleWriter = staleWriter;
+    }
+
+    @Override
+    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+        if (isNotModified() || isServableError()) {
+            return Flux.from(body)
+                .doOnNext(DataBufferUtils::release)
+                .then(Mono.defer(this::writeStale));
+        }
+
+        long contentLength = getHeaders().getContentLength();
+        if (!resolveStatus().is2xxSuccessful() || contentLength > maxEntrySize) {
+            cacheable = false;
+            return super.writeWith(body);
+        }
+
+        if (contentLength >= 0) {
+            captured = ByteBuffer.allocate((int) contentLength);
+        }
+        return super.writeWith(Flux.from(body).doOnNext(this::capture));
+    }
+
+    @Override
+    public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+        // Streaming responses (SSE and the like) are never cached
+        cacheable = false;
+        return super.writeAndFlushWith(body);
+    }
+
+    @Override
+    public Mono<Void> setComplete() {
+        if (isNotModified() || isServableError()) {
+            return writeStale();
+        }
+        return super.setComplete();
+    }
+
+    /**
+     * True when the client was answered from the stale entry because upstream failed
+     */
+    public boolean isServedStale() {
+        return servedStale;
+    }
+
+    /**
+     * Snapshot of the completed response, or null when it cannot be cached
+     */
+    public CachedResponse toCachedResponse() {
+        if (refreshed != null) {
+            return refreshed;
+        }
+        if (!cacheable || servedStale) {
+            return null;
+        }
+        return policy.createEntry(resolveStatus(), getHeaders(), captured != null ? captured.flip() : EMPTY_BODY);
+    }
+
+    private boolean isNotModified() {
+        return stale != null && stale.hasValidator() && resolveStatus().value() == HttpStatus.NOT_MODIFIED.value();
+    }
+
+    private boolean isServableError() {
+        return stale != null && resolveStatus().is5xxServerError() && policy.canServeOnError(stale);
+    }
+
+    private Mono<Void> writeStale() {
+        if (isNotModified()) {
+            long expiryTime = policy.expiryTime(System.currentTimeMillis(), CacheDirectives.from(getHeaders()));
+            refreshed = stale.revalidated(getHeaders(), expiryTime, policy.retainUntil(expiryTime));
+            return staleWriter.apply(refreshed);
+        }
+        servedStale = true;
+        return staleWriter.apply(stale);
+    }
+
+    private void capture(DataBuffer buffer) {
+        if (!cacheable) {
+            return;
+        }
+        int length = buffer.readableByteCount();
+        if (!ensureCapacity(length)) {
+            cacheable = false;
+            captured = null;
+            return;
+        }
+        // Read through ByteBuffer views so the read position seen by the client write is untouched
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            while (iterator.hasNext()) {
+                captured.put(iterator.next());
+            }
+        }
+    }
+
+    private boolean ensureCapacity(int length) {
+        int required = (captured != null ? captured.position() : 0) + length;
+        if (required > maxEntrySize) {
+            return false;
+        }
+        if (captured == null) {
+            captured = ByteBuffer.allocate(Math.max(required, Math.min(INITIAL_CAPACITY, maxEntrySize)));
+        } else if (captured.remaining() < length) {
+            // Only reached without a Content-Length header
+            ByteBuffer grown = ByteBuffer.allocate(Math.min(maxEntrySize, Math.max(required, captured.capacity() * 2)));
+            grown.put(captured.flip());
+            captured = grown;
+        }
+        return true;
+    }
+
+    private HttpStatusCode resolveStatus() {
+        HttpStatusCode status = getStatusCode();
+        return status != null ? status : HttpStatus.OK;
+    }
+}
@@ -0,0 +1,66 @@
+package ru.uni.ecop.gateway.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import ru.uni.ecop.gateway.config.ResponseCacheProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process (L1) response cache bounded by the total size of cached entries,
+ * each entry kept until its own retention time.
+ */
+@Component
+public class LocalResponseCache {
+
+    private final Cache<String, CachedResponse> cache;
+
+    public LocalResponseCache(ResponseCacheProperties properties, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(properties.getLocal().getMaxSize().toBytes())
+            .weigher((String key, CachedResponse value) -> key.length() + value.weight())
+            .expireAfter(new Expiry<String, CachedResponse>() {
+                @Override
+                public long expireAfterCreate(String key, CachedResponse value, long currentTime) {
+                    return remainingNanos(value);
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, CachedResponse value, long currentTime, long currentDuration) {
+                    return remainingNanos(value);
+                }
+
+                @Override
+                public long expireAfterRead(String key, CachedResponse value, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "gateway.response");
+    }
+
+    public CachedResponse get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(String key, CachedResponse response) {
+        cache.put(key, response);
+    }
+
+    public void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    public void invalidateByPrefix(String prefix) {
+        cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private static long remainingNanos(CachedResponse value) {
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, value.getRetainUntil() - System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,35 @@
+package ru.uni.ecop.gateway.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * DELETE /actuator/responsecache?routeId=... or ?prefix=... purges cached responses on all nodes.
+ * Restricted to the admin role by SecurityConfig; one of the two parameters is required.
+ */
+@Component
+@Endpoint(id = "responsecache")
+@RequiredArgsConstructor
+public class ResponseCacheEndpoint {
+
+    private final ResponseCacheManager cacheManager;
+
+    @DeleteOperation
+    public Mono<Map<String, Object>> purge(@Nullable String routeId, @Nullable String prefix) {
+        // Cache keys start with the route id, see CachingFilter
+        String keyPrefix = StringUtils.hasText(routeId) ? routeId + ":" : prefix;
+        if (!StringUtils.hasText(keyPrefix)) {
+            throw new InvalidEndpointRequestException("routeId or prefix is required", "routeId or prefix is required");
+        }
+        return cacheManager.purge(keyPrefix)
+            .map(removed -> Map.<String, Object>of("prefix", keyPrefix, "removed", removed));
+    }
+}
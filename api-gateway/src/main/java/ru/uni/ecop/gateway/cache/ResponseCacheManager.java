@@ -0,0 +1,162 @@
+package ru.uni.ecop.gateway.cache;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import ru.uni.ecop.gateway.config.ResponseCacheProperties;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Two-tier response cache: the in-process L1 in front of Redis as the shared L2.
+ * Writes and purges are announced on a pub/sub channel so every gateway instance
+ * drops its L1 copy and picks up the fresh entry from Redis on the next request.
+ */
+@Component
+@Slf4j
+public class ResponseCacheManager {
+
+    private static final String KEY_INVALIDATION = "K";
+    private static final String PREFIX_INVALIDATION = "P";
+
+    private final LocalResponseCache localCache;
+    private final ReactiveRedisTemplate<String, CachedResponse> redisTemplate;
+    private final ReactiveStringRedisTemplate stringRedisTemplate;
+    private final ReactiveRedisMessageListenerContainer listenerContainer;
+    private final ResponseCacheProperties.Remote remote;
+    private final String nodeId = UUID.randomUUID().toString();
+    private Disposable invalidations;
+
+    public ResponseCacheManager(LocalResponseCache localCache,
+                                ReactiveRedisTemplate<String, CachedResponse> responseCacheRedisTemplate,
+                                ReactiveStringRedisTemplate stringRedisTemplate,
+                                ReactiveRedisMessageListenerContainer listenerContainer,
+                                ResponseCacheProperties properties) {
+        this.localCache = localCache;
+        this.redisTemplate = responseCacheRedisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.remote = properties.getRemote();
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        if (!remote.isEnabled()) {
+            return;
+        }
+        invalidations = listenerContainer.receive(ChannelTopic.of(remote.getInvalidationChannel()))
+            .map(ReactiveSubscription.Message::getMessage)
+            .doOnNext(this::onInvalidation)
+            .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30))
+                .doBeforeRetry(signal -> log.warn("Cache invalidation subscription lost: {}", signal.failure().getMessage())))
+            .subscribe();
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        if (invalidations != null) {
+            invalidations.dispose();
+        }
+    }
+
+    /**
+     * L1 entry, possibly stale but still retained for revalidation, or null
+     */
+    public CachedResponse getLocal(String key) {
+        CachedResponse cached = localCache.get(key);
+        return cached != null && cached.isRetained() ? cached : null;
+    }
+
+    /**
+     * L2 entry, possibly stale, promoted to L1. A Redis outage is treated as a miss.
+     */
+    public Mono<CachedResponse> getRemote(String key) {
+        if (!remote.isEnabled()) {
+            return Mono.empty();
+        }
+        return redisTemplate.opsForValue().get(remote.getKeyPrefix() + key)
+            .filter(CachedResponse::isRetained)
+            .doOnNext(cached -> localCache.put(key, cached))
+            .onErrorResume(e -> {
+                log.warn("Redis cache lookup failed for key {}: {}", key, e.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    /**
+     * Write-through to both tiers, other nodes evict their L1 copy of the key
+     */
+    public void put(String key, CachedResponse response) {
+        localCache.put(key, response);
+        if (!remote.isEnabled()) {
+            return;
+        }
+
+        Duration ttl = Duration.ofMillis(response.getRetainUntil() - System.currentTimeMillis());
+        if (ttl.isNegative() || ttl.isZero()) {
+            return;
+        }
+        redisTemplate.opsForValue().set(remote.getKeyPrefix() + key, response, ttl)
+            .then(publish(KEY_INVALIDATION, key))
+            .subscribe(null, e -> log.warn("Failed to store response in Redis for key {}: {}", key, e.getMessage()));
+    }
+
+    /**
+     * Remove all entries whose key starts with the prefix from both tiers on all nodes
+     */
+    public Mono<Long> purge(String prefix) {
+        localCache.invalidateByPrefix(prefix);
+        if (!remote.isEnabled()) {
+            return Mono.just(0L);
+        }
+
+        ScanOptions scanOptions = ScanOptions.scanOptions()
+            .match(escapeGlob(remote.getKeyPrefix() + prefix) + "*")
+            .count(500)
+            .build();
+        return stringRedisTemplate.scan(scanOptions)
+            .buffer(500)
+            .concatMap(keys -> stringRedisTemplate.delete(keys.toArray(new String[0])))
+            .reduce(0L, Long::sum)
+            .flatMap(removed -> publish(PREFIX_INVALIDATION, prefix).thenReturn(removed));
+    }
+
+    private Mono<Long> publish(String type, String value) {
+        return stringRedisTemplate.convertAndSend(remote.getInvalidationChannel(), nodeId + " " + type + " " + value);
+    }
+
+    private void onInvalidation(String message) {
+        String[] parts = message.split(" ", 3);
+        if (parts.length != 3 || nodeId.equals(parts[0])) {
+            // Our own write already holds the fresh entry in L1
+            return;
+        }
+        if (KEY_INVALIDATION.equals(parts[1])) {
+            localCache.invalidate(parts[2]);
+        } else if (PREFIX_INVALIDATION.equals(parts[1])) {
+            localCache.invalidateByPrefix(parts[2]);
+        }
+    }
+
+    private static String escapeGlob(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
@@ -4,30 +4,49 @@ import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
 import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.dto.AuthenticatedUser;
+import ru.uni.ecop.gateway.filter.AuthenticationFilter;
+
+import java.net.InetSocketAddress;
 
 @Configuration
 public class AdditionalConfig {
 
     @Bean
     public RedisRateLimiter redisRateLimiter() {
+        // One Redis call per request, routes can still opt in with rate-limiter: "#{@redisRateLimiter}"
+        // instead of the default HybridRateLimiter
         return new RedisRateLimiter(10, 20); // 10 requests per second, 20 burst capacity
     }
 
     @Bean
+    @Primary
     public KeyResolver userKeyResolver() {
-        return exchange -> Mono.justOrEmpty(
-            exchange.getRequest().getHeaders().getFirst("X-User-ID")
-        ).defaultIfEmpty("anonymous");
+        // User validated by TokenAuthenticationWebFilter, never a client-supplied header; anonymous callers by address.
+        // Batch sub-requests carry the user of their batch, so they count against the same key.
+        return exchange -> {
+            AuthenticatedUser user = exchange.getAttribute(AuthenticationFilter.AUTHENTICATED_USER_ATTR);
+            if (user != null && user.getUserId() != null) {
+                return Mono.just(user.getUserId());
+            }
+            return Mono.just("ip:" + clientAddress(exchange));
+        };
     }
 
     @Bean
     public KeyResolver ipKeyResolver() {
-        return exchange -> Mono.just(
-            exchange.getRequest().getRemoteAddress().getAddress().getHostAddress()
-        );
+        return exchange -> Mono.just(clientAddress(exchange));
+    }
+
+    private static String clientAddress(ServerWebExchange exchange) {
+        // getHostString returns the address literal as received, without formatting or a reverse lookup
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        return remoteAddress != null ? remoteAddress.getHostString() : "unknown";
     }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package ru.uni.ecop.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.admission")
+public class AdmissionProperties {
+
+    // Off admits every request at once
+    private boolean enabled = true;
+    // Requests the gateway processes at once, further ones wait in the queue of their route's priority
+    private int maxConcurrent = 1024;
+    // Requests wait up to interval for admission, or only target once the queue of their
+    // priority has not been empty for a whole interval
+    private Duration target = Duration.ofMillis(5);
+    private Duration interval = Duration.ofMillis(100);
+    // Waiting requests per priority, more are shed at once
+    private int maxQueueSize = 1000;
+}
@@ -0,0 +1,61 @@
+package ru.uni.ecop.gateway.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.aggregation")
+public class AggregationProperties {
+
+    // Deadline of each source call, a source that misses it is left out of the response
+    private Duration defaultTimeout = Duration.ofSeconds(1);
+    // Per-section overrides, e.g. portfolios: 2s
+    private Map<String, Duration> timeouts = new HashMap<>();
+    // Upper bound of cached source results across all compositions
+    private long cacheMaximumSize = 10_000;
+    // Composite endpoints served at /api/aggregate/{name}
+    private Map<String, Composition> compositions = new LinkedHashMap<>();
+
+    public Duration timeoutFor(String section) {
+        return timeouts.getOrDefault(section, defaultTimeout);
+    }
+
+    /**
+     * Upstream calls of one composite endpoint and how their results are merged
+     */
+    @Data
+    public static class Composition {
+        private List<Source> sources = new ArrayList<>();
+        // Output field -> source name, optionally followed by a dotted path into its result
+        // ("owner": "project.ownerId"). Empty means every source under its own name.
+        private Map<String, String> shape = new LinkedHashMap<>();
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Source {
+        private String name;
+        // URI template, {var} is taken from the request, {source.path} from a source listed in dependsOn
+        private String uri;
+        private List<String> dependsOn = new ArrayList<>();
+        // Falls back to the section timeout when unset
+        private Duration timeout;
+        // How long the result may be reused, zero disables caching
+        private Duration ttl = Duration.ZERO;
+
+        public Source(String name, String uri) {
+            this.name = name;
+            this.uri = uri;
+        }
+    }
+}
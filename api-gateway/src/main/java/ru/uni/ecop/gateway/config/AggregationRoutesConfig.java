@@ -0,0 +1,81 @@
+package ru.uni.ecop.gateway.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.dto.AggregatedSection;
+import ru.uni.ecop.gateway.service.AggregationService;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Composite endpoints answered by the gateway itself, each one replaces several client round trips.
+ * The fixed routes come first so they take precedence over configured compositions of the same name.
+ * The caller's Authorization header and signed identity are forwarded to every source service.
+ * Clients accepting application/x-ndjson or text/event-stream get each section as soon as it is ready.
+ */
+@Configuration
+public class AggregationRoutesConfig {
+
+    @Bean
+    public RouterFunction<ServerResponse> aggregationRoutes(AggregationService aggregationService,
+                                                            AggregationProperties properties) {
+        return RouterFunctions.route()
+            .GET("/api/aggregate/users/{userId}/profile", request -> respond(request,
+                () -> aggregationService.aggregateUserProfile(request.pathVariable("userId"), authorization(request)),
+                () -> aggregationService.streamUserProfile(request.pathVariable("userId"), authorization(request))))
+            .GET("/api/aggregate/users/{userId}/dashboard", request -> respond(request,
+                () -> aggregationService.aggregateDashboardData(request.pathVariable("userId"), authorization(request)),
+                () -> aggregationService.streamDashboardData(request.pathVariable("userId"), authorization(request))))
+            .GET("/api/aggregate/search", request -> request.queryParam("query")
+                .map(query -> respond(request,
+                    () -> aggregationService.aggregateSearchResults(query, authorization(request)),
+                    () -> aggregationService.streamSearchResults(query, authorization(request))))
+                .orElseGet(() -> ServerResponse.badRequest().bodyValue(Map.of("message", "query parameter is required"))))
+            // Compositions from gateway.aggregation.compositions, request parameters fill the uri templates
+            .GET("/api/aggregate/{composition}", request -> {
+                String name = request.pathVariable("composition");
+                if (!properties.getCompositions().containsKey(name)) {
+                    return ServerResponse.notFound().build();
+                }
+                Map<String, String> variables = request.queryParams().toSingleValueMap();
+                return respond(request,
+                    () -> aggregationService.aggregate(name, variables, authorization(request)),
+                    () -> aggregationService.stream(name, variables, authorization(request)));
+            })
+            .build();
+    }
+
+    private static Mono<ServerResponse> respond(ServerRequest request,
+                                                Supplier<Mono<Map<String, Object>>> aggregate,
+                                                Supplier<Flux<AggregatedSection>> stream) {
+        // Only an explicit streaming type counts, */* keeps the single JSON document
+        for (MediaType accepted : request.headers().accept()) {
+            if (MediaType.APPLICATION_NDJSON.equalsTypeAndSubtype(accepted)) {
+                return ServerResponse.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(stream.get(), AggregatedSection.class);
+            }
+            if (MediaType.TEXT_EVENT_STREAM.equalsTypeAndSubtype(accepted)) {
+                return ServerResponse.ok()
+                    .contentType(MediaType.TEXT_EVENT_STREAM)
+                    .body(stream.get().map(section -> ServerSentEvent.builder(section).event(section.getSection()).build()),
+                        ServerSentEvent.class);
+            }
+        }
+        return aggregate.get().flatMap(body -> ServerResponse.ok().bodyValue(body));
+    }
+
+    private static String authorization(ServerRequest request) {
+        return request.headers().firstHeader(HttpHeaders.AUTHORIZATION);
+    }
+}
@@ -0,0 +1,25 @@
+package ru.uni.ecop.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.auth")
+public class AuthProperties {
+
+    // Off lets every request through anonymously, for local development only
+    private boolean enabled = true;
+    // Role required for administrative actuator operations such as purging the response cache
+    private String adminRole = "ADMIN";
+    private Identity identity = new Identity();
+
+    @Data
+    public static class Identity {
+        // Carries the verified user to upstreams, always removed from incoming requests
+        private String header = "X-Gateway-Identity";
+        // HMAC-SHA256 key shared with the services reading the header, nothing is forwarded without it
+        private String secret;
+    }
+}
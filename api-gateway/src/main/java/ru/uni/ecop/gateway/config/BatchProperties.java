@@ -0,0 +1,23 @@
+package ru.uni.ecop.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.batch")
+public class BatchProperties {
+
+    // Sub-requests accepted in one batch
+    private int maxRequests = 20;
+    // Sub-requests of one batch in flight at once
+    private int concurrency = 6;
+    // Deadline of each sub-request, answered with 504 when exceeded
+    private Duration timeout = Duration.ofSeconds(10);
+    // Larger sub-responses are answered with 502, batches are meant for small calls
+    private DataSize maxResponseSize = DataSize.ofKilobytes(256);
+}
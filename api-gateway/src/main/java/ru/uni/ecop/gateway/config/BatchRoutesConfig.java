@@ -0,0 +1,67 @@
+package ru.uni.ecop.gateway.config;
+
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.dto.BatchRequest;
+import ru.uni.ecop.gateway.dto.BatchResult;
+import ru.uni.ecop.gateway.service.BatchService;
+
+import java.util.Map;
+
+/**
+ * Batch endpoint: one authenticated, rate limited request carrying several routed calls.
+ * Clients accepting application/x-ndjson get each result as soon as its call completes,
+ * others a single JSON document with the results in request order.
+ */
+@Configuration
+public class BatchRoutesConfig {
+
+    @Bean
+    public RouterFunction<ServerResponse> batchRoutes(BatchService batchService) {
+        return RouterFunctions.route()
+            .POST("/gateway/batch", request -> request.bodyToMono(BatchRequest.class)
+                .flatMap(batch -> {
+                    String invalid = batchService.validate(batch);
+                    if (invalid != null) {
+                        return ServerResponse.badRequest().bodyValue(Map.of("message", invalid));
+                    }
+                    return batchService.rateLimit(request.exchange())
+                        .defaultIfEmpty(new RateLimiter.Response(true, Map.of()))
+                        .flatMap(limit -> limit.isAllowed()
+                            ? respond(request, batch, batchService, limit)
+                            : ServerResponse.status(HttpStatus.TOO_MANY_REQUESTS)
+                                .headers(headers -> limit.getHeaders().forEach(headers::set))
+                                .build());
+                })
+                .switchIfEmpty(Mono.defer(() -> ServerResponse.badRequest()
+                    .bodyValue(Map.of("message", "request body is required")))))
+            .build();
+    }
+
+    private static Mono<ServerResponse> respond(ServerRequest request, BatchRequest batch, BatchService batchService,
+                                                RateLimiter.Response limit) {
+        // Only an explicit streaming type counts, */* keeps the single JSON document
+        for (MediaType accepted : request.headers().accept()) {
+            if (MediaType.APPLICATION_NDJSON.equalsTypeAndSubtype(accepted)) {
+                return ServerResponse.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .headers(headers -> limit.getHeaders().forEach(headers::set))
+                    .body(batchService.stream(batch, request.exchange()), BatchResult.class);
+            }
+        }
+        return batchService.execute(batch, request.exchange())
+            .collectList()
+            .flatMap(results -> ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .headers(headers -> limit.getHeaders().forEach(headers::set))
+                .bodyValue(Map.of("responses", results)));
+    }
+}
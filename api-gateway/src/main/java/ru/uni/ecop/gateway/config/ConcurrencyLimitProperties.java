@@ -0,0 +1,25 @@
+package ru.uni.ecop.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.concurrency-limit")
+public class ConcurrencyLimitProperties {
+
+    // In-flight limit of an upstream before any latency has been measured
+    private int initialLimit = 20;
+    private int minLimit = 4;
+    private int maxLimit = 500;
+    // Weight of each adjustment, responses arrive faster than a change of the limit shows in them
+    private double smoothing = 0.2;
+    // The no-load latency is the minimum seen over the last one to two windows
+    private Duration baselineWindow = Duration.ofSeconds(30);
+    // Requests over the limit wait up to maxQueueWait for a slot, at most maxQueueSize per upstream
+    private int maxQueueSize = 50;
+    private Duration maxQueueWait = Duration.ofMillis(50);
+}
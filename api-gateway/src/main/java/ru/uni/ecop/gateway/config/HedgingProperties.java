@@ -0,0 +1,33 @@
+package ru.uni.ecop.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.hedging")
+public class HedgingProperties {
+
+    // A second request is sent once the first has taken longer than this percentile of the route's latency
+    private double percentile = 0.95;
+    // Never hedge sooner than this, on routes fast enough that a duplicate saves nothing
+    private Duration minDelay = Duration.ofMillis(10);
+    // Responses a route needs before its percentile is trusted, no hedging until then
+    private long minSamples = 100;
+    // Latency older than this no longer counts towards the percentile
+    private Duration latencyWindow = Duration.ofMinutes(1);
+    private Budget budget = new Budget();
+
+    @Data
+    public static class Budget {
+        // Hedges allowed per request sent to an upstream, 0.1 = at most 10% extra traffic
+        private double ratio = 0.1;
+        // Allowed on top of the ratio, so lightly used upstreams can hedge at all
+        private double minPerSecond = 5;
+        // Unused allowance saved up for bursts
+        private double maxBalance = 20;
+    }
+}
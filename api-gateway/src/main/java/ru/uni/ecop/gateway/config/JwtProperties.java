@@ -0,0 +1,46 @@
+package ru.uni.ecop.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "jwt")
+public class JwtProperties {
+
+    private String secret;
+    private long expiration;
+    private long refreshExpiration;
+
+    // Optional JWKS endpoint for asymmetric (RS*) tokens, HMAC secret is used otherwise
+    private String jwksUri;
+
+    private Validation validation = new Validation();
+
+    public enum ValidationMode {
+        LOCAL,
+        REMOTE
+    }
+
+    @Data
+    public static class Validation {
+        private ValidationMode mode = ValidationMode.LOCAL;
+        private boolean remoteFallback = false;
+        private String remoteUri = "http://core-service/api/auth/validate";
+        private Duration keyRefreshInterval = Duration.ofMinutes(5);
+        private Duration clockSkew = Duration.ofSeconds(30);
+        private Cache cache = new Cache();
+    }
+
+    @Data
+    public static class Cache {
+        private boolean enabled = true;
+        private long maximumSize = 10_000;
+        // Positive entries never outlive the token's own exp claim
+        private Duration maxTtl = Duration.ofMinutes(5);
+        private Duration negativeTtl = Duration.ofSeconds(10);
+    }
+}
@@ -0,0 +1,10 @@
+package ru.uni.ecop.gateway.config;
+
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.context.annotation.Configuration;
+import ru.uni.ecop.gateway.loadbalancer.LatencyAwareLoadBalancerConfiguration;
+
+@Configuration
+@LoadBalancerClients(defaultConfiguration = LatencyAwareLoadBalancerConfiguration.class)
+public class LoadBalancerConfig {
+}
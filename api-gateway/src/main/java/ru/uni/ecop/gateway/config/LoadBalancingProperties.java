@@ -0,0 +1,22 @@
+package ru.uni.ecop.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.load-balancing")
+public class LoadBalancingProperties {
+
+    // Power of two choices over peak EWMA latency, round robin otherwise
+    private boolean latencyAware = true;
+    // How fast a latency peak fades, a slow instance is retried once its peak has decayed
+    private Duration decayTime = Duration.ofSeconds(10);
+    // Latency recorded for a failed call, so a failing instance does not look fast
+    private Duration failureLatency = Duration.ofSeconds(1);
+    // Load multiplier of instances whose Consul health checks are in warning
+    private double warningPenalty = 4;
+}
@@ -0,0 +1,63 @@
+package ru.uni.ecop.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.rate-limiting")
+public class RateLimitingProperties {
+
+    public enum Mode {
+        // Buckets are per node only, for single-node setups
+        LOCAL,
+        // Buckets are per node and exchange consumption through Redis every sync-interval
+        HYBRID
+    }
+
+    public enum Algorithm {
+        // Synced across nodes in hybrid mode
+        TOKEN_BUCKET,
+        // Same limit semantics with a single timestamp per key and no cross-node sync,
+        // meant for high-cardinality keys such as client addresses
+        GCRA
+    }
+
+    private boolean enabled = true;
+    private Mode mode = Mode.HYBRID;
+    private int replenishRate = 10;
+    private int burstCapacity = 20;
+    private int requestedTokens = 1;
+    // Upper bound of the overshoot: other nodes' traffic is seen at most this late
+    private Duration syncInterval = Duration.ofMillis(200);
+    // Buckets of keys without requests for this long are dropped locally and in Redis
+    private Duration idleTimeout = Duration.ofMinutes(2);
+    private long maximumKeys = 100_000;
+    private String keyPrefix = "gateway:ratelimit:";
+    // Limits of the default policy per user tier (tier claim of the JWT)
+    private Map<String, Limits> tiers = new HashMap<>();
+    // Named policies, routes not listed under routes use the default one above
+    private Map<String, Policy> policies = new HashMap<>();
+    // Route id -> policy name
+    private Map<String, String> routes = new HashMap<>();
+
+    @Data
+    public static class Limits {
+        private int replenishRate;
+        private int burstCapacity;
+    }
+
+    @Data
+    public static class Policy {
+        private Algorithm algorithm = Algorithm.TOKEN_BUCKET;
+        private int replenishRate = 10;
+        private int burstCapacity = 20;
+        private int requestedTokens = 1;
+        private Map<String, Limits> tiers = new HashMap<>();
+    }
+}
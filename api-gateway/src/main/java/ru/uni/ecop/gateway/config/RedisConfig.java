@@ -6,9 +6,11 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
-import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import ru.uni.ecop.gateway.cache.CachedResponse;
+import ru.uni.ecop.gateway.cache.CachedResponseCodec;
 
 @Configuration
 public class RedisConfig {
@@ -25,18 +27,23 @@ public class RedisConfig {
     }
 
     @Bean
-    public ReactiveRedisTemplate<String, Object> reactiveRedisTemplate(ReactiveRedisConnectionFactory connectionFactory) {
-        JacksonJsonRedisSerializer<Object> serializer = new JacksonJsonRedisSerializer<>(Object.class);
+    public ReactiveRedisTemplate<String, CachedResponse> responseCacheRedisTemplate(ReactiveRedisConnectionFactory connectionFactory) {
+        CachedResponseCodec codec = new CachedResponseCodec();
 
-        RedisSerializationContext.RedisSerializationContextBuilder<String, Object> builder =
+        RedisSerializationContext.RedisSerializationContextBuilder<String, CachedResponse> builder =
                 RedisSerializationContext.newSerializationContext(new StringRedisSerializer());
 
-        RedisSerializationContext<String, Object> context = builder
-                .value(serializer)
+        RedisSerializationContext<String, CachedResponse> context = builder
+                .value(codec)
                 .hashKey(new StringRedisSerializer())
-                .hashValue(serializer)
+                .hashValue(codec)
                 .build();
 
         return new ReactiveRedisTemplate<>(connectionFactory, context);
     }
+
+    @Bean
+    public ReactiveRedisMessageListenerContainer reactiveRedisMessageListenerContainer(ReactiveRedisConnectionFactory connectionFactory) {
+        return new ReactiveRedisMessageListenerContainer(connectionFactory);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+package ru.uni.ecop.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Upstream protection settings, read from the resilience4j.* keys so existing configuration
+ * keeps working. Instances are named after the upstream service (the host of lb://service),
+ * an instance named "default" applies to upstreams without their own.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "resilience4j")
+public class ResilienceProperties {
+
+    public static final String DEFAULT_INSTANCE = "default";
+
+    private CircuitBreakers circuitbreaker = new CircuitBreakers();
+    private TimeLimiters timelimiter = new TimeLimiters();
+    private Bulkheads bulkhead = new Bulkheads();
+
+    public CircuitBreaker circuitBreakerFor(String upstream) {
+        return instanceFor(circuitbreaker.getInstances(), upstream, CircuitBreaker::new);
+    }
+
+    public TimeLimiter timeLimiterFor(String upstream) {
+        return instanceFor(timelimiter.getInstances(), upstream, TimeLimiter::new);
+    }
+
+    public Bulkhead bulkheadFor(String upstream) {
+        return instanceFor(bulkhead.getInstances(), upstream, Bulkhead::new);
+    }
+
+    private static <T> T instanceFor(Map<String, T> instances, String upstream, Supplier<T> defaults) {
+        T instance = instances.get(upstream);
+        if (instance == null) {
+            instance = instances.get(DEFAULT_INSTANCE);
+        }
+        return instance != null ? instance : defaults.get();
+    }
+
+    @Data
+    public static class CircuitBreakers {
+        private Map<String, CircuitBreaker> instances = new HashMap<>();
+    }
+
+    @Data
+    public static class TimeLimiters {
+        private Map<String, TimeLimiter> instances = new HashMap<>();
+    }
+
+    @Data
+    public static class Bulkheads {
+        private Map<String, Bulkhead> instances = new HashMap<>();
+    }
+
+    @Data
+    public static class CircuitBreaker {
+        // Count based window over the last calls
+        private int slidingWindowSize = 100;
+        // Rates are only evaluated once the window holds this many calls
+        private int minimumNumberOfCalls = 100;
+        private float failureRateThreshold = 50;
+        private float slowCallRateThreshold = 100;
+        private Duration slowCallDurationThreshold = Duration.ofSeconds(60);
+        private Duration waitDurationInOpenState = Duration.ofSeconds(60);
+        private int permittedNumberOfCallsInHalfOpenState = 10;
+    }
+
+    @Data
+    public static class TimeLimiter {
+        // Time until the upstream response headers arrive
+        private Duration timeoutDuration = Duration.ofSeconds(1);
+    }
+
+    @Data
+    public static class Bulkhead {
+        private int maxConcurrentCalls = 25;
+    }
+}
@@ -0,0 +1,31 @@
+package ru.uni.ecop.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.cache")
+public class ResponseCacheProperties {
+
+    private Local local = new Local();
+    private Remote remote = new Remote();
+
+    @Data
+    public static class Local {
+        // Total bytes held by the in-process cache, bodies are kept in heap buffers
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+        // Responses larger than this are streamed through without being captured
+        private DataSize maxEntrySize = DataSize.ofMegabytes(1);
+    }
+
+    @Data
+    public static class Remote {
+        // Shared Redis (L2) tier, L1 entries are evicted on all nodes through the invalidation channel
+        private boolean enabled = true;
+        private String keyPrefix = "gateway:cache:";
+        private String invalidationChannel = "gateway:cache:invalidation";
+    }
+}
@@ -0,0 +1,62 @@
+package ru.uni.ecop.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import ru.uni.ecop.gateway.resilience.Priority;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.routes")
+public class RouteTableProperties {
+
+    // Route groups by name, the routes of a group share the upstream and one filter chain
+    private Map<String, Group> groups = new LinkedHashMap<>();
+    private Consul consul = new Consul();
+
+    @Data
+    public static class Consul {
+        // Watch a KV key holding routes and rate-limiting sections that replace the local ones
+        private boolean enabled = true;
+        private String key = "config/api-gateway/routes";
+        private String aclToken;
+        // Blocking query wait, Consul answers earlier as soon as the key changes
+        private Duration waitTime = Duration.ofSeconds(55);
+        private Duration retryInterval = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class Group {
+        private URI uri;
+        private boolean authenticated = true;
+        private boolean rateLimited = true;
+        // Admission order under overload, lower priorities are shed first, see gateway.admission.*
+        private Priority priority = Priority.NORMAL;
+        // Scan JSON, form and text bodies while they are streamed upstream
+        private boolean inspectBody = false;
+        private Cache cache = new Cache();
+        // Adaptive in-flight limit of the upstream, see gateway.concurrency-limit.*
+        private boolean concurrencyLimited = true;
+        // Circuit breaker, bulkhead and time limit of the upstream, see resilience4j.*
+        private boolean circuitBreaker = true;
+        // Duplicate slow GET requests to another instance, see gateway.hedging.*
+        private boolean hedged = false;
+        // Proxy WebSocket upgrades and event streams as tracked long-lived connections, see gateway.streaming.*
+        private boolean streaming = false;
+        // Route id -> path pattern: literal segments, {name} and a trailing /**
+        private Map<String, String> routes = new LinkedHashMap<>();
+    }
+
+    @Data
+    public static class Cache {
+        private boolean enabled = false;
+        private Duration ttl = Duration.ofMinutes(5);
+        private Duration staleWhileRevalidate = Duration.ZERO;
+        private Duration staleIfError = Duration.ZERO;
+    }
+}
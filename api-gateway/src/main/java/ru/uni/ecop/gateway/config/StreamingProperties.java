@@ -0,0 +1,16 @@
+package ru.uni.ecop.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.streaming")
+public class StreamingProperties {
+
+    // WebSocket and event stream connections without traffic in either direction for this long are closed
+    private Duration idleTimeout = Duration.ofMinutes(2);
+}
@@ -0,0 +1,60 @@
+package ru.uni.ecop.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.HttpProtocol;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Connection pools to upstream services. Instances are named after the service (the host of
+ * lb://service), an instance named "default" applies to services without their own. Every
+ * service gets a pool of its own either way.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.upstream-pool")
+public class UpstreamPoolProperties {
+
+    public static final String DEFAULT_INSTANCE = "default";
+
+    // Export reactor.netty.connection.provider.* gauges and acquire timers per pool
+    private boolean metrics = true;
+    private Map<String, Pool> instances = new HashMap<>();
+    // Pools of event streams, one per service, each stream holds its connection for its lifetime
+    private Pool streaming = streamingPool();
+
+    public Pool poolFor(String upstream) {
+        Pool pool = instances.get(upstream);
+        if (pool == null) {
+            pool = instances.get(DEFAULT_INSTANCE);
+        }
+        return pool != null ? pool : new Pool();
+    }
+
+    private static Pool streamingPool() {
+        Pool pool = new Pool();
+        pool.setMaxConnections(65_536);
+        return pool;
+    }
+
+    @Data
+    public static class Pool {
+        // Per instance address of the service
+        private int maxConnections = 200;
+        // Requests waiting for a connection, beyond that they fail at once
+        private int pendingAcquireMaxCount = 400;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+        // Keep below the keep-alive timeout of the service, so it never closes a connection being reused
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(10);
+        private Duration evictionInterval = Duration.ofSeconds(15);
+        private boolean tcpKeepAlive = true;
+        // [h2c] multiplexes requests over HTTP/2 without TLS, the service has to accept it
+        private List<HttpProtocol> protocols = List.of(HttpProtocol.HTTP11);
+    }
+}
@@ -0,0 +1,21 @@
+package ru.uni.ecop.gateway.config;
+
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import ru.uni.ecop.gateway.route.UpstreamHttpClients;
+
+@Configuration
+public class WebClientConfig {
+
+    @Bean
+    @LoadBalanced
+    public WebClient.Builder loadBalancedWebClientBuilder(UpstreamHttpClients upstreamClients) {
+        // Resolves http://<service-id>/ URIs through Consul, same as the lb:// routes.
+        // Calls made by the gateway itself share one pool, configured as gateway.upstream-pool.instances.service-calls
+        return WebClient.builder()
+            .clientConnector(new ReactorClientHttpConnector(upstreamClients.forUpstream("service-calls")));
+    }
+}
@@ -0,0 +1,20 @@
+package ru.uni.ecop.gateway.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One section of a streamed aggregate, emitted as soon as its source completes
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AggregatedSection {
+    private String section;
+    private JsonNode data;
+    private String error;
+}
@@ -0,0 +1,19 @@
+package ru.uni.ecop.gateway.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AuthenticatedUser {
+    private String userId;
+    private List<String> roles;
+    private Instant expiresAt;
+    // Subscription tier claim, selects the tier limits of rate limit policies
+    private String tier;
+}
@@ -0,0 +1,25 @@
+package ru.uni.ecop.gateway.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class BatchRequest {
+    private List<SubRequest> requests = new ArrayList<>();
+
+    @Data
+    public static class SubRequest {
+        // Echoed in the result, defaults to the position in the batch
+        private String id;
+        private String method = "GET";
+        // Path and query of a routed endpoint, e.g. /api/notifications?unread=true
+        private String path;
+        private Map<String, String> headers = Map.of();
+        // Sent as application/json
+        private JsonNode body;
+    }
+}
@@ -0,0 +1,21 @@
+package ru.uni.ecop.gateway.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResult {
+    private String id;
+    private int status;
+    private Map<String, String> headers;
+    // JSON value as received from the service, text responses and malformed JSON as a JSON string
+    private JsonNode body;
+}
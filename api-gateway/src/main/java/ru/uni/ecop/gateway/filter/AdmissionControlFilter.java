@@ -0,0 +1,133 @@
+package ru.uni.ecop.gateway.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.config.AdmissionProperties;
+import ru.uni.ecop.gateway.dto.ErrorResponse;
+import ru.uni.ecop.gateway.resilience.AdmissionController;
+import ru.uni.ecop.gateway.resilience.AdmissionRejectedException;
+import ru.uni.ecop.gateway.resilience.Priority;
+import ru.uni.ecop.gateway.route.PathTrie;
+import ru.uni.ecop.gateway.route.RouteTableCompiler;
+import ru.uni.ecop.gateway.route.RouteTableLocator;
+import ru.uni.ecop.gateway.streaming.StreamingRequests;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admission control in front of everything else the gateway does for a request, token
+ * validation included, so a shed request costs next to nothing. The priority comes from the
+ * route group of the path, requests outside the route table are NORMAL and actuator
+ * endpoints are never held back. WebSocket sessions and event streams of streaming routes
+ * hold their slot only until the response is committed. Shed requests are answered with
+ * 503 and a body serialized once at startup.
+ */
+@Component
+public class AdmissionControlFilter implements WebFilter, Ordered {
+
+    // Ahead of the Spring Security filter chain (-100), behind the HTTP server observation
+    public static final int ORDER = -200;
+
+    private static final byte[] SHED_BODY = new ErrorResponse(HttpStatus.SERVICE_UNAVAILABLE.value(),
+        HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase(), "The gateway is overloaded, please retry later")
+        .toString().getBytes(StandardCharsets.UTF_8);
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final AdmissionProperties properties;
+    private final RouteTableLocator routeTableLocator;
+    private final AdmissionController controller;
+
+    public AdmissionControlFilter(AdmissionProperties properties, RouteTableLocator routeTableLocator,
+                                  MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.routeTableLocator = routeTableLocator;
+        Map<Priority, Map<AdmissionController.Rejection, Counter>> shed = new EnumMap<>(Priority.class);
+        for (Priority priority : Priority.values()) {
+            Map<AdmissionController.Rejection, Counter> byReason = new EnumMap<>(AdmissionController.Rejection.class);
+            for (AdmissionController.Rejection reason : AdmissionController.Rejection.values()) {
+                byReason.put(reason, Counter.builder("gateway.admission.shed")
+                    .tag("priority", priority.name().toLowerCase())
+                    .tag("reason", reason.name().toLowerCase())
+                    .register(meterRegistry));
+            }
+            shed.put(priority, byReason);
+        }
+        this.controller = new AdmissionController(properties, (priority, reason) -> shed.get(priority).get(reason).increment());
+
+        Gauge.builder("gateway.admission.in-flight", controller, AdmissionController::getInFlight)
+            .register(meterRegistry);
+        for (Priority priority : Priority.values()) {
+            Gauge.builder("gateway.admission.queued", controller, c -> c.getQueued(priority))
+                .tag("priority", priority.name().toLowerCase())
+                .register(meterRegistry);
+            Gauge.builder("gateway.admission.overloaded", controller, c -> c.isOverloaded(priority) ? 1 : 0)
+                .tag("priority", priority.name().toLowerCase())
+                .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String path = exchange.getRequest().getPath().value();
+        if (!properties.isEnabled() || path.startsWith("/actuator")) {
+            return chain.filter(exchange);
+        }
+
+        PathTrie.Match<Route> match = routeTableLocator.getTable().match(path);
+        Route route = match != null ? match.value() : null;
+        boolean stream = StreamingRequests.isStreamingRoute(route) && StreamingRequests.typeOf(exchange.getRequest()) != null;
+        return controller.acquire(priorityOf(route))
+            .then(Mono.defer(() -> stream
+                ? admitStream(exchange, chain)
+                : chain.filter(exchange).doFinally(signal -> controller.release())))
+            .onErrorResume(AdmissionRejectedException.class, e -> shed(exchange));
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    // The slot covers the handshake up to the response headers, not the lifetime of the stream
+    private Mono<Void> admitStream(ServerWebExchange exchange, WebFilterChain chain) {
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                controller.release();
+            }
+        };
+        exchange.getResponse().beforeCommit(() -> Mono.fromRunnable(release));
+        return chain.filter(exchange).doFinally(signal -> release.run());
+    }
+
+    private static Priority priorityOf(Route route) {
+        return route != null && route.getMetadata().get(RouteTableCompiler.PRIORITY_METADATA) instanceof Priority priority
+            ? priority
+            : Priority.NORMAL;
+    }
+
+    private static Mono<Void> shed(ServerWebExchange exchange) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        HttpHeaders headers = response.getHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setContentLength(SHED_BODY.length);
+        headers.set(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(SHED_BODY)));
+    }
+}
@@ -1,88 +1,262 @@
 package ru.uni.ecop.gateway.filter;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
-import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.cache.CachePolicy;
+import ru.uni.ecop.gateway.cache.CacheRefresher;
+import ru.uni.ecop.gateway.cache.CachedResponse;
+import ru.uni.ecop.gateway.cache.CachingResponseDecorator;
+import ru.uni.ecop.gateway.cache.ResponseCacheManager;
+import ru.uni.ecop.gateway.config.ResponseCacheProperties;
+import ru.uni.ecop.gateway.dto.AuthenticatedUser;
+import ru.uni.ecop.gateway.service.RequestCoalescer;
 
 import java.time.Duration;
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
 
 @Component
 @Slf4j
 public class CachingFilter extends AbstractGatewayFilterFactory<CachingFilter.Config> {
 
-    private final ReactiveRedisTemplate<String, String> redisTemplate;
-    private final ConcurrentHashMap<String, CachedResponse> localCache = new ConcurrentHashMap<>();
+    // Must run before NettyWriteResponseFilter so the proxied response is written through our decorator
+    public static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
 
-    public CachingFilter(ReactiveRedisTemplate<String, String> redisTemplate) {
-        this.redisTemplate = redisTemplate;
+    private static final String FETCH_LEADER_ATTR = CachingFilter.class.getName() + ".fetchLeader";
+
+    private final ResponseCacheManager cacheManager;
+    private final CacheRefresher cacheRefresher;
+    private final ResponseCacheProperties properties;
+    private final RequestCoalescer<String, CachedResponse> upstreamFetches;
+    private final RequestCoalescer<String, CachedResponse> backgroundRefreshes;
+    // Request headers named by upstream Vary, per cache key
+    private final Cache<String, List<String>> varyHeaders = Caffeine.newBuilder()
+        .maximumSize(10_000)
+        .expireAfterWrite(Duration.ofHours(1))
+        .build();
+
+    public CachingFilter(ResponseCacheManager cacheManager, CacheRefresher cacheRefresher,
+                         ResponseCacheProperties properties, MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.cacheManager = cacheManager;
+        this.cacheRefresher = cacheRefresher;
+        this.properties = properties;
+        this.upstreamFetches = new RequestCoalescer<>("response-cache", meterRegistry);
+        this.backgroundRefreshes = new RequestCoalescer<>("response-cache-refresh", meterRegistry);
     }
 
     @Override
     public GatewayFilter apply(Config config) {
-        return (exchange, chain) -> {
+        CachePolicy policy = new CachePolicy(config.getTtl(), config.getRevalidationWindow(),
+            config.getStaleWhileRevalidate(), config.getStaleIfError(), config.isPerUser());
+
+        return new OrderedGatewayFilter((exchange, chain) -> {
             ServerHttpRequest request = exchange.getRequest();
-            String cacheKey = generateCacheKey(request);
+            if (!config.isEnabled() || request.getMethod() != HttpMethod.GET) {
+                return chain.filter(exchange);
+            }
 
-            // Try to get from local cache first
-            CachedResponse cachedResponse = localCache.get(cacheKey);
-            if (cachedResponse != null && !cachedResponse.isExpired()) {
+            String baseKey = generateCacheKey(exchange, config);
+            List<String> vary = varyHeaders.getIfPresent(baseKey);
+            String cacheKey = vary != null ? baseKey + varySuffix(request, vary) : baseKey;
+
+            CachedResponse cachedResponse = cacheManager.getLocal(cacheKey);
+            if (cachedResponse != null && cachedResponse.isFresh()) {
                 log.debug("Serving response from local cache for key: {}", cacheKey);
-                // Return cached response
-                exchange.getResponse().getHeaders().addAll(cachedResponse.getHeaders());
-                return exchange.getResponse().writeWith(
-                    Mono.just(exchange.getResponse().bufferFactory()
-                        .wrap(cachedResponse.getBody().getBytes()))
-                );
+                return writeCachedResponse(exchange, cachedResponse);
+            }
+            if (cachedResponse != null && policy.canServeWhileRevalidating(cachedResponse)) {
+                log.debug("Serving stale response for key: {} while it is refreshed", cacheKey);
+                refreshInBackground(exchange, cacheKey, policy, cachedResponse);
+                return writeCachedResponse(exchange, cachedResponse);
             }
 
-            // Try to get from Redis cache
-            return redisTemplate.opsForValue().get(cacheKey)
-                .cast(String.class)
-                .flatMap(cachedData -> {
-                    log.debug("Serving response from Redis cache for key: {}", cacheKey);
-                    // In a real implementation, we would parse the cached data and set response
-                    return exchange.getResponse().setComplete();
-                })
-                .switchIfEmpty(chain.filter(exchange).doOnSuccess(response -> {
-                    // Cache the response if it's a successful GET request
-                    if (request.getMethod().name().equals("GET") && 
-                        response.getStatusCode().is2xxSuccessful()) {
-                        cacheResponse(cacheKey, response, config.getTtl());
+            // Identical concurrent misses share one Redis lookup and, failing that, one upstream
+            // call: the first request proxies and captures the response, the others replay it
+            return upstreamFetches.execute(cacheKey, () -> lookupOrFetch(exchange, chain, cacheKey, baseKey, policy, cachedResponse))
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .onErrorResume(e -> isFetchLeader(exchange) ? Mono.error(e) : Mono.just(Optional.empty()))
+                .flatMap(shared -> {
+                    if (isFetchLeader(exchange)) {
+                        return Mono.empty();
                     }
-                }));
-        };
+                    // A response that turned out to vary on request headers may belong to another variant
+                    return shared
+                        .filter(response -> vary != null || response.getHeaders().getVary().isEmpty())
+                        .map(response -> writeCachedResponse(exchange, response))
+                        .orElseGet(() -> chain.filter(exchange));
+                });
+        }, ORDER);
+    }
+
+    private Mono<CachedResponse> lookupOrFetch(ServerWebExchange exchange, GatewayFilterChain chain, String cacheKey,
+                                               String baseKey, CachePolicy policy, CachedResponse localStale) {
+        if (localStale != null) {
+            return fetchAndCache(exchange, chain, cacheKey, baseKey, policy, localStale);
+        }
+        return cacheManager.getRemote(cacheKey)
+            .map(Optional::of)
+            .defaultIfEmpty(Optional.empty())
+            .flatMap(remote -> {
+                if (remote.isPresent() && remote.get().isFresh()) {
+                    return Mono.just(remote.get());
+                }
+                if (remote.isPresent() && policy.canServeWhileRevalidating(remote.get())) {
+                    refreshInBackground(exchange, cacheKey, policy, remote.get());
+                    return Mono.just(remote.get());
+                }
+                return fetchAndCache(exchange, chain, cacheKey, baseKey, policy, remote.orElse(null));
+            });
+    }
+
+    private void refreshInBackground(ServerWebExchange exchange, String cacheKey, CachePolicy policy, CachedResponse stale) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (route == null) {
+            return;
+        }
+        // Requests arriving while the refresh is in flight join it instead of starting another one
+        backgroundRefreshes.execute(cacheKey, () -> cacheRefresher.refresh(route.getUri(), exchange.getRequest(), stale, policy)
+                .doOnNext(fresh -> cacheManager.put(cacheKey, fresh)))
+            .subscribe(
+                fresh -> log.debug("Refreshed cached response for key: {}", cacheKey),
+                e -> log.warn("Background refresh failed for key: {}: {}", cacheKey, e.getMessage()));
+    }
+
+    private Mono<CachedResponse> fetchAndCache(ServerWebExchange exchange, GatewayFilterChain chain, String cacheKey,
+                                               String baseKey, CachePolicy policy, CachedResponse stale) {
+        exchange.getAttributes().put(FETCH_LEADER_ATTR, Boolean.TRUE);
+        int maxEntrySize = (int) properties.getLocal().getMaxEntrySize().toBytes();
+
+        // With a stale entry at hand, a 304 refreshes and replays it and a 5xx (including the
+        // circuit breaker fallback) is answered with it while stale-if-error allows
+        CachingResponseDecorator response = new CachingResponseDecorator(exchange.getResponse(), maxEntrySize, policy,
+            stale, entry -> writeCachedResponse(exchange, entry));
+        ServerWebExchange upstreamExchange;
+        if (stale != null && stale.hasValidator()) {
+            ServerHttpRequest conditionalRequest = exchange.getRequest().mutate()
+                .headers(headers -> {
+                    headers.remove(HttpHeaders.IF_NONE_MATCH);
+                    headers.remove(HttpHeaders.IF_MODIFIED_SINCE);
+                    if (stale.getHeaders().getETag() != null) {
+                        headers.setIfNoneMatch(stale.getHeaders().getETag());
+                    }
+                    if (stale.getHeaders().getLastModified() != -1) {
+                        headers.setIfModifiedSince(stale.getHeaders().getLastModified());
+                    }
+                })
+                .build();
+            upstreamExchange = exchange.mutate().request(conditionalRequest).response(response).build();
+        } else {
+            upstreamExchange = exchange.mutate().response(response).build();
+        }
+
+        return chain.filter(upstreamExchange)
+            .then(Mono.defer(() -> {
+                if (response.isServedStale()) {
+                    // Followers get the stale entry too, the stored one is left for the next attempt
+                    return Mono.just(stale);
+                }
+                CachedResponse captured = response.toCachedResponse();
+                if (captured != null) {
+                    store(exchange, cacheKey, baseKey, captured);
+                }
+                return Mono.justOrEmpty(captured);
+            }))
+            .onErrorResume(e -> {
+                if (stale == null || !policy.canServeOnError(stale) || exchange.getResponse().isCommitted()) {
+                    return Mono.error(e);
+                }
+                log.warn("Upstream failed for key: {}, serving stale response: {}", cacheKey, e.getMessage());
+                return writeCachedResponse(exchange, stale).thenReturn(stale);
+            });
+    }
+
+    private void store(ServerWebExchange exchange, String cacheKey, String baseKey, CachedResponse captured) {
+        List<String> vary = captured.getHeaders().getVary();
+        if (vary.isEmpty()) {
+            cacheManager.put(cacheKey, captured);
+        } else {
+            varyHeaders.put(baseKey, vary);
+            cacheManager.put(baseKey + varySuffix(exchange.getRequest(), vary), captured);
+        }
+    }
+
+    private boolean isFetchLeader(ServerWebExchange exchange) {
+        return exchange.getAttributes().containsKey(FETCH_LEADER_ATTR);
     }
 
-    private String generateCacheKey(ServerHttpRequest request) {
-        return request.getMethod().name() + ":" + request.getURI().toString();
+    private Mono<Void> writeCachedResponse(ServerWebExchange exchange, CachedResponse cachedResponse) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders cachedHeaders = cachedResponse.getHeaders();
+        String etag = cachedHeaders.getETag();
+        long lastModified = cachedHeaders.getLastModified();
+
+        // Answer If-None-Match / If-Modified-Since from cache without sending the body
+        boolean notModified;
+        if (etag != null && lastModified != -1) {
+            notModified = exchange.checkNotModified(etag, Instant.ofEpochMilli(lastModified));
+        } else if (etag != null) {
+            notModified = exchange.checkNotModified(etag);
+        } else {
+            notModified = lastModified != -1 && exchange.checkNotModified(Instant.ofEpochMilli(lastModified));
+        }
+        if (notModified) {
+            response.getHeaders().addAll(HttpHeaders.CACHE_CONTROL, cachedHeaders.getOrEmpty(HttpHeaders.CACHE_CONTROL));
+            return response.setComplete();
+        }
+
+        response.setStatusCode(cachedResponse.getStatus());
+        response.getHeaders().putAll(cachedHeaders);
+        response.getHeaders().remove(HttpHeaders.TRANSFER_ENCODING);
+        return response.writeWith(Mono.just(cachedResponse.bodyBuffer(response.bufferFactory())));
     }
 
-    private void cacheResponse(String cacheKey, org.springframework.web.server.ServerHttpResponse response, Duration ttl) {
-        // In a real implementation, we would capture the response body and cache it
-        // For now, we just cache the key with TTL
-        CachedResponse cachedResponse = new CachedResponse(
-            response.getHeaders(),
-            "cached_response_placeholder",
-            System.currentTimeMillis() + ttl.toMillis()
-        );
-        
-        localCache.put(cacheKey, cachedResponse);
-        
-        // Also cache in Redis
-        redisTemplate.opsForValue()
-            .set(cacheKey, "cached_response_placeholder", ttl)
-            .subscribe();
+    private String generateCacheKey(ServerWebExchange exchange, Config config) {
+        ServerHttpRequest request = exchange.getRequest();
+        // Route id first so a route can be purged by key prefix
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        String routeId = route != null ? route.getId() : "default";
+        String key = routeId + ":" + request.getMethod().name() + ":" + request.getURI().toString();
+        if (config.isPerUser()) {
+            AuthenticatedUser user = exchange.getAttribute(AuthenticationFilter.AUTHENTICATED_USER_ATTR);
+            key += "|" + (user != null ? user.getUserId() : "anonymous");
+        }
+        return key;
+    }
+
+    private static String varySuffix(ServerHttpRequest request, List<String> vary) {
+        StringBuilder suffix = new StringBuilder();
+        for (String header : vary) {
+            suffix.append('|').append(header).append('=').append(String.join(",", request.getHeaders().getOrEmpty(header)));
+        }
+        return suffix.toString();
     }
 
     public static class Config {
-        private Duration ttl = Duration.ofMinutes(5); // Default TTL: 5 minutes
+        private Duration ttl = Duration.ofMinutes(5); // Default TTL when upstream sends no max-age
+        private Duration revalidationWindow = Duration.ofMinutes(30); // Stale entries kept for conditional revalidation
+        private Duration staleWhileRevalidate = Duration.ZERO; // Expired entries served while refreshed in the background
+        private Duration staleIfError = Duration.ZERO; // Expired entries served when upstream fails
         private boolean enabled = true;
+        private boolean perUser = true; // Keep responses of different users apart
 
         public Duration getTtl() {
             return ttl;
@@ -92,36 +266,44 @@ public class CachingFilter extends AbstractGatewayFilterFactory<CachingFilter.Co
             this.ttl = ttl;
         }
 
-        public boolean isEnabled() {
-            return enabled;
+        public Duration getRevalidationWindow() {
+            return revalidationWindow;
         }
 
-        public void setEnabled(boolean enabled) {
-            this.enabled = enabled;
+        public void setRevalidationWindow(Duration revalidationWindow) {
+            this.revalidationWindow = revalidationWindow;
+        }
+
+        public Duration getStaleWhileRevalidate() {
+            return staleWhileRevalidate;
+        }
+
+        public void setStaleWhileRevalidate(Duration staleWhileRevalidate) {
+            this.staleWhileRevalidate = staleWhileRevalidate;
+        }
+
+        public Duration getStaleIfError() {
+            return staleIfError;
         }
-    }
 
-    private static class CachedResponse {
-        private final org.springframework.http.HttpHeaders headers;
-        private final String body;
-        private final long expiryTime;
+        public void setStaleIfError(Duration staleIfError) {
+            this.staleIfError = staleIfError;
+        }
 
-        public CachedResponse(org.springframework.http.HttpHeaders headers, String body, long expiryTime) {
-            this.headers = headers;
-            this.body = body;
-            this.expiryTime = expiryTime;
+        public boolean isEnabled() {
+            return enabled;
         }
 
-        public org.springframework.http.HttpHeaders getHeaders() {
-            return headers;
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
         }
 
-        public String getBody() {
-            return body;
+        public boolean isPerUser() {
+            return perUser;
         }
 
-        public boolean isExpired() {
-            return System.currentTimeMillis() > expiryTime;
+        public void setPerUser(boolean perUser) {
+            this.perUser = perUser;
         }
     }
-}
\ No newline at end of file
+}
@@ -1,39 +1,129 @@
 package ru.uni.ecop.gateway.filter;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
-import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.dto.ErrorResponse;
+import ru.uni.ecop.gateway.resilience.CircuitBreaker;
+import ru.uni.ecop.gateway.resilience.UpstreamGuard;
+import ru.uni.ecop.gateway.resilience.UpstreamGuards;
+import ru.uni.ecop.gateway.streaming.StreamingRequests;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Protects the upstream of a route with its circuit breaker, bulkhead and time limit.
+ * Calls are measured until the upstream response headers arrive, so streamed bodies are
+ * not cut off. Connection errors, timeouts and 5xx responses count as failures.
+ * Requests rejected without calling the upstream (circuit open, bulkhead full) are marked
+ * with REJECTED_ATTR. WebSocket sessions are not guarded.
+ */
 @Component
 @Slf4j
-@RequiredArgsConstructor
 public class CircuitBreakerFilter extends AbstractGatewayFilterFactory<CircuitBreakerFilter.Config> {
 
+    // Set when the response is the breaker's own rejection, so it says nothing about the upstream
+    public static final String REJECTED_ATTR = CircuitBreakerFilter.class.getName() + ".rejected";
+
+    private final UpstreamGuards upstreamGuards;
+
+    public CircuitBreakerFilter(UpstreamGuards upstreamGuards) {
+        super(Config.class);
+        this.upstreamGuards = upstreamGuards;
+    }
+
     @Override
     public GatewayFilter apply(Config config) {
-        return (exchange, chain) -> chain.filter(exchange)
-            .onErrorResume(throwable -> {
-                log.error("Circuit breaker triggered for request: {}", exchange.getRequest().getURI(), throwable);
-                
-                // Return fallback response
-                if (config.fallbackMessage != null) {
-                    exchange.getResponse().setStatusCode(org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE);
-                    return exchange.getResponse().setComplete();
+        return (exchange, chain) -> {
+            if (StreamingRequests.isWebSocketUpgrade(exchange.getRequest())) {
+                // The chain lasts as long as the session, there is no call to time or limit
+                return chain.filter(exchange);
+            }
+            UpstreamGuard guard = upstreamGuards.forUpstream(
+                config.getName() != null ? config.getName() : UpstreamGuards.upstreamOf(exchange));
+            CircuitBreaker circuitBreaker = guard.getCircuitBreaker();
+            long start = System.nanoTime();
+
+            CircuitBreaker.Phase phase = circuitBreaker.tryAcquire(start);
+            if (phase == null) {
+                guard.onCircuitOpenRejection();
+                long retryAfter = TimeUnit.NANOSECONDS.toSeconds(circuitBreaker.remainingOpenNanos(start) + 999_999_999L);
+                if (retryAfter > 0) {
+                    exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
                 }
-                
-                // Default fallback
-                exchange.getResponse().setStatusCode(org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE);
-                return exchange.getResponse().setComplete();
-            });
+                exchange.getAttributes().put(REJECTED_ATTR, true);
+                return fallback(exchange, config, HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            if (!guard.getBulkhead().tryAcquire()) {
+                circuitBreaker.release(phase);
+                guard.onBulkheadRejection();
+                exchange.getAttributes().put(REJECTED_ATTR, true);
+                return fallback(exchange, config, HttpStatus.SERVICE_UNAVAILABLE);
+            }
+
+            Duration timeout = config.getTimeout() != null ? config.getTimeout() : guard.getTimeout();
+            return chain.filter(exchange)
+                .timeout(timeout)
+                .doOnSuccess(ignored -> {
+                    HttpStatusCode status = exchange.getResponse().getStatusCode();
+                    boolean failed = status != null && status.is5xxServerError();
+                    circuitBreaker.onResult(phase, System.nanoTime() - start, failed, System.nanoTime());
+                    guard.onCall(failed, false);
+                })
+                .doOnError(e -> {
+                    circuitBreaker.onResult(phase, System.nanoTime() - start, true, System.nanoTime());
+                    guard.onCall(true, e instanceof TimeoutException);
+                })
+                .doOnCancel(() -> circuitBreaker.release(phase))
+                .doFinally(signal -> guard.getBulkhead().release())
+                .onErrorResume(e -> {
+                    if (exchange.getResponse().isCommitted()) {
+                        return Mono.error(e);
+                    }
+                    log.warn("Upstream {} failed for {}: {}", guard.getName(), exchange.getRequest().getURI(), e.toString());
+                    return fallback(exchange, config,
+                        e instanceof TimeoutException ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.SERVICE_UNAVAILABLE);
+                });
+        };
+    }
+
+    private static Mono<Void> fallback(ServerWebExchange exchange, Config config, HttpStatus status) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(status);
+        if (config.getFallbackMessage() == null) {
+            return response.setComplete();
+        }
+
+        ErrorResponse errorResponse = new ErrorResponse(status.value(), status.getReasonPhrase(), config.getFallbackMessage());
+        DataBuffer buffer = response.bufferFactory().wrap(errorResponse.toString().getBytes(StandardCharsets.UTF_8));
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return response.writeWith(Mono.just(buffer));
     }
 
     public static class Config {
+        private String name; // Upstream whose breaker is used, the host of the route URI by default
         private String fallbackMessage;
-        private int timeout = 5000; // 5 seconds default timeout
+        private Duration timeout; // Overrides the upstream's time limiter
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
 
         public String getFallbackMessage() {
             return fallbackMessage;
@@ -43,12 +133,12 @@ public class CircuitBreakerFilter extends AbstractGatewayFilterFactory<CircuitBr
             this.fallbackMessage = fallbackMessage;
         }
 
-        public int getTimeout() {
+        public Duration getTimeout() {
             return timeout;
         }
 
-        public void setTimeout(int timeout) {
+        public void setTimeout(Duration timeout) {
             this.timeout = timeout;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,88 @@
+package ru.uni.ecop.gateway.filter;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.resilience.AdaptiveConcurrencyLimiter;
+import ru.uni.ecop.gateway.resilience.ConcurrencyLimitExceededException;
+import ru.uni.ecop.gateway.resilience.ConcurrencyLimiters;
+import ru.uni.ecop.gateway.resilience.UpstreamGuards;
+import ru.uni.ecop.gateway.streaming.StreamingRequests;
+
+import java.time.Duration;
+
+/**
+ * Keeps the requests in flight to the upstream of a route under its adaptive concurrency
+ * limit. Requests over the limit wait briefly for a slot and are rejected with 503 when
+ * none frees up. Latency is measured until the upstream response headers arrive; 5xx
+ * responses and errors lower the limit. Rejections by the circuit breaker behind this
+ * filter are not sampled, the upstream was never called. WebSocket sessions are not
+ * limited.
+ */
+@Component
+public class ConcurrencyLimitFilter extends AbstractGatewayFilterFactory<ConcurrencyLimitFilter.Config> {
+
+    private final ConcurrencyLimiters concurrencyLimiters;
+
+    public ConcurrencyLimitFilter(ConcurrencyLimiters concurrencyLimiters) {
+        super(Config.class);
+        this.concurrencyLimiters = concurrencyLimiters;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        return (exchange, chain) -> {
+            if (StreamingRequests.isWebSocketUpgrade(exchange.getRequest())) {
+                // A session would hold its slot and feed its whole duration as latency
+                return chain.filter(exchange);
+            }
+            AdaptiveConcurrencyLimiter limiter = concurrencyLimiters.forUpstream(
+                config.getName() != null ? config.getName() : UpstreamGuards.upstreamOf(exchange));
+            Duration maxQueueWait = config.getMaxQueueWait() != null ? config.getMaxQueueWait() : concurrencyLimiters.getMaxQueueWait();
+
+            return limiter.acquire(maxQueueWait)
+                .then(Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    return chain.filter(exchange)
+                        .doOnSuccess(ignored -> {
+                            if (exchange.getAttribute(CircuitBreakerFilter.REJECTED_ATTR) != null) {
+                                return;
+                            }
+                            HttpStatusCode status = exchange.getResponse().getStatusCode();
+                            boolean failed = status != null && status.is5xxServerError();
+                            limiter.onSample(System.nanoTime() - start, failed, System.nanoTime());
+                        })
+                        .doOnError(e -> limiter.onSample(System.nanoTime() - start, true, System.nanoTime()))
+                        .doFinally(signal -> limiter.release());
+                }))
+                .onErrorResume(ConcurrencyLimitExceededException.class, e -> {
+                    exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                    return exchange.getResponse().setComplete();
+                });
+        };
+    }
+
+    public static class Config {
+        private String name; // Upstream whose limit is used, the host of the route URI by default
+        private Duration maxQueueWait; // Overrides gateway.concurrency-limit.max-queue-wait
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Duration getMaxQueueWait() {
+            return maxQueueWait;
+        }
+
+        public void setMaxQueueWait(Duration maxQueueWait) {
+            this.maxQueueWait = maxQueueWait;
+        }
+    }
+}
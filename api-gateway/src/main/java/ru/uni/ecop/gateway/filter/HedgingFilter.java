@@ -0,0 +1,346 @@
+package ru.uni.ecop.gateway.filter;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebExchangeDecorator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.Connection;
+import ru.uni.ecop.gateway.loadbalancer.LatencyAwareLoadBalancer;
+import ru.uni.ecop.gateway.resilience.Hedging;
+import ru.uni.ecop.gateway.resilience.RouteLatency;
+import ru.uni.ecop.gateway.resilience.UpstreamGuards;
+import ru.uni.ecop.gateway.resilience.UpstreamHedging;
+import ru.uni.ecop.gateway.streaming.StreamingRequests;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Hedges idempotent requests: when the upstream has not answered a GET or HEAD within the
+ * route's latency percentile, the same request is sent to another instance and whichever
+ * response headers arrive first are used, the other call is cancelled. Hedges are paid from
+ * the upstream's budget, so a slow upstream never sees much more than its normal traffic.
+ * Each call runs the rest of the chain (instance choice and routing) on its own copy of the
+ * exchange attributes and response headers, the winner's are copied to the exchange.
+ * Must be the last route filter, only requests without a body are hedged, WebSocket
+ * upgrades and event streams never.
+ */
+@Component
+public class HedgingFilter extends AbstractGatewayFilterFactory<HedgingFilter.Config> {
+
+    private final Hedging hedging;
+
+    public HedgingFilter(Hedging hedging) {
+        super(Config.class);
+        this.hedging = hedging;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        return (exchange, chain) -> {
+            Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+            if (route == null || !isHedgeable(exchange.getRequest())) {
+                return chain.filter(exchange);
+            }
+
+            long start = System.nanoTime();
+            UpstreamHedging upstream = hedging.forUpstream(
+                config.getName() != null ? config.getName() : UpstreamGuards.upstreamOf(exchange));
+            RouteLatency latency = hedging.forRoute(route.getId());
+            upstream.onRequest(start);
+
+            long delay = config.getDelay() != null ? config.getDelay().toNanos() : latency.hedgeDelayNanos(start);
+            if (delay < 0) {
+                return chain.filter(exchange)
+                    .doFinally(signal -> latency.record(System.nanoTime() - start));
+            }
+            return new Race(exchange, chain, upstream, latency, start).run(delay);
+        };
+    }
+
+    private static boolean isHedgeable(ServerHttpRequest request) {
+        HttpMethod method = request.getMethod();
+        HttpHeaders headers = request.getHeaders();
+        return (method == HttpMethod.GET || method == HttpMethod.HEAD)
+            && StreamingRequests.typeOf(request) == null
+            && headers.getContentLength() <= 0
+            && !headers.containsKey(HttpHeaders.TRANSFER_ENCODING);
+    }
+
+    /**
+     * One request raced against its hedge. The first call to receive response headers wins;
+     * a call that fails only ends the race when no other call is running or will be started.
+     */
+    private static final class Race {
+
+        private final ServerWebExchange exchange;
+        private final GatewayFilterChain chain;
+        private final UpstreamHedging upstream;
+        private final RouteLatency latency;
+        private final long start;
+        // The request body can be read only once, hedged requests have none
+        private final ServerHttpRequest request;
+        private final AtomicReference<Attempt> decided = new AtomicReference<>();
+        private final AtomicInteger running = new AtomicInteger(1);
+        private MonoSink<Attempt> sink;
+        private volatile Attempt primary;
+        private volatile Attempt hedge;
+        private volatile Disposable timer;
+
+        Race(ServerWebExchange exchange, GatewayFilterChain chain, UpstreamHedging upstream, RouteLatency latency,
+             long start) {
+            this.exchange = exchange;
+            this.chain = chain;
+            this.upstream = upstream;
+            this.latency = latency;
+            this.start = start;
+            this.request = new ServerHttpRequestDecorator(exchange.getRequest()) {
+                @Override
+                public Flux<DataBuffer> getBody() {
+                    return Flux.empty();
+                }
+            };
+        }
+
+        Mono<Void> run(long delayNanos) {
+            return Mono.<Attempt>create(sink -> {
+                    this.sink = sink;
+                    sink.onCancel(this::cancel);
+                    primary = new Attempt(null);
+                    primary.start();
+                    timer = Schedulers.parallel().schedule(this::hedge, delayNanos, TimeUnit.NANOSECONDS);
+                })
+                .doOnNext(winner -> winner.commit(exchange))
+                .then();
+        }
+
+        private void hedge() {
+            if (decided.get() != null || !upstream.tryHedge(System.nanoTime())) {
+                return;
+            }
+            int current;
+            do {
+                current = running.get();
+                if (current == 0) {
+                    return;
+                }
+            } while (!running.compareAndSet(current, current + 1));
+
+            Response<ServiceInstance> chosen = primary.exchange.getAttribute(GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+            hedge = new Attempt(chosen != null && chosen.hasServer() ? chosen.getServer() : null);
+            hedge.start();
+            Attempt winner = decided.get();
+            if (winner != null && winner != hedge) {
+                // Decided while the hedge was being sent, nobody else will cancel it
+                hedge.cancel();
+            }
+        }
+
+        private void completed(Attempt attempt) {
+            if (!decided.compareAndSet(null, attempt)) {
+                attempt.discard();
+                return;
+            }
+            finish(attempt);
+            sink.success(attempt);
+        }
+
+        private void failed(Attempt attempt, Throwable error) {
+            if (running.decrementAndGet() > 0 || !decided.compareAndSet(null, attempt)) {
+                return;
+            }
+            finish(null);
+            sink.error(error);
+        }
+
+        private void finish(Attempt winner) {
+            Disposable pending = timer;
+            if (pending != null) {
+                pending.dispose();
+            }
+            // When the hedge won this is a lower bound of the primary's latency, still in the tail
+            latency.record(System.nanoTime() - start);
+            Attempt sent = hedge;
+            if (sent != null) {
+                upstream.onHedgeOutcome(winner == sent);
+            }
+            Attempt loser = winner == primary ? sent : primary;
+            if (winner != null && loser != null) {
+                loser.cancel();
+            }
+        }
+
+        private void cancel() {
+            Disposable pending = timer;
+            if (pending != null) {
+                pending.dispose();
+            }
+            decided.compareAndSet(null, primary);
+            primary.cancel();
+            Attempt sent = hedge;
+            if (sent != null) {
+                sent.cancel();
+            }
+        }
+
+        private final class Attempt {
+
+            private final AttemptExchange exchange;
+            private volatile Disposable subscription;
+
+            Attempt(ServiceInstance avoid) {
+                this.exchange = new AttemptExchange(Race.this.exchange, request, avoid);
+            }
+
+            void start() {
+                subscription = chain.filter(exchange)
+                    .contextWrite(sink.contextView())
+                    .subscribe(null, error -> failed(this, error), () -> completed(this));
+            }
+
+            void cancel() {
+                Disposable current = subscription;
+                if (current != null) {
+                    current.dispose();
+                }
+                discard();
+            }
+
+            // Closes the upstream response of a call that lost after its headers arrived
+            void discard() {
+                Connection connection = exchange.getAttribute(CLIENT_RESPONSE_CONN_ATTR);
+                if (connection != null) {
+                    connection.dispose();
+                }
+            }
+
+            void commit(ServerWebExchange target) {
+                exchange.getAttributes().remove(LatencyAwareLoadBalancer.AVOID_INSTANCE_ATTR);
+                target.getAttributes().putAll(exchange.getAttributes());
+                ServerHttpResponse response = target.getResponse();
+                response.getHeaders().putAll(exchange.response.getHeaders());
+                if (exchange.response.getStatusCode() != null) {
+                    response.setStatusCode(exchange.response.getStatusCode());
+                }
+            }
+        }
+    }
+
+    private static final class AttemptExchange extends ServerWebExchangeDecorator {
+
+        private final ServerHttpRequest request;
+        private final Map<String, Object> attributes;
+        private final AttemptResponse response;
+
+        AttemptExchange(ServerWebExchange delegate, ServerHttpRequest request, ServiceInstance avoid) {
+            super(delegate);
+            this.request = request;
+            this.attributes = new ConcurrentHashMap<>(delegate.getAttributes());
+            if (avoid != null) {
+                attributes.put(LatencyAwareLoadBalancer.AVOID_INSTANCE_ATTR, avoid);
+            }
+            this.response = new AttemptResponse(delegate.getResponse());
+        }
+
+        @Override
+        public ServerHttpRequest getRequest() {
+            return request;
+        }
+
+        @Override
+        public ServerHttpResponse getResponse() {
+            return response;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+    }
+
+    // Holds the status and headers the routing filter sets until the call has won
+    private static final class AttemptResponse extends ServerHttpResponseDecorator {
+
+        private final HttpHeaders headers = new HttpHeaders();
+        private volatile HttpStatusCode status;
+
+        AttemptResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public boolean setStatusCode(HttpStatusCode status) {
+            this.status = status;
+            return true;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+            return status;
+        }
+
+        @Override
+        @Deprecated
+        public boolean setRawStatusCode(Integer value) {
+            return setStatusCode(value != null ? HttpStatusCode.valueOf(value) : null);
+        }
+
+        @Override
+        @Deprecated
+        public Integer getRawStatusCode() {
+            return status != null ? status.value() : null;
+        }
+    }
+
+    public static class Config {
+        private String name; // Upstream whose budget is used, the host of the route URI by default
+        private Duration delay; // Fixed hedge delay instead of the route's latency percentile
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Duration getDelay() {
+            return delay;
+        }
+
+        public void setDelay(Duration delay) {
+            this.delay = delay;
+        }
+    }
+}
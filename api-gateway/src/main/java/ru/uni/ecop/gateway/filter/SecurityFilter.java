@@ -3,98 +3,158 @@ package ru.uni.ecop.gateway.filter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.security.InspectingRequestDecorator;
+import ru.uni.ecop.gateway.security.MaliciousContentException;
+import ru.uni.ecop.gateway.security.RequestInspector;
 
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.TreeSet;
 
 @Component
 @Slf4j
 public class SecurityFilter extends AbstractGatewayFilterFactory<SecurityFilter.Config> {
 
-    // Patterns for SQL injection detection
-    private static final List<Pattern> SQL_INJECTION_PATTERNS = List.of(
-        Pattern.compile(".*([';])+.*", Pattern.CASE_INSENSITIVE),
-        Pattern.compile(".*((union(\\s+)(all|select|distinct)?|having|group(\\s+)by|order(\\s+)by|insert|update|delete|create|drop|truncate|rename|alter)|exec(\\s)+(s|x)p(\\s)+).*", Pattern.CASE_INSENSITIVE),
-        Pattern.compile(".*cast\\(.*as.*).*", Pattern.CASE_INSENSITIVE)
-    );
-
-    // Patterns for XSS detection
-    private static final List<Pattern> XSS_PATTERNS = List.of(
-        Pattern.compile(".*<script.*>.*</script>.*", Pattern.CASE_INSENSITIVE),
-        Pattern.compile(".*javascript:.*", Pattern.CASE_INSENSITIVE),
-        Pattern.compile(".*onload=.*", Pattern.CASE_INSENSITIVE),
-        Pattern.compile(".*onerror=.*", Pattern.CASE_INSENSITIVE)
-    );
+    private final RequestInspector requestInspector;
+
+    public SecurityFilter(RequestInspector requestInspector) {
+        super(Config.class);
+        this.requestInspector = requestInspector;
+    }
 
     @Override
     public GatewayFilter apply(Config config) {
+        Set<String> skipHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        skipHeaders.addAll(config.getSafeHeaders());
+
         return (exchange, chain) -> {
             ServerHttpRequest request = exchange.getRequest();
             
-            // Check for malicious patterns in query parameters and headers
-            boolean isMalicious = isRequestMalicious(request);
-            
-            if (isMalicious) {
-                log.warn("Malicious request detected: {}", request.getURI());
-                exchange.getResponse().setStatusCode(org.springframework.http.HttpStatus.FORBIDDEN);
-                return exchange.getResponse().setComplete();
+            // Check for SQL injection and XSS patterns in query parameters and headers
+            String rule = null;
+            if (config.isInspectParameters()) {
+                rule = requestInspector.inspectQueryParams(request.getQueryParams(), config.getMaxInspectLength());
+                if (rule == null) {
+                    rule = requestInspector.inspectHeaders(request.getHeaders(), skipHeaders, config.getMaxInspectLength());
+                }
             }
             
-            return chain.filter(exchange);
+            if (rule != null) {
+                log.warn("Malicious request detected ({}): {}", rule, request.getURI());
+                return reject(exchange);
+            }
+
+            MediaType contentType = request.getHeaders().getContentType();
+            if (!config.isInspectBody() || contentType == null || !inspectsContentType(config, contentType)) {
+                return chain.filter(exchange);
+            }
+
+            // The body is checked while it streams upstream, a match aborts the proxied request
+            ServerHttpRequest inspectedRequest = new InspectingRequestDecorator(request, requestInspector.getBodyPatterns(),
+                (int) config.getMaxBodyInspectSize().toBytes(), MediaType.APPLICATION_FORM_URLENCODED.isCompatibleWith(contentType));
+            return chain.filter(exchange.mutate().request(inspectedRequest).build())
+                .onErrorResume(MaliciousContentException.class, e -> {
+                    log.warn("Malicious request body detected ({}): {}", e.getRule(), request.getURI());
+                    return exchange.getResponse().isCommitted() ? Mono.error(e) : reject(exchange);
+                });
         };
     }
 
-    private boolean isRequestMalicious(ServerHttpRequest request) {
-        // Check query parameters for SQL injection or XSS
-        for (var param : request.getQueryParams().entrySet()) {
-            for (String value : param.getValue()) {
-                if (isMaliciousContent(value)) {
-                    return true;
-                }
+    private static boolean inspectsContentType(Config config, MediaType contentType) {
+        for (MediaType inspected : config.getBodyContentTypes()) {
+            if (inspected.isCompatibleWith(contentType)) {
+                return true;
             }
         }
+        return false;
+    }
 
-        // Check headers for malicious content
-        for (var header : request.getHeaders().entrySet()) {
-            for (String value : header.getValue()) {
-                if (isMaliciousContent(value)) {
-                    return true;
-                }
-            }
+    private static Mono<Void> reject(ServerWebExchange exchange) {
+        exchange.getResponse().setStatusCode(HttpStatus.FORBIDDEN);
+        return exchange.getResponse().setComplete();
+    }
+
+    public static class Config {
+        // Standard headers whose syntax legitimately contains ';' or quotes, or that are validated elsewhere
+        private List<String> safeHeaders = List.of(
+            HttpHeaders.ACCEPT,
+            HttpHeaders.ACCEPT_ENCODING,
+            HttpHeaders.ACCEPT_LANGUAGE,
+            HttpHeaders.AUTHORIZATION,
+            HttpHeaders.CACHE_CONTROL,
+            HttpHeaders.CONNECTION,
+            HttpHeaders.CONTENT_LENGTH,
+            HttpHeaders.CONTENT_TYPE,
+            HttpHeaders.COOKIE,
+            HttpHeaders.HOST,
+            HttpHeaders.IF_MODIFIED_SINCE,
+            HttpHeaders.IF_NONE_MATCH,
+            HttpHeaders.USER_AGENT
+        );
+        private boolean inspectParameters = true; // Check query parameters and headers
+        private int maxInspectLength = 4096; // Characters inspected per value
+        private boolean inspectBody = false; // Scan request bodies while they are streamed upstream
+        private DataSize maxBodyInspectSize = DataSize.ofKilobytes(64); // Bytes inspected per body, the rest passes unchecked
+        private List<MediaType> bodyContentTypes = List.of(
+            MediaType.APPLICATION_JSON,
+            MediaType.APPLICATION_FORM_URLENCODED,
+            MediaType.TEXT_PLAIN
+        );
+
+        public List<String> getSafeHeaders() {
+            return safeHeaders;
         }
 
-        return false;
-    }
+        public void setSafeHeaders(List<String> safeHeaders) {
+            this.safeHeaders = safeHeaders;
+        }
 
-    private boolean isMaliciousContent(String content) {
-        if (content == null) {
-            return false;
+        public boolean isInspectParameters() {
+            return inspectParameters;
         }
 
-        // Check for SQL injection patterns
-        for (Pattern pattern : SQL_INJECTION_PATTERNS) {
-            if (pattern.matcher(content).matches()) {
-                log.debug("SQL injection pattern detected: {}", content);
-                return true;
-            }
+        public void setInspectParameters(boolean inspectParameters) {
+            this.inspectParameters = inspectParameters;
         }
 
-        // Check for XSS patterns
-        for (Pattern pattern : XSS_PATTERNS) {
-            if (pattern.matcher(content).matches()) {
-                log.debug("XSS pattern detected: {}", content);
-                return true;
-            }
+        public int getMaxInspectLength() {
+            return maxInspectLength;
         }
 
-        return false;
-    }
+        public void setMaxInspectLength(int maxInspectLength) {
+            this.maxInspectLength = maxInspectLength;
+        }
 
-    public static class Config {
-        // Configuration parameters if needed
+        public boolean isInspectBody() {
+            return inspectBody;
+        }
+
+        public void setInspectBody(boolean inspectBody) {
+            this.inspectBody = inspectBody;
+        }
+
+        public DataSize getMaxBodyInspectSize() {
+            return maxBodyInspectSize;
+        }
+
+        public void setMaxBodyInspectSize(DataSize maxBodyInspectSize) {
+            this.maxBodyInspectSize = maxBodyInspectSize;
+        }
+
+        public List<MediaType> getBodyContentTypes() {
+            return bodyContentTypes;
+        }
+
+        public void setBodyContentTypes(List<MediaType> bodyContentTypes) {
+            this.bodyContentTypes = bodyContentTypes;
+        }
     }
-}
\ No newline at end of file
+}
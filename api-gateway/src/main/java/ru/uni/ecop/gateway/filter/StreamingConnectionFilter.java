@@ -0,0 +1,58 @@
+package ru.uni.ecop.gateway.filter;
+
+import io.netty.channel.Channel;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import ru.uni.ecop.gateway.streaming.StreamingConnections;
+import ru.uni.ecop.gateway.streaming.StreamingRequests;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Tracks WebSocket sessions and event streams of streaming routes for their whole lifetime
+ * and has their client connections reaped when idle. Runs ahead of the response filter,
+ * so an event stream counts until its last event is written, not just until its headers.
+ */
+@Component
+public class StreamingConnectionFilter implements GlobalFilter, Ordered {
+
+    private final StreamingConnections connections;
+
+    public StreamingConnectionFilter(StreamingConnections connections) {
+        this.connections = connections;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        StreamingRequests.Type type = StreamingRequests.isStreamingRoute(route)
+            ? StreamingRequests.typeOf(exchange.getRequest())
+            : null;
+        if (type == null) {
+            return chain.filter(exchange);
+        }
+        return Mono.using(
+            () -> connections.open(route.getId(), type, channelOf(exchange.getRequest())),
+            registration -> chain.filter(exchange),
+            StreamingConnections.Registration::close);
+    }
+
+    @Override
+    public int getOrder() {
+        return NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+    }
+
+    private static Channel channelOf(ServerHttpRequest request) {
+        Object nativeRequest = ServerHttpRequestDecorator.getNativeRequest(request);
+        return nativeRequest instanceof Connection connection ? connection.channel() : null;
+    }
+}
@@ -0,0 +1,61 @@
+package ru.uni.ecop.gateway.filter;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.netty.http.client.HttpClient;
+import ru.uni.ecop.gateway.route.UpstreamHttpClients;
+import ru.uni.ecop.gateway.streaming.StreamingRequests;
+
+import java.util.List;
+
+/**
+ * NettyRoutingFilter that sends lb:// routes through the connection pool of their service.
+ * Event streams of streaming routes get the streaming pool of their service. Other routes
+ * use the default gateway client. Replaces the stock routing filter, which is disabled,
+ * and keeps its order, so WebSocket upgrades are still taken by WebsocketRoutingFilter
+ * first. Per-route connect-timeout and response-timeout metadata apply to the pools too.
+ */
+public class UpstreamRoutingFilter extends NettyRoutingFilter {
+
+    private final UpstreamHttpClients upstreamClients;
+
+    public UpstreamRoutingFilter(HttpClient httpClient,
+                                 ObjectProvider<List<HttpHeadersFilter>> headersFiltersProvider,
+                                 HttpClientProperties properties,
+                                 UpstreamHttpClients upstreamClients) {
+        super(httpClient, headersFiltersProvider, properties);
+        this.upstreamClients = upstreamClients;
+    }
+
+    @Override
+    protected HttpClient getHttpClient(Route route, ServerWebExchange exchange) {
+        if (!"lb".equals(route.getUri().getScheme()) || route.getUri().getHost() == null) {
+            return super.getHttpClient(route, exchange);
+        }
+        HttpClient client = StreamingRequests.isStreamingRoute(route)
+            && StreamingRequests.typeOf(exchange.getRequest()) == StreamingRequests.Type.SSE
+            ? upstreamClients.forStreaming(route.getUri().getHost())
+            : upstreamClients.forUpstream(route.getUri().getHost());
+        // Same as the stock client, the response timeout is applied by filter() itself
+        Object connectTimeout = route.getMetadata().get(RouteMetadataUtils.CONNECT_TIMEOUT_ATTR);
+        if (connectTimeout != null) {
+            client = client.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, toMillis(connectTimeout));
+        }
+        return client;
+    }
+
+    @Override
+    public int getOrder() {
+        return NettyRoutingFilter.ORDER;
+    }
+
+    private static int toMillis(Object connectTimeout) {
+        return connectTimeout instanceof Number number ? number.intValue() : Integer.parseInt(connectTimeout.toString());
+    }
+}
@@ -0,0 +1,62 @@
+package ru.uni.ecop.gateway.filter;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.loadbalancer.InstanceLatencyTracker;
+import ru.uni.ecop.gateway.loadbalancer.InstanceStats;
+import ru.uni.ecop.gateway.streaming.StreamingRequests;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR;
+
+/**
+ * Records every call to a load balanced instance for the latency aware load balancer:
+ * outstanding while in flight, latency until the upstream response headers arrive, and
+ * whether it failed (error or 5xx).
+ */
+@Component
+public class UpstreamTimingFilter implements GlobalFilter, Ordered {
+
+    private final InstanceLatencyTracker tracker;
+
+    public UpstreamTimingFilter(InstanceLatencyTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Response<ServiceInstance> chosen = exchange.getAttribute(GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+        // The duration of a WebSocket session says nothing about the instance's latency
+        if (chosen == null || !chosen.hasServer() || StreamingRequests.isWebSocketUpgrade(exchange.getRequest())) {
+            return chain.filter(exchange);
+        }
+
+        InstanceStats stats = tracker.forInstance(chosen.getServer());
+        stats.onStart();
+        long start = System.nanoTime();
+        return chain.filter(exchange)
+            .doOnSuccess(ignored -> {
+                HttpStatusCode status = exchange.getResponse().getStatusCode();
+                long now = System.nanoTime();
+                stats.onComplete(now - start, status != null && status.is5xxServerError(), now);
+            })
+            .doOnError(e -> {
+                long now = System.nanoTime();
+                stats.onComplete(now - start, true, now);
+            })
+            .doOnCancel(stats::onCancel);
+    }
+
+    @Override
+    public int getOrder() {
+        // Right after the instance has been chosen
+        return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER + 1;
+    }
+}
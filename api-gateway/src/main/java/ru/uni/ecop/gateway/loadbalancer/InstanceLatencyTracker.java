@@ -0,0 +1,50 @@
+package ru.uni.ecop.gateway.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.stereotype.Component;
+import ru.uni.ecop.gateway.config.LoadBalancingProperties;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * InstanceStats per service instance, shared by the load balancers that read them and the
+ * gateway filter that records upstream calls
+ */
+@Component
+public class InstanceLatencyTracker {
+
+    private final long decayNanos;
+    private final long failureNanos;
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, InstanceStats>> services = new ConcurrentHashMap<>();
+
+    public InstanceLatencyTracker(LoadBalancingProperties properties) {
+        this.decayNanos = properties.getDecayTime().toNanos();
+        this.failureNanos = properties.getFailureLatency().toNanos();
+    }
+
+    public InstanceStats forInstance(ServiceInstance instance) {
+        ConcurrentHashMap<String, InstanceStats> instances = services.computeIfAbsent(instance.getServiceId(),
+            serviceId -> new ConcurrentHashMap<>());
+        String key = key(instance);
+        InstanceStats stats = instances.get(key);
+        return stats != null ? stats : instances.computeIfAbsent(key, ignored -> new InstanceStats(decayNanos, failureNanos));
+    }
+
+    /**
+     * Drops the stats of instances that left the service, called when its instance list changes
+     */
+    public void retain(String serviceId, Collection<ServiceInstance> current) {
+        ConcurrentHashMap<String, InstanceStats> instances = services.get(serviceId);
+        if (instances != null) {
+            Set<String> keys = current.stream().map(InstanceLatencyTracker::key).collect(Collectors.toSet());
+            instances.keySet().retainAll(keys);
+        }
+    }
+
+    private static String key(ServiceInstance instance) {
+        return instance.getHost() + ":" + instance.getPort();
+    }
+}
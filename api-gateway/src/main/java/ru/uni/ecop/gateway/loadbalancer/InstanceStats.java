@@ -0,0 +1,76 @@
+package ru.uni.ecop.gateway.loadbalancer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Peak EWMA latency and outstanding calls of one service instance. A latency above the
+ * average replaces it at once, lower ones pull it down with a weight that grows with the
+ * time since the last sample, so a slow response is felt immediately and forgotten over
+ * about decayTime. The average is an immutable value swapped by compare-and-set.
+ */
+public final class InstanceStats {
+
+    // Load of an instance that has calls outstanding but no latency yet, it gets one call at a time
+    private static final double UNMEASURED_PENALTY = 1e15;
+
+    private final double decayNanos;
+    private final long failureNanos;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicReference<Ewma> ewma = new AtomicReference<>(new Ewma(0, 0));
+
+    InstanceStats(long decayNanos, long failureNanos) {
+        this.decayNanos = Math.max(1, decayNanos);
+        this.failureNanos = failureNanos;
+    }
+
+    public void onStart() {
+        outstanding.incrementAndGet();
+    }
+
+    public void onComplete(long latencyNanos, boolean failed, long now) {
+        outstanding.decrementAndGet();
+        double sample = failed ? Math.max(latencyNanos, failureNanos) : latencyNanos;
+        Ewma current;
+        Ewma next;
+        do {
+            current = ewma.get();
+            double cost = sample > current.cost ? sample : decayed(current, now) + sample * (1 - weight(current, now));
+            next = new Ewma(cost, now);
+        } while (!ewma.compareAndSet(current, next));
+    }
+
+    /**
+     * Call ended without an outcome, it only stops counting as outstanding
+     */
+    public void onCancel() {
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * Expected wait for a new call: the decayed latency times the calls it would queue behind
+     */
+    public double load(long now) {
+        Ewma current = ewma.get();
+        int pending = Math.max(0, outstanding.get());
+        if (current.cost == 0) {
+            return pending == 0 ? 0 : UNMEASURED_PENALTY + pending;
+        }
+        return decayed(current, now) * (pending + 1);
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    private double decayed(Ewma current, long now) {
+        return current.cost * weight(current, now);
+    }
+
+    private double weight(Ewma current, long now) {
+        return Math.exp(-Math.max(0, now - current.stamp) / decayNanos);
+    }
+
+    private record Ewma(double cost, long stamp) {
+    }
+}
@@ -0,0 +1,150 @@
+package ru.uni.ecop.gateway.loadbalancer;
+
+import com.ecwid.consul.v1.health.model.Check;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.consul.discovery.ConsulServiceInstance;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power of two choices over peak EWMA load: two random instances are compared and the one
+ * with the lower expected wait (latency times outstanding calls) gets the call. One slow
+ * instance therefore loses its share of traffic as soon as its responses slow down, while
+ * random sampling keeps a single fast instance from being flooded.
+ * Consul health feeds in as well: instances with a critical check are skipped unless no
+ * other is left, instances with a warning count with warningPenalty times their load.
+ * A request can name an instance to stay away from in AVOID_INSTANCE_ATTR, which hedged
+ * requests use to reach a different replica than the call they duplicate.
+ */
+public class LatencyAwareLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+    // Exchange attribute holding a ServiceInstance not to choose when another one is available
+    public static final String AVOID_INSTANCE_ATTR = LatencyAwareLoadBalancer.class.getName() + ".avoid";
+
+    private final ObjectProvider<ServiceInstanceListSupplier> instanceSuppliers;
+    private final String serviceId;
+    private final InstanceLatencyTracker tracker;
+    private final double warningPenalty;
+    private volatile List<ServiceInstance> lastInstances;
+
+    public LatencyAwareLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> instanceSuppliers, String serviceId,
+                                    InstanceLatencyTracker tracker, double warningPenalty) {
+        this.instanceSuppliers = instanceSuppliers;
+        this.serviceId = serviceId;
+        this.tracker = tracker;
+        this.warningPenalty = warningPenalty;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        ServiceInstanceListSupplier supplier = instanceSuppliers.getIfAvailable(NoopServiceInstanceListSupplier::new);
+        ServiceInstance avoid = avoidedBy(request);
+        return supplier.get(request).next().map(instances -> {
+            ServiceInstance chosen = choose(instances, avoid, System.nanoTime());
+            return chosen != null ? new DefaultResponse(chosen) : new EmptyResponse();
+        });
+    }
+
+    ServiceInstance choose(List<ServiceInstance> instances, long now) {
+        return choose(instances, null, now);
+    }
+
+    ServiceInstance choose(List<ServiceInstance> instances, ServiceInstance avoid, long now) {
+        if (instances != lastInstances) {
+            lastInstances = instances;
+            tracker.retain(serviceId, instances);
+        }
+        List<ServiceInstance> candidates = without(withoutCritical(instances), avoid);
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        ServiceInstance a = candidates.get(first);
+        ServiceInstance b = candidates.get(second);
+        return load(a, now) <= load(b, now) ? a : b;
+    }
+
+    private double load(ServiceInstance instance, long now) {
+        double load = tracker.forInstance(instance).load(now);
+        return health(instance) == Check.CheckStatus.WARNING ? load * warningPenalty : load;
+    }
+
+    private static List<ServiceInstance> without(List<ServiceInstance> instances, ServiceInstance avoid) {
+        if (avoid == null || instances.size() < 2) {
+            return instances;
+        }
+        List<ServiceInstance> others = new ArrayList<>(instances.size() - 1);
+        for (ServiceInstance instance : instances) {
+            if (!instance.getHost().equals(avoid.getHost()) || instance.getPort() != avoid.getPort()) {
+                others.add(instance);
+            }
+        }
+        return others.isEmpty() ? instances : others;
+    }
+
+    private static ServiceInstance avoidedBy(Request<?> request) {
+        if (request.getContext() instanceof RequestDataContext context) {
+            RequestData data = context.getClientRequest();
+            if (data != null && data.getAttributes() != null
+                && data.getAttributes().get(AVOID_INSTANCE_ATTR) instanceof ServiceInstance avoid) {
+                return avoid;
+            }
+        }
+        return null;
+    }
+
+    private static List<ServiceInstance> withoutCritical(List<ServiceInstance> instances) {
+        List<ServiceInstance> healthy = null;
+        for (int i = 0; i < instances.size(); i++) {
+            if (health(instances.get(i)) == Check.CheckStatus.CRITICAL) {
+                if (healthy == null) {
+                    healthy = new ArrayList<>(instances.subList(0, i));
+                }
+            } else if (healthy != null) {
+                healthy.add(instances.get(i));
+            }
+        }
+        // All critical: Consul may be the one that is wrong, keep routing rather than fail every call
+        return healthy == null || healthy.isEmpty() ? instances : healthy;
+    }
+
+    private static Check.CheckStatus health(ServiceInstance instance) {
+        if (!(instance instanceof ConsulServiceInstance consulInstance) || consulInstance.getHealthService() == null
+            || consulInstance.getHealthService().getChecks() == null) {
+            return Check.CheckStatus.PASSING;
+        }
+        Check.CheckStatus worst = Check.CheckStatus.PASSING;
+        for (Check check : consulInstance.getHealthService().getChecks()) {
+            if (check.getStatus() == Check.CheckStatus.CRITICAL) {
+                return Check.CheckStatus.CRITICAL;
+            }
+            if (check.getStatus() == Check.CheckStatus.WARNING) {
+                worst = Check.CheckStatus.WARNING;
+            }
+        }
+        return worst;
+    }
+}
@@ -0,0 +1,371 @@
+package ru.uni.ecop.gateway.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.config.RateLimitingProperties;
+import ru.uni.ecop.gateway.dto.AuthenticatedUser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets kept in gateway memory, so allowing a request costs no Redis round trip.
+ * In hybrid mode every node periodically adds its consumption to shared counters in Redis,
+ * in one batch per sync interval, and debits what the other nodes consumed in the meantime
+ * from its own buckets. The global limit is approximate: the overshoot is bounded by what
+ * the other nodes can take within one sync interval. Only keys used on this node since the
+ * last sync are sent, a key learns what the other nodes took once it is used here again.
+ * <p>
+ * Limits come from the policy mapped to the route (the default policy otherwise), narrowed to
+ * the caller's tier when the policy defines one. The tier is read from the user that
+ * AuthenticationFilter put into the Reactor context, so no header is parsed again.
+ */
+@Component
+@Primary
+@Slf4j
+public class HybridRateLimiter extends AbstractRateLimiter<HybridRateLimiter.Config> {
+
+    public static final String CONFIGURATION_PROPERTY_NAME = "hybrid-rate-limiter";
+
+    public static final String DEFAULT_POLICY = "default";
+
+    private static final int SYNC_BATCH_SIZE = 500;
+
+    private final RateLimitingProperties properties;
+    private final RateLimitSyncStore syncStore;
+    // Replaced as a whole when policies are reloaded
+    private volatile PolicyTable policies;
+    private final Cache<String, LocalTokenBucket> buckets;
+    // Keys of buckets with consumption not yet reported
+    private final Set<String> dirtyKeys = ConcurrentHashMap.newKeySet();
+    // Theoretical arrival time per key of GCRA policies
+    private final Cache<String, AtomicLong> arrivals;
+    private final Counter allowedRequests;
+    private final Counter deniedRequests;
+    private Disposable syncTask;
+
+    public HybridRateLimiter(RateLimitingProperties properties, RateLimitSyncStore syncStore,
+                             ConfigurationService configurationService, MeterRegistry meterRegistry) {
+        super(Config.class, CONFIGURATION_PROPERTY_NAME, configurationService);
+        this.properties = properties;
+        this.syncStore = syncStore;
+        this.policies = PolicyTable.of(properties);
+
+        this.buckets = Caffeine.newBuilder()
+            .maximumSize(properties.getMaximumKeys())
+            .expireAfterAccess(properties.getIdleTimeout())
+            .build();
+        this.arrivals = Caffeine.newBuilder()
+            .maximumSize(properties.getMaximumKeys())
+            .expireAfterAccess(properties.getIdleTimeout())
+            .build();
+        this.allowedRequests = Counter.builder("gateway.ratelimit.requests")
+            .tag("outcome", "allowed")
+            .register(meterRegistry);
+        this.deniedRequests = Counter.builder("gateway.ratelimit.requests")
+            .tag("outcome", "denied")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void startSync() {
+        if (properties.getMode() != RateLimitingProperties.Mode.HYBRID) {
+            return;
+        }
+        syncTask = Flux.interval(properties.getSyncInterval())
+            .onBackpressureDrop()
+            .concatMap(tick -> sync())
+            .subscribe();
+    }
+
+    @PreDestroy
+    public void stopSync() {
+        if (syncTask != null) {
+            syncTask.dispose();
+        }
+    }
+
+    /**
+     * Replaces default limits, tiers, policies and route mappings, the structural settings
+     * (mode, sync interval, key limits) stay as configured at startup. Buckets are kept, so
+     * new limits apply from the next request without resetting consumption.
+     */
+    public void updatePolicies(RateLimitingProperties updated) {
+        this.policies = PolicyTable.of(updated);
+    }
+
+    /**
+     * Fails with IllegalStateException where updatePolicies would, without installing anything
+     */
+    public void validatePolicies(RateLimitingProperties candidate) {
+        PolicyTable.of(candidate);
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        if (!properties.isEnabled()) {
+            return Mono.just(new Response(true, Map.of()));
+        }
+        return Mono.deferContextual(context -> {
+            AuthenticatedUser user = context.getOrDefault(AuthenticatedUser.class, null);
+            Config config = resolve(routeId, user != null ? user.getTier() : null);
+            // Routes sharing a policy share the budget, route arguments get a budget of their own.
+            // Either way one bucket always sees the same limits.
+            String key = (config.bucket != null ? config.bucket : routeId) + ":" + id;
+            long now = System.nanoTime();
+
+            long remaining;
+            if (config.getAlgorithm() == RateLimitingProperties.Algorithm.GCRA) {
+                remaining = acquireGcra(arrivals.get(key, k -> new AtomicLong(Long.MIN_VALUE)), now, config);
+            } else {
+                LocalTokenBucket bucket = buckets.get(key,
+                    k -> new LocalTokenBucket(now, config.getReplenishRate(), config.getBurstCapacity()));
+                remaining = bucket.tryAcquire(now, config.getRequestedTokens(), config.getReplenishRate(), config.getBurstCapacity());
+                if (remaining >= 0 && properties.getMode() == RateLimitingProperties.Mode.HYBRID && bucket.markDirty()) {
+                    dirtyKeys.add(key);
+                }
+            }
+            boolean allowed = remaining >= 0;
+            (allowed ? allowedRequests : deniedRequests).increment();
+            return Mono.just(new Response(allowed, headers(config, Math.max(remaining, 0))));
+        });
+    }
+
+    private Config resolve(String routeId, String tier) {
+        // Limits given as route filter arguments take precedence over policies
+        Config routeConfig = getConfig().get(routeId);
+        if (routeConfig != null) {
+            return routeConfig;
+        }
+        ResolvedPolicy policy = policies.forRoute(routeId);
+        if (tier != null) {
+            Config tierConfig = policy.tiers().get(tier);
+            if (tierConfig != null) {
+                return tierConfig;
+            }
+        }
+        return policy.base();
+    }
+
+    /**
+     * Generic cell rate algorithm: the key is allowed when its theoretical arrival time,
+     * advanced by the cost of the request, stays within one burst of now
+     */
+    private static long acquireGcra(AtomicLong theoreticalArrival, long now, Config config) {
+        long interval = 1_000_000_000L / config.getReplenishRate();
+        long capacity = interval * config.getBurstCapacity();
+        long cost = interval * config.getRequestedTokens();
+        while (true) {
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, now) + cost;
+            if (next - now > capacity) {
+                return -1;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return (capacity - (next - now)) / interval;
+            }
+        }
+    }
+
+    /**
+     * Pushes local consumption of the keys used since the last sync and applies the other
+     * nodes' consumption to them
+     */
+    Mono<Void> sync() {
+        List<Map.Entry<String, LocalTokenBucket>> entries = new ArrayList<>();
+        for (String key : dirtyKeys) {
+            dirtyKeys.remove(key);
+            LocalTokenBucket bucket = buckets.getIfPresent(key);
+            if (bucket != null) {
+                bucket.clearDirty();
+                entries.add(Map.entry(key, bucket));
+            }
+        }
+        if (entries.isEmpty()) {
+            return Mono.empty();
+        }
+        return Flux.fromIterable(entries)
+            .buffer(SYNC_BATCH_SIZE)
+            .concatMap(this::syncBatch)
+            .then();
+    }
+
+    private Mono<Void> syncBatch(List<Map.Entry<String, LocalTokenBucket>> batch) {
+        List<String> keys = new ArrayList<>(batch.size());
+        List<Long> deltas = new ArrayList<>(batch.size());
+        for (Map.Entry<String, LocalTokenBucket> entry : batch) {
+            keys.add(properties.getKeyPrefix() + entry.getKey());
+            deltas.add(entry.getValue().drainPending());
+        }
+
+        return syncStore.addAndGet(keys, deltas, properties.getIdleTimeout())
+            .doOnNext(totals -> {
+                long now = System.nanoTime();
+                long syncInterval = properties.getSyncInterval().toNanos();
+                for (int i = 0; i < batch.size(); i++) {
+                    LocalTokenBucket bucket = batch.get(i).getValue();
+                    long total = totals.get(i);
+                    long previous = bucket.getLastGlobalTotal();
+                    // A counter that expired in Redis starts over, there is nothing to debit then
+                    long consumedElsewhere = total - previous - deltas.get(i);
+                    // After a pause in local use, part of what the others took has been refilled since
+                    long refilled = Math.max(0, now - bucket.getLastSyncedAt() - syncInterval) / bucket.getIntervalNanos();
+                    if (previous >= 0 && consumedElsewhere > refilled) {
+                        bucket.debit(now, consumedElsewhere - refilled);
+                    }
+                    bucket.setLastGlobalTotal(total);
+                    bucket.setLastSyncedAt(now);
+                }
+            })
+            .onErrorResume(e -> {
+                // Keep limiting locally and report the consumption with the next sync
+                log.warn("Rate limit sync failed: {}", e.getMessage());
+                for (int i = 0; i < batch.size(); i++) {
+                    LocalTokenBucket bucket = batch.get(i).getValue();
+                    bucket.restorePending(deltas.get(i));
+                    if (bucket.markDirty()) {
+                        dirtyKeys.add(batch.get(i).getKey());
+                    }
+                }
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    private static Map<String, String> headers(Config config, long remaining) {
+        return Map.of(
+            RedisRateLimiter.REMAINING_HEADER, String.valueOf(remaining),
+            RedisRateLimiter.REPLENISH_RATE_HEADER, String.valueOf(config.getReplenishRate()),
+            RedisRateLimiter.BURST_CAPACITY_HEADER, String.valueOf(config.getBurstCapacity()),
+            RedisRateLimiter.REQUESTED_TOKENS_HEADER, String.valueOf(config.getRequestedTokens()));
+    }
+
+    private record PolicyTable(Map<String, ResolvedPolicy> policies, Map<String, String> routes) {
+
+        static PolicyTable of(RateLimitingProperties properties) {
+            Map<String, ResolvedPolicy> policies = new HashMap<>();
+            RateLimitingProperties.Policy defaultPolicy = new RateLimitingProperties.Policy();
+            defaultPolicy.setReplenishRate(properties.getReplenishRate());
+            defaultPolicy.setBurstCapacity(properties.getBurstCapacity());
+            defaultPolicy.setRequestedTokens(properties.getRequestedTokens());
+            defaultPolicy.setTiers(properties.getTiers());
+            policies.put(DEFAULT_POLICY, ResolvedPolicy.of(DEFAULT_POLICY, defaultPolicy));
+            properties.getPolicies().forEach((name, policy) -> policies.put(name, ResolvedPolicy.of(name, policy)));
+            properties.getRoutes().forEach((routeId, policy) -> {
+                if (!policies.containsKey(policy)) {
+                    throw new IllegalStateException("Route " + routeId + " refers to unknown rate limit policy " + policy);
+                }
+            });
+            return new PolicyTable(policies, Map.copyOf(properties.getRoutes()));
+        }
+
+        ResolvedPolicy forRoute(String routeId) {
+            return policies.get(routes.getOrDefault(routeId, DEFAULT_POLICY));
+        }
+    }
+
+    private record ResolvedPolicy(Config base, Map<String, Config> tiers) {
+
+        static ResolvedPolicy of(String name, RateLimitingProperties.Policy policy) {
+            checkLimits(name, policy.getReplenishRate(), policy.getBurstCapacity());
+            policy.getTiers().forEach((tier, limits) ->
+                checkLimits(name + "/" + tier, limits.getReplenishRate(), limits.getBurstCapacity()));
+            Config base = Config.of(name, policy.getAlgorithm(), policy.getReplenishRate(), policy.getBurstCapacity(),
+                policy.getRequestedTokens());
+            Map<String, Config> tiers = new HashMap<>();
+            policy.getTiers().forEach((tier, limits) -> {
+                Config config = Config.of(name, policy.getAlgorithm(), limits.getReplenishRate(),
+                    limits.getBurstCapacity(), policy.getRequestedTokens());
+                config.bucket = name + "/" + tier;
+                tiers.put(tier, config);
+            });
+            return new ResolvedPolicy(base, tiers);
+        }
+
+        private static void checkLimits(String name, int replenishRate, int burstCapacity) {
+            if (replenishRate <= 0 || burstCapacity <= 0) {
+                throw new IllegalStateException("Rate limit policy " + name + " needs a positive replenish rate and burst capacity");
+            }
+        }
+    }
+
+    public static class Config {
+        private String policy;
+        private RateLimitingProperties.Algorithm algorithm = RateLimitingProperties.Algorithm.TOKEN_BUCKET;
+        private int replenishRate;
+        private int burstCapacity;
+        private int requestedTokens = 1;
+        // Names the buckets of a policy, route arguments leave it unset and are bucketed per route
+        private String bucket;
+
+        static Config of(String policy, RateLimitingProperties.Algorithm algorithm,
+                         int replenishRate, int burstCapacity, int requestedTokens) {
+            Config config = new Config();
+            config.setPolicy(policy);
+            config.setAlgorithm(algorithm);
+            config.setReplenishRate(replenishRate);
+            config.setBurstCapacity(burstCapacity);
+            config.setRequestedTokens(requestedTokens);
+            config.bucket = policy;
+            return config;
+        }
+
+        public String getPolicy() {
+            return policy;
+        }
+
+        public void setPolicy(String policy) {
+            this.policy = policy;
+        }
+
+        public RateLimitingProperties.Algorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        public void setAlgorithm(RateLimitingProperties.Algorithm algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        public int getReplenishRate() {
+            return replenishRate;
+        }
+
+        public void setReplenishRate(int replenishRate) {
+            this.replenishRate = replenishRate;
+        }
+
+        public int getBurstCapacity() {
+            return burstCapacity;
+        }
+
+        public void setBurstCapacity(int burstCapacity) {
+            this.burstCapacity = burstCapacity;
+        }
+
+        public int getRequestedTokens() {
+            return requestedTokens;
+        }
+
+        public void setRequestedTokens(int requestedTokens) {
+            this.requestedTokens = requestedTokens;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ru.uni.ecop.gateway.ratelimit;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket. Instead of a token count and a refill timestamp the bucket keeps a
+ * single instant, the time at which it was (or will be) empty, so taking tokens is one CAS:
+ * available tokens = (now - emptyAt) / interval, capped at the burst capacity.
+ */
+class LocalTokenBucket {
+
+    private final AtomicLong emptyAt;
+    // Tokens taken locally since the last sync
+    private final AtomicLong pending = new AtomicLong();
+    // Set while the bucket waits in the limiter's set of keys to sync
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    // Global consumption counter as of the last sync, -1 before the first one (sync thread only)
+    private long lastGlobalTotal = -1;
+    // When the bucket was last synced (sync thread only)
+    private long lastSyncedAt;
+    private volatile long intervalNanos;
+    private volatile long capacityNanos;
+
+    LocalTokenBucket(long now, int replenishRate, int burstCapacity) {
+        configure(replenishRate, burstCapacity);
+        this.emptyAt = new AtomicLong(now - capacityNanos);
+        this.lastSyncedAt = now;
+    }
+
+    /**
+     * Takes the tokens if available and returns the tokens left, or -1 when the request is denied
+     */
+    long tryAcquire(long now, int tokens, int replenishRate, int burstCapacity) {
+        configure(replenishRate, burstCapacity);
+        long cost = tokens * intervalNanos;
+        while (true) {
+            long current = emptyAt.get();
+            long next = Math.max(current, now - capacityNanos) + cost;
+            if (next > now) {
+                return -1;
+            }
+            if (emptyAt.compareAndSet(current, next)) {
+                pending.addAndGet(tokens);
+                return (now - next) / intervalNanos;
+            }
+        }
+    }
+
+    /**
+     * Removes tokens spent on other nodes, at most one full bucket of debt is kept
+     */
+    void debit(long now, long tokens) {
+        long cost = tokens * intervalNanos;
+        while (true) {
+            long current = emptyAt.get();
+            long next = Math.min(Math.max(current, now - capacityNanos) + cost, now + capacityNanos);
+            if (emptyAt.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    long drainPending() {
+        return pending.getAndSet(0);
+    }
+
+    void restorePending(long tokens) {
+        pending.addAndGet(tokens);
+    }
+
+    /**
+     * True for the caller that has to add the bucket to the keys to sync
+     */
+    boolean markDirty() {
+        return !dirty.get() && dirty.compareAndSet(false, true);
+    }
+
+    void clearDirty() {
+        dirty.set(false);
+    }
+
+    long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    long getLastSyncedAt() {
+        return lastSyncedAt;
+    }
+
+    void setLastSyncedAt(long lastSyncedAt) {
+        this.lastSyncedAt = lastSyncedAt;
+    }
+
+    long getLastGlobalTotal() {
+        return lastGlobalTotal;
+    }
+
+    void setLastGlobalTotal(long lastGlobalTotal) {
+        this.lastGlobalTotal = lastGlobalTotal;
+    }
+
+    private void configure(int replenishRate, int burstCapacity) {
+        // Skip the volatile writes while the route configuration is unchanged
+        long interval = 1_000_000_000L / replenishRate;
+        if (interval != intervalNanos) {
+            intervalNanos = interval;
+        }
+        long capacity = interval * burstCapacity;
+        if (capacity != capacityNanos) {
+            capacityNanos = capacity;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package ru.uni.ecop.gateway.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Shared consumption counters of the hybrid rate limiter
+ */
+public interface RateLimitSyncStore {
+
+    /**
+     * Adds each delta to the counter of the key at the same index and returns the new totals in the same
+     * order. Counters of keys that are not updated for longer than ttl may be reset.
+     */
+    Mono<List<Long>> addAndGet(List<String> keys, List<Long> deltas, Duration ttl);
+}
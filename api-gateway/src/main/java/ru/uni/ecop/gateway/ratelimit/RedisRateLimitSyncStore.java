@@ -0,0 +1,46 @@
+package ru.uni.ecop.gateway.ratelimit;
+
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Updates all counters of one sync batch in a single script call, one Redis round trip per batch
+ */
+@Component
+public class RedisRateLimitSyncStore implements RateLimitSyncStore {
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ADD_AND_GET = RedisScript.of("""
+        local totals = {}
+        for i, key in ipairs(KEYS) do
+          totals[i] = redis.call('INCRBY', key, ARGV[i + 1])
+          redis.call('EXPIRE', key, ARGV[1])
+        end
+        return totals
+        """, List.class);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    public RedisRateLimitSyncStore(ReactiveStringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Mono<List<Long>> addAndGet(List<String> keys, List<Long> deltas, Duration ttl) {
+        List<String> args = new ArrayList<>(deltas.size() + 1);
+        args.add(String.valueOf(Math.max(1, ttl.toSeconds())));
+        for (Long delta : deltas) {
+            args.add(String.valueOf(delta));
+        }
+        return redisTemplate.execute(ADD_AND_GET, keys, args)
+            .next()
+            .map(totals -> (List<Long>) totals);
+    }
+}
@@ -0,0 +1,189 @@
+package ru.uni.ecop.gateway.resilience;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import ru.uni.ecop.gateway.config.ConcurrencyLimitProperties;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Concurrency limit of one upstream that follows its latency, in the manner of TCP Vegas.
+ * The queue building up at the upstream is estimated from every response as
+ * limit * (1 - baseline / rtt), with the minimum latency of the recent window as baseline:
+ * <ul>
+ * <li>the limit grows while the estimated queue stays below 3 * log10(limit)</li>
+ * <li>it shrinks when the queue exceeds 6 * log10(limit) or a call failed</li>
+ * <li>it is left alone while less than half of it is in use, since latency then says
+ * nothing about the capacity of the upstream</li>
+ * </ul>
+ * Each adjustment is smoothed, since responses still reflect the limit in place when
+ * their requests were admitted. Requests over the limit wait in a short bounded queue and
+ * are admitted in arrival order as slots free up. The estimate is an immutable value
+ * swapped by compare-and-set and slots are a counter, so neither admitting nor sampling
+ * takes a lock.
+ */
+public final class AdaptiveConcurrencyLimiter {
+
+    public enum Rejection {
+        QUEUE_FULL, QUEUE_TIMEOUT
+    }
+
+    @FunctionalInterface
+    public interface RejectionListener {
+        void onRejected(Rejection reason);
+    }
+
+    private static final ConcurrencyLimitExceededException QUEUE_FULL =
+        new ConcurrencyLimitExceededException(Rejection.QUEUE_FULL);
+    private static final ConcurrencyLimitExceededException QUEUE_TIMEOUT =
+        new ConcurrencyLimitExceededException(Rejection.QUEUE_TIMEOUT);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final long baselineWindowNanos;
+    private final int maxQueueSize;
+    private final RejectionListener listener;
+    private final AtomicReference<Estimate> estimate;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final SlotQueue waiters;
+
+    public AdaptiveConcurrencyLimiter(ConcurrencyLimitProperties settings, RejectionListener listener) {
+        this.minLimit = Math.max(1, settings.getMinLimit());
+        this.maxLimit = Math.max(minLimit, settings.getMaxLimit());
+        this.smoothing = Math.min(1, Math.max(0.01, settings.getSmoothing()));
+        this.baselineWindowNanos = settings.getBaselineWindow().toNanos();
+        this.maxQueueSize = Math.max(0, settings.getMaxQueueSize());
+        this.listener = listener;
+        int initialLimit = Math.min(maxLimit, Math.max(minLimit, settings.getInitialLimit()));
+        this.estimate = new AtomicReference<>(new Estimate(initialLimit, Long.MAX_VALUE, Long.MAX_VALUE, 0));
+        this.waiters = new SlotQueue(1, new SlotQueue.Slots() {
+            @Override
+            public boolean tryTake() {
+                return takeSlot();
+            }
+
+            @Override
+            public void giveBack() {
+                inFlight.decrementAndGet();
+            }
+        }, Schedulers.parallel());
+    }
+
+    /**
+     * Takes a slot when one is free and nobody is waiting for it
+     */
+    public boolean tryAcquire() {
+        return waiters.isEmpty(0) && takeSlot();
+    }
+
+    /**
+     * Completes once the request holds a slot, which it must give back with release.
+     * Fails with ConcurrencyLimitExceededException when the queue is full or no slot freed
+     * up within maxWait.
+     */
+    public Mono<Void> acquire(Duration maxWait) {
+        if (tryAcquire()) {
+            return Mono.empty();
+        }
+        if (maxQueueSize == 0 || maxWait.isZero() || maxWait.isNegative()) {
+            return reject(QUEUE_FULL);
+        }
+        return Mono.defer(() -> {
+            if (!waiters.reserve(0, maxQueueSize)) {
+                return reject(QUEUE_FULL);
+            }
+            return waiters.await(0, maxWait.toNanos(), () -> {
+                listener.onRejected(Rejection.QUEUE_TIMEOUT);
+                return QUEUE_TIMEOUT;
+            });
+        });
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+        waiters.drain();
+    }
+
+    /**
+     * Feeds the latency of a call admitted under this limit. Failed calls (dropped) lower
+     * the limit regardless of their latency.
+     */
+    public void onSample(long rttNanos, boolean dropped, long now) {
+        int used = inFlight.get();
+        Estimate current;
+        Estimate next;
+        do {
+            current = estimate.get();
+            next = update(current, Math.max(1, rttNanos), dropped, now, used);
+        } while (!estimate.compareAndSet(current, next));
+
+        if (next.limit > current.limit) {
+            waiters.drain();
+        }
+    }
+
+    public int getLimit() {
+        return (int) estimate.get().limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getQueued() {
+        return waiters.size(0);
+    }
+
+    private Estimate update(Estimate current, long rtt, boolean dropped, long now, int used) {
+        long windowMin = current.windowMin;
+        long previousMin = current.previousMin;
+        long windowStart = current.windowStart;
+        if (windowMin == Long.MAX_VALUE && previousMin == Long.MAX_VALUE || now - windowStart >= baselineWindowNanos) {
+            previousMin = windowMin;
+            windowMin = Long.MAX_VALUE;
+            windowStart = now;
+        }
+        windowMin = Math.min(windowMin, rtt);
+        long baseline = Math.min(windowMin, previousMin);
+
+        double limit = current.limit;
+        double step = Math.max(1, (int) Math.log10(current.limit));
+        if (dropped) {
+            limit -= step;
+        } else if (used * 2 >= limit) {
+            double queue = limit * (1 - (double) baseline / rtt);
+            if (queue <= step) {
+                limit += 6 * step;
+            } else if (queue < 3 * step) {
+                limit += step;
+            } else if (queue > 6 * step) {
+                limit -= step;
+            }
+        }
+        limit = current.limit * (1 - smoothing) + limit * smoothing;
+        limit = Math.min(maxLimit, Math.max(minLimit, limit));
+        return new Estimate(limit, windowMin, previousMin, windowStart);
+    }
+
+    private boolean takeSlot() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= getLimit()) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private Mono<Void> reject(ConcurrencyLimitExceededException rejection) {
+        listener.onRejected(rejection.getReason());
+        return Mono.error(rejection);
+    }
+
+    private record Estimate(double limit, long windowMin, long previousMin, long windowStart) {
+    }
+}
@@ -0,0 +1,134 @@
+package ru.uni.ecop.gateway.resilience;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import ru.uni.ecop.gateway.config.AdmissionProperties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Admits at most maxConcurrent requests into the gateway at once. Requests beyond that wait
+ * in one queue per priority and are admitted highest priority first, so under overload the
+ * delay builds up in the lower priorities. Each queue is watched in the manner of CoDel:
+ * a queue that drains now and then only absorbs bursts, and its requests may wait up to
+ * interval. A queue that has not been empty for a whole interval holds a standing backlog,
+ * its requests are then shed once they waited target, which keeps the delay of what is
+ * admitted bounded rather than letting every request wait and time out later.
+ * Slots and queue sizes are counters and the queues lock-free, so admitting a request takes
+ * no lock.
+ */
+public final class AdmissionController {
+
+    public enum Rejection {
+        QUEUE_FULL, QUEUE_DELAY
+    }
+
+    @FunctionalInterface
+    public interface RejectionListener {
+        void onRejected(Priority priority, Rejection reason);
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+    private static final AdmissionRejectedException QUEUE_FULL = new AdmissionRejectedException(Rejection.QUEUE_FULL);
+    private static final AdmissionRejectedException QUEUE_DELAY = new AdmissionRejectedException(Rejection.QUEUE_DELAY);
+
+    private final int maxConcurrent;
+    private final long targetNanos;
+    private final long intervalNanos;
+    private final int maxQueueSize;
+    private final RejectionListener listener;
+    private final LongSupplier clock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // One lane per priority, highest first
+    private final SlotQueue waiters;
+    // Per priority: last time a request found its lane empty, the lane has been busy ever since
+    private final AtomicLongArray lastEmpty = new AtomicLongArray(PRIORITIES.length);
+
+    public AdmissionController(AdmissionProperties settings, RejectionListener listener) {
+        this(settings, listener, System::nanoTime, Schedulers.parallel());
+    }
+
+    AdmissionController(AdmissionProperties settings, RejectionListener listener, LongSupplier clock, Scheduler timer) {
+        this.maxConcurrent = Math.max(1, settings.getMaxConcurrent());
+        this.targetNanos = settings.getTarget().toNanos();
+        this.intervalNanos = Math.max(targetNanos, settings.getInterval().toNanos());
+        this.maxQueueSize = Math.max(0, settings.getMaxQueueSize());
+        this.listener = listener;
+        this.clock = clock;
+        this.waiters = new SlotQueue(PRIORITIES.length, new SlotQueue.Slots() {
+            @Override
+            public boolean tryTake() {
+                return takeSlot();
+            }
+
+            @Override
+            public void giveBack() {
+                inFlight.decrementAndGet();
+            }
+        }, timer);
+        long now = clock.getAsLong();
+        for (int i = 0; i < lastEmpty.length(); i++) {
+            lastEmpty.set(i, now);
+        }
+    }
+
+    /**
+     * Completes once the request is admitted, it must then call release when done. Fails
+     * with AdmissionRejectedException when the request is shed.
+     */
+    public Mono<Void> acquire(Priority priority) {
+        int lane = priority.ordinal();
+        if (waiters.isEmpty(lane) && takeSlot()) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            if (!waiters.reserve(lane, maxQueueSize)) {
+                listener.onRejected(priority, Rejection.QUEUE_FULL);
+                return Mono.error(QUEUE_FULL);
+            }
+            long now = clock.getAsLong();
+            // Counted already, so alone means the lane was empty
+            boolean alone = waiters.size(lane) == 1;
+            if (alone) {
+                lastEmpty.set(lane, now);
+            }
+            long maxWait = !alone && now - lastEmpty.get(lane) >= intervalNanos ? targetNanos : intervalNanos;
+            return waiters.await(lane, maxWait, () -> {
+                listener.onRejected(priority, Rejection.QUEUE_DELAY);
+                return QUEUE_DELAY;
+            });
+        });
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+        waiters.drain();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getQueued(Priority priority) {
+        return waiters.size(priority.ordinal());
+    }
+
+    public boolean isOverloaded(Priority priority) {
+        int lane = priority.ordinal();
+        return waiters.size(lane) > 0 && clock.getAsLong() - lastEmpty.get(lane) >= intervalNanos;
+    }
+
+    private boolean takeSlot() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= maxConcurrent) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+}
@@ -0,0 +1,19 @@
+package ru.uni.ecop.gateway.resilience;
+
+/**
+ * Signals a request shed by admission control. Raised on every rejection under overload,
+ * so it carries no stack trace.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final AdmissionController.Rejection reason;
+
+    public AdmissionRejectedException(AdmissionController.Rejection reason) {
+        super("Request shed: " + reason.name().toLowerCase(), null, false, false);
+        this.reason = reason;
+    }
+
+    public AdmissionController.Rejection getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,160 @@
+package ru.uni.ecop.gateway.resilience;
+
+import ru.uni.ecop.gateway.config.ResilienceProperties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker over a count based sliding window. The state is an immutable phase
+ * swapped by compare-and-set, so admitting and recording a call never blocks:
+ * <ul>
+ * <li>CLOSED admits every call and opens once the failure or slow call rate of the window
+ * reaches its threshold</li>
+ * <li>OPEN rejects calls until waitDurationInOpenState has passed, the first call after
+ * that moves the breaker to HALF_OPEN</li>
+ * <li>HALF_OPEN admits a fixed number of probe calls and closes or opens again on their
+ * outcome</li>
+ * </ul>
+ * Outcomes of calls admitted in an earlier phase are dropped, so a burst of slow failures
+ * from before a transition cannot reopen the breaker.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    @FunctionalInterface
+    public interface TransitionListener {
+        void onTransition(State from, State to);
+    }
+
+    private final int slidingWindowSize;
+    private final int minimumNumberOfCalls;
+    private final int permittedCallsInHalfOpenState;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final TransitionListener listener;
+    private final AtomicReference<Phase> phase;
+
+    public CircuitBreaker(ResilienceProperties.CircuitBreaker settings, TransitionListener listener) {
+        this.slidingWindowSize = Math.max(1, settings.getSlidingWindowSize());
+        this.minimumNumberOfCalls = Math.max(1, Math.min(settings.getMinimumNumberOfCalls(), slidingWindowSize));
+        this.permittedCallsInHalfOpenState = Math.max(1, settings.getPermittedNumberOfCallsInHalfOpenState());
+        this.failureRateThreshold = settings.getFailureRateThreshold();
+        this.slowCallRateThreshold = settings.getSlowCallRateThreshold();
+        this.slowCallNanos = settings.getSlowCallDurationThreshold().toNanos();
+        this.openNanos = settings.getWaitDurationInOpenState().toNanos();
+        this.listener = listener;
+        this.phase = new AtomicReference<>(closed());
+    }
+
+    /**
+     * Admits a call and returns the phase it was admitted in, to be handed back to
+     * onResult or release, or null when the call is rejected
+     */
+    public Phase tryAcquire(long now) {
+        while (true) {
+            Phase current = phase.get();
+            switch (current.state) {
+                case CLOSED:
+                    return current;
+                case OPEN:
+                    if (now - current.openedAt < openNanos) {
+                        return null;
+                    }
+                    transition(current, halfOpen());
+                    break;
+                default:
+                    int permits;
+                    do {
+                        permits = current.permits.get();
+                        if (permits <= 0) {
+                            return null;
+                        }
+                    } while (!current.permits.compareAndSet(permits, permits - 1));
+                    return current;
+            }
+        }
+    }
+
+    public void onResult(Phase admitted, long durationNanos, boolean failed, long now) {
+        if (phase.get() != admitted) {
+            return;
+        }
+        SlidingWindow window = admitted.window;
+        window.record(failed, durationNanos >= slowCallNanos);
+
+        if (admitted.state == State.CLOSED) {
+            if (window.calls() >= minimumNumberOfCalls && exceedsThresholds(window)) {
+                transition(admitted, open(now));
+            }
+        } else if (window.calls() >= permittedCallsInHalfOpenState) {
+            transition(admitted, exceedsThresholds(window) ? open(now) : closed());
+        }
+    }
+
+    /**
+     * Gives the permit of a call that ended without an outcome (cancelled) back
+     */
+    public void release(Phase admitted) {
+        if (admitted.state == State.HALF_OPEN) {
+            admitted.permits.incrementAndGet();
+        }
+    }
+
+    public State getState() {
+        return phase.get().state;
+    }
+
+    /**
+     * Time until an open breaker lets probe calls through, 0 when it is not open
+     */
+    public long remainingOpenNanos(long now) {
+        Phase current = phase.get();
+        return current.state == State.OPEN ? Math.max(0, openNanos - (now - current.openedAt)) : 0;
+    }
+
+    private boolean exceedsThresholds(SlidingWindow window) {
+        return window.failureRate() >= failureRateThreshold || window.slowCallRate() >= slowCallRateThreshold;
+    }
+
+    private void transition(Phase from, Phase to) {
+        if (phase.compareAndSet(from, to) && listener != null) {
+            listener.onTransition(from.state, to.state);
+        }
+    }
+
+    private Phase closed() {
+        return new Phase(State.CLOSED, 0, new SlidingWindow(slidingWindowSize), 0);
+    }
+
+    private Phase open(long now) {
+        return new Phase(State.OPEN, now, null, 0);
+    }
+
+    private Phase halfOpen() {
+        return new Phase(State.HALF_OPEN, 0, new SlidingWindow(permittedCallsInHalfOpenState), permittedCallsInHalfOpenState);
+    }
+
+    public static final class Phase {
+        private final State state;
+        private final long openedAt;
+        private final SlidingWindow window;
+        private final AtomicInteger permits;
+
+        private Phase(State state, long openedAt, SlidingWindow window, int permits) {
+            this.state = state;
+            this.openedAt = openedAt;
+            this.window = window;
+            this.permits = new AtomicInteger(permits);
+        }
+
+        public State getState() {
+            return state;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ru.uni.ecop.gateway.resilience;
+
+/**
+ * Signals a request that found no free slot under the concurrency limit of its upstream.
+ * Raised on every rejection under overload, so it carries no stack trace.
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+    private final AdaptiveConcurrencyLimiter.Rejection reason;
+
+    public ConcurrencyLimitExceededException(AdaptiveConcurrencyLimiter.Rejection reason) {
+        super("Concurrency limit exceeded: " + reason.name().toLowerCase(), null, false, false);
+        this.reason = reason;
+    }
+
+    public AdaptiveConcurrencyLimiter.Rejection getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,62 @@
+package ru.uni.ecop.gateway.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import ru.uni.ecop.gateway.config.ConcurrencyLimitProperties;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One AdaptiveConcurrencyLimiter per upstream service, created with its meters on first use.
+ * The current limit, in-flight and queued requests are exported as gateway.concurrency.*
+ * gauges, rejections as a counter tagged with the reason.
+ */
+@Component
+public class ConcurrencyLimiters {
+
+    private final ConcurrencyLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimiters(ConcurrencyLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public AdaptiveConcurrencyLimiter forUpstream(String upstream) {
+        AdaptiveConcurrencyLimiter limiter = limiters.get(upstream);
+        return limiter != null ? limiter : limiters.computeIfAbsent(upstream, this::create);
+    }
+
+    public Duration getMaxQueueWait() {
+        return properties.getMaxQueueWait();
+    }
+
+    private AdaptiveConcurrencyLimiter create(String upstream) {
+        Counter queueFull = rejections(upstream, "queue_full");
+        Counter queueTimeout = rejections(upstream, "queue_timeout");
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties,
+            reason -> (reason == AdaptiveConcurrencyLimiter.Rejection.QUEUE_FULL ? queueFull : queueTimeout).increment());
+
+        Gauge.builder("gateway.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+            .tag("upstream", upstream)
+            .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.in-flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+            .tag("upstream", upstream)
+            .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.queued", limiter, AdaptiveConcurrencyLimiter::getQueued)
+            .tag("upstream", upstream)
+            .register(meterRegistry);
+        return limiter;
+    }
+
+    private Counter rejections(String upstream, String reason) {
+        return Counter.builder("gateway.concurrency.rejections")
+            .tag("upstream", upstream)
+            .tag("reason", reason)
+            .register(meterRegistry);
+    }
+}
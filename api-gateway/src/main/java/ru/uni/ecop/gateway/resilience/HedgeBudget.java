@@ -0,0 +1,63 @@
+package ru.uni.ecop.gateway.resilience;
+
+import ru.uni.ecop.gateway.config.HedgingProperties;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Caps the extra load hedging puts on one upstream. Every request sent to the upstream
+ * adds ratio to the balance and time adds minPerSecond, up to maxBalance; each hedge takes
+ * one. Over time hedges therefore stay below ratio times the requests plus minPerSecond,
+ * also while the upstream is slow for everyone and every request would qualify.
+ */
+public final class HedgeBudget {
+
+    private final double ratio;
+    private final double perNano;
+    private final double maxBalance;
+    private final AtomicReference<Balance> balance;
+
+    public HedgeBudget(HedgingProperties.Budget settings, long now) {
+        this.ratio = Math.max(0, settings.getRatio());
+        this.perNano = Math.max(0, settings.getMinPerSecond()) / 1e9;
+        this.maxBalance = Math.max(1, settings.getMaxBalance());
+        this.balance = new AtomicReference<>(new Balance(maxBalance, now));
+    }
+
+    public void onRequest(long now) {
+        Balance current;
+        do {
+            current = balance.get();
+        } while (!balance.compareAndSet(current, refill(current, ratio, now)));
+    }
+
+    /**
+     * Takes the allowance for one hedge, false when the budget is exhausted
+     */
+    public boolean tryWithdraw(long now) {
+        Balance current;
+        Balance next;
+        do {
+            current = balance.get();
+            next = refill(current, 0, now);
+            if (next.tokens < 1) {
+                return false;
+            }
+            next = new Balance(next.tokens - 1, next.updatedAt);
+        } while (!balance.compareAndSet(current, next));
+        return true;
+    }
+
+    public double getBalance() {
+        return balance.get().tokens;
+    }
+
+    private Balance refill(Balance current, double deposit, long now) {
+        long elapsed = Math.max(0, now - current.updatedAt);
+        double tokens = Math.min(maxBalance, current.tokens + deposit + elapsed * perNano);
+        return new Balance(tokens, Math.max(now, current.updatedAt));
+    }
+
+    private record Balance(double tokens, long updatedAt) {
+    }
+}
@@ -0,0 +1,69 @@
+package ru.uni.ecop.gateway.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import ru.uni.ecop.gateway.config.HedgingProperties;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hedge budgets per upstream service and latency per route, created with their meters on
+ * first use. Hedges are counted as gateway.hedge.requests tagged with the upstream and
+ * whether the hedge won, hedges refused for lack of budget as gateway.hedge.budget.exhausted.
+ * Route latency is the gateway.hedge.latency timer, which publishes the hedging percentile.
+ */
+@Component
+public class Hedging {
+
+    private final HedgingProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, UpstreamHedging> upstreams = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, RouteLatency> routes = new ConcurrentHashMap<>();
+
+    public Hedging(HedgingProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public UpstreamHedging forUpstream(String upstream) {
+        UpstreamHedging hedging = upstreams.get(upstream);
+        return hedging != null ? hedging : upstreams.computeIfAbsent(upstream, this::createUpstream);
+    }
+
+    public RouteLatency forRoute(String routeId) {
+        RouteLatency latency = routes.get(routeId);
+        return latency != null ? latency : routes.computeIfAbsent(routeId, this::createRoute);
+    }
+
+    private UpstreamHedging createUpstream(String upstream) {
+        HedgeBudget budget = new HedgeBudget(properties.getBudget(), System.nanoTime());
+        Gauge.builder("gateway.hedge.budget.balance", budget, HedgeBudget::getBalance)
+            .tag("upstream", upstream)
+            .register(meterRegistry);
+        return new UpstreamHedging(budget,
+            hedges(upstream, "won"),
+            hedges(upstream, "lost"),
+            Counter.builder("gateway.hedge.budget.exhausted")
+                .tag("upstream", upstream)
+                .register(meterRegistry));
+    }
+
+    private RouteLatency createRoute(String routeId) {
+        Timer timer = Timer.builder("gateway.hedge.latency")
+            .tag("route", routeId)
+            .publishPercentiles(properties.getPercentile())
+            .distributionStatisticExpiry(properties.getLatencyWindow())
+            .register(meterRegistry);
+        return new RouteLatency(timer, properties.getMinDelay().toNanos(), properties.getMinSamples(), System.nanoTime());
+    }
+
+    private Counter hedges(String upstream, String outcome) {
+        return Counter.builder("gateway.hedge.requests")
+            .tag("upstream", upstream)
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+}
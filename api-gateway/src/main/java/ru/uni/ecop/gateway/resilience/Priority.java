@@ -0,0 +1,8 @@
+package ru.uni.ecop.gateway.resilience;
+
+/**
+ * Admission priority of a route, declared in the order waiting requests are admitted
+ */
+public enum Priority {
+    HIGH, NORMAL, LOW
+}
@@ -0,0 +1,61 @@
+package ru.uni.ecop.gateway.resilience;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recent latency of one route and the hedge delay derived from it: the configured
+ * percentile of the last latency window, never below minDelay. The percentile is
+ * recomputed at most once a second, not on every request.
+ */
+public final class RouteLatency {
+
+    private static final long REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Timer timer;
+    private final long minDelayNanos;
+    private final long minSamples;
+    private volatile Threshold threshold;
+
+    public RouteLatency(Timer timer, long minDelayNanos, long minSamples, long now) {
+        this.timer = timer;
+        this.minDelayNanos = minDelayNanos;
+        this.minSamples = minSamples;
+        this.threshold = new Threshold(-1, now - REFRESH_NANOS);
+    }
+
+    public void record(long nanos) {
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Nanoseconds to wait before hedging, -1 while the route has too few responses
+     */
+    public long hedgeDelayNanos(long now) {
+        Threshold current = threshold;
+        if (now - current.computedAt < REFRESH_NANOS) {
+            return current.delayNanos;
+        }
+        // Racing refreshes compute the same value, the last write wins
+        long delay = compute();
+        threshold = new Threshold(delay, now);
+        return delay;
+    }
+
+    private long compute() {
+        if (timer.count() < minSamples) {
+            return -1;
+        }
+        ValueAtPercentile[] percentiles = timer.takeSnapshot().percentileValues();
+        if (percentiles.length == 0 || percentiles[0].value() <= 0) {
+            // Nothing left in the window
+            return -1;
+        }
+        return Math.max(minDelayNanos, (long) percentiles[0].value(TimeUnit.NANOSECONDS));
+    }
+
+    private record Threshold(long delayNanos, long computedAt) {
+    }
+}
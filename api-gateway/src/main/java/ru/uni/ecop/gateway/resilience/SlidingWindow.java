@@ -0,0 +1,64 @@
+package ru.uni.ecop.gateway.resilience;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count based window over the last size call outcomes, without locks: each call claims
+ * the next slot of a ring, swaps its outcome in and moves the counters by the difference
+ * to the outcome it replaced. Counters read while other calls are being recorded can be
+ * off by those calls, but never drift.
+ */
+final class SlidingWindow {
+
+    private static final int EMPTY = 0;
+    private static final int RECORDED = 1;
+    private static final int FAILED = 1 << 1;
+    private static final int SLOW = 1 << 2;
+
+    private final AtomicIntegerArray outcomes;
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger failedCalls = new AtomicInteger();
+    private final AtomicInteger slowCalls = new AtomicInteger();
+
+    SlidingWindow(int size) {
+        this.outcomes = new AtomicIntegerArray(size);
+    }
+
+    void record(boolean failed, boolean slow) {
+        int outcome = RECORDED | (failed ? FAILED : 0) | (slow ? SLOW : 0);
+        int slot = (int) (cursor.getAndIncrement() % outcomes.length());
+        int previous = outcomes.getAndSet(slot, outcome);
+        if (previous == EMPTY) {
+            calls.incrementAndGet();
+        }
+        adjust(failedCalls, previous, outcome, FAILED);
+        adjust(slowCalls, previous, outcome, SLOW);
+    }
+
+    int calls() {
+        return calls.get();
+    }
+
+    float failureRate() {
+        return rate(failedCalls.get());
+    }
+
+    float slowCallRate() {
+        return rate(slowCalls.get());
+    }
+
+    private float rate(int count) {
+        int total = calls.get();
+        return total > 0 ? Math.max(count, 0) * 100f / total : 0;
+    }
+
+    private static void adjust(AtomicInteger counter, int previous, int outcome, int flag) {
+        int delta = ((outcome & flag) != 0 ? 1 : 0) - ((previous & flag) != 0 ? 1 : 0);
+        if (delta != 0) {
+            counter.addAndGet(delta);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package ru.uni.ecop.gateway.resilience;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Requests waiting for a slot of a limiter, in one or more lanes. Lanes are served in
+ * order, lane 0 first, and each lane in arrival order. Free slots are handed out by drain,
+ * one thread at a time so granting never recurses. A waiter is either granted or abandoned
+ * (timed out or cancelled), never both; a slot granted to a waiter that is gone is given
+ * back. Lanes are lock-free queues and their sizes counters, so waiting takes no lock.
+ */
+final class SlotQueue {
+
+    /**
+     * Slots of the limiter owning the queue
+     */
+    interface Slots {
+        boolean tryTake();
+
+        void giveBack();
+    }
+
+    private final Slots slots;
+    private final Scheduler timer;
+    private final Lane[] lanes;
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    SlotQueue(int lanes, Slots slots, Scheduler timer) {
+        this.slots = slots;
+        this.timer = timer;
+        this.lanes = new Lane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = new Lane();
+        }
+    }
+
+    /**
+     * True when nobody waits in lanes 0 to lane
+     */
+    boolean isEmpty(int lane) {
+        for (int i = 0; i <= lane; i++) {
+            if (!lanes[i].waiters.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int size(int lane) {
+        return lanes[lane].size.get();
+    }
+
+    /**
+     * Counts a request about to wait in the lane, false when maxSize are waiting there already
+     */
+    boolean reserve(int lane, int maxSize) {
+        AtomicInteger size = lanes[lane].size;
+        if (size.incrementAndGet() > maxSize) {
+            size.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Waits in the lane, after reserve, until drain grants a slot. Fails with the error of
+     * onTimeout when no slot was granted within maxWaitNanos.
+     */
+    Mono<Void> await(int lane, long maxWaitNanos, Supplier<Throwable> onTimeout) {
+        Lane queue = lanes[lane];
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink);
+            queue.waiters.add(waiter);
+            Disposable timeout = timer.schedule(() -> {
+                if (abandon(queue, waiter)) {
+                    sink.error(onTimeout.get());
+                }
+            }, maxWaitNanos, TimeUnit.NANOSECONDS);
+            sink.onDispose(timeout);
+            sink.onCancel(() -> {
+                // Granted but cancelled before the grant was delivered: nobody will release
+                if (!abandon(queue, waiter)) {
+                    slots.giveBack();
+                    drain();
+                }
+            });
+            drain();
+        });
+    }
+
+    /**
+     * Hands free slots to waiters, called whenever a slot may have freed up
+     */
+    void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Lane lane;
+            while ((lane = firstWaiting()) != null && slots.tryTake()) {
+                Waiter waiter = lane.waiters.poll();
+                if (waiter == null) {
+                    slots.giveBack();
+                    continue;
+                }
+                lane.size.decrementAndGet();
+                if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.GRANTED)) {
+                    waiter.sink.success();
+                } else {
+                    slots.giveBack();
+                }
+            }
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private Lane firstWaiting() {
+        for (Lane lane : lanes) {
+            if (!lane.waiters.isEmpty()) {
+                return lane;
+            }
+        }
+        return null;
+    }
+
+    private static boolean abandon(Lane lane, Waiter waiter) {
+        if (!waiter.state.compareAndSet(Waiter.WAITING, Waiter.ABANDONED)) {
+            return false;
+        }
+        if (lane.waiters.remove(waiter)) {
+            lane.size.decrementAndGet();
+        }
+        return true;
+    }
+
+    private static final class Lane {
+        final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+        // Reserved places, waiters that have not been added yet included
+        final AtomicInteger size = new AtomicInteger();
+    }
+
+    private static final class Waiter {
+        static final int WAITING = 0;
+        static final int GRANTED = 1;
+        static final int ABANDONED = 2;
+
+        final MonoSink<Void> sink;
+        final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Waiter(MonoSink<Void> sink) {
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.uni.ecop.gateway.resilience;
+
+import io.micrometer.core.instrument.Counter;
+
+import java.time.Duration;
+
+/**
+ * Circuit breaker, bulkhead and time limit of one upstream service with its counters
+ */
+public final class UpstreamGuard {
+
+    private final String name;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final Duration timeout;
+    private final Counter circuitOpenRejections;
+    private final Counter bulkheadRejections;
+    private final Counter successfulCalls;
+    private final Counter failedCalls;
+    private final Counter timedOutCalls;
+
+    UpstreamGuard(String name, CircuitBreaker circuitBreaker, Bulkhead bulkhead, Duration timeout,
+                  Counter circuitOpenRejections, Counter bulkheadRejections,
+                  Counter successfulCalls, Counter failedCalls, Counter timedOutCalls) {
+        this.name = name;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.timeout = timeout;
+        this.circuitOpenRejections = circuitOpenRejections;
+        this.bulkheadRejections = bulkheadRejections;
+        this.successfulCalls = successfulCalls;
+        this.failedCalls = failedCalls;
+        this.timedOutCalls = timedOutCalls;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public void onCircuitOpenRejection() {
+        circuitOpenRejections.increment();
+    }
+
+    public void onBulkheadRejection() {
+        bulkheadRejections.increment();
+    }
+
+    public void onCall(boolean failed, boolean timedOut) {
+        (timedOut ? timedOutCalls : failed ? failedCalls : successfulCalls).increment();
+    }
+}
@@ -0,0 +1,88 @@
+package ru.uni.ecop.gateway.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import ru.uni.ecop.gateway.config.ResilienceProperties;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * One UpstreamGuard per upstream service, created with its meters on first use.
+ * State is exported as gateway.circuitbreaker.state (0 closed, 1 open, 2 half open),
+ * transitions, rejections and call outcomes as counters tagged with the upstream.
+ */
+@Component
+@Slf4j
+public class UpstreamGuards {
+
+    private final ResilienceProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, UpstreamGuard> guards = new ConcurrentHashMap<>();
+
+    public UpstreamGuards(ResilienceProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public UpstreamGuard forUpstream(String upstream) {
+        UpstreamGuard guard = guards.get(upstream);
+        return guard != null ? guard : guards.computeIfAbsent(upstream, this::create);
+    }
+
+    /**
+     * Upstream service of the matched route, lb://core-service -> core-service
+     */
+    public static String upstreamOf(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        return route != null && route.getUri().getHost() != null ? route.getUri().getHost() : ResilienceProperties.DEFAULT_INSTANCE;
+    }
+
+    private UpstreamGuard create(String upstream) {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(properties.circuitBreakerFor(upstream), (from, to) -> {
+            log.warn("Circuit breaker for {} changed from {} to {}", upstream, from, to);
+            Counter.builder("gateway.circuitbreaker.transitions")
+                .tag("upstream", upstream)
+                .tag("from", from.name().toLowerCase())
+                .tag("to", to.name().toLowerCase())
+                .register(meterRegistry)
+                .increment();
+        });
+        Bulkhead bulkhead = new Bulkhead(properties.bulkheadFor(upstream).getMaxConcurrentCalls());
+
+        Gauge.builder("gateway.circuitbreaker.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+            .tag("upstream", upstream)
+            .register(meterRegistry);
+        Gauge.builder("gateway.bulkhead.in-flight", bulkhead, Bulkhead::getInFlight)
+            .tag("upstream", upstream)
+            .register(meterRegistry);
+
+        return new UpstreamGuard(upstream, circuitBreaker, bulkhead,
+            properties.timeLimiterFor(upstream).getTimeoutDuration(),
+            rejections(upstream, "circuit_open"),
+            rejections(upstream, "bulkhead_full"),
+            calls(upstream, "success"),
+            calls(upstream, "failure"),
+            calls(upstream, "timeout"));
+    }
+
+    private Counter rejections(String upstream, String reason) {
+        return Counter.builder("gateway.circuitbreaker.rejections")
+            .tag("upstream", upstream)
+            .tag("reason", reason)
+            .register(meterRegistry);
+    }
+
+    private Counter calls(String upstream, String outcome) {
+        return Counter.builder("gateway.circuitbreaker.calls")
+            .tag("upstream", upstream)
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,44 @@
+package ru.uni.ecop.gateway.resilience;
+
+import io.micrometer.core.instrument.Counter;
+
+/**
+ * Hedge budget of one upstream service with its counters
+ */
+public class UpstreamHedging {
+
+    private final HedgeBudget budget;
+    private final Counter won;
+    private final Counter lost;
+    private final Counter budgetExhausted;
+
+    public UpstreamHedging(HedgeBudget budget, Counter won, Counter lost, Counter budgetExhausted) {
+        this.budget = budget;
+        this.won = won;
+        this.lost = lost;
+        this.budgetExhausted = budgetExhausted;
+    }
+
+    public void onRequest(long now) {
+        budget.onRequest(now);
+    }
+
+    /**
+     * Whether a hedge may be sent now, counts the refusal when the budget is exhausted
+     */
+    public boolean tryHedge(long now) {
+        if (budget.tryWithdraw(now)) {
+            return true;
+        }
+        budgetExhausted.increment();
+        return false;
+    }
+
+    public void onHedgeOutcome(boolean hedgeWon) {
+        (hedgeWon ? won : lost).increment();
+    }
+
+    public HedgeBudget getBudget() {
+        return budget;
+    }
+}
@@ -0,0 +1,36 @@
+package ru.uni.ecop.gateway.route;
+
+import com.ecwid.consul.v1.ConsulClient;
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.Response;
+import com.ecwid.consul.v1.kv.model.GetValue;
+import org.springframework.stereotype.Component;
+import ru.uni.ecop.gateway.config.RouteTableProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * Reads the key with Consul blocking queries: the request is held by Consul until the
+ * key's modify index moves past the given one or the wait time elapses
+ */
+@Component
+public class ConsulRouteConfigStore implements RouteConfigStore {
+
+    private final ConsulClient consulClient;
+    private final RouteTableProperties properties;
+
+    public ConsulRouteConfigStore(ConsulClient consulClient, RouteTableProperties properties) {
+        this.consulClient = consulClient;
+        this.properties = properties;
+    }
+
+    @Override
+    public Versioned watch(String key, long index, Duration wait) {
+        Response<GetValue> response = consulClient.getKVValue(key, properties.getConsul().getAclToken(),
+            new QueryParams(wait.getSeconds(), index));
+        GetValue value = response.getValue();
+        long consulIndex = response.getConsulIndex() != null ? response.getConsulIndex() : 0;
+        return new Versioned(value != null ? value.getDecodedValue(StandardCharsets.UTF_8) : null, consulIndex);
+    }
+}
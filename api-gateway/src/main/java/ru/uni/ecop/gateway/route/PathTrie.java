@@ -0,0 +1,159 @@
+package ru.uni.ecop.gateway.route;
+
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable prefix tree over path segments. Supports the route pattern subset used by the
+ * gateway: literal segments, {name} for exactly one segment and a trailing /** for any
+ * remainder (including none). Lookup walks the path once per matching branch, so its cost
+ * depends on the path depth rather than on the number of routes.
+ * A literal segment wins over {name}, which wins over /**, regardless of definition order.
+ */
+public final class PathTrie<T> {
+
+    private final Node<T> root;
+
+    private PathTrie(Node<T> root) {
+        this.root = root;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * The value of the most specific pattern matching the path, or null
+     */
+    public Match<T> match(String path) {
+        int end = path.length();
+        // As with PathPattern, a trailing separator is optional
+        if (end > 1 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        int start = !path.isEmpty() && path.charAt(0) == '/' ? 1 : 0;
+        String[] captures = new String[root.maxVariables];
+        Terminal<T> terminal = find(root, path, start, end, captures, 0);
+        if (terminal == null) {
+            return null;
+        }
+        if (terminal.variables.length == 0) {
+            return new Match<>(terminal.value, Collections.emptyMap());
+        }
+        Map<String, String> variables = new LinkedHashMap<>(terminal.variables.length * 2);
+        for (int i = 0; i < terminal.variables.length; i++) {
+            variables.put(terminal.variables[i], captures[i]);
+        }
+        return new Match<>(terminal.value, variables);
+    }
+
+    private static <T> Terminal<T> find(Node<T> node, String path, int start, int end, String[] captures, int depth) {
+        if (start >= end) {
+            return node.exact != null ? node.exact : node.remainder;
+        }
+        int separator = path.indexOf('/', start);
+        int segmentEnd = separator < 0 || separator > end ? end : separator;
+        int next = segmentEnd + 1;
+
+        if (node.literals != null) {
+            Node<T> child = node.literals.get(decode(path.substring(start, segmentEnd)));
+            if (child != null) {
+                Terminal<T> terminal = find(child, path, next, end, captures, depth);
+                if (terminal != null) {
+                    return terminal;
+                }
+            }
+        }
+        if (node.variable != null && segmentEnd > start) {
+            Terminal<T> terminal = find(node.variable, path, next, end, captures, depth + 1);
+            if (terminal != null) {
+                captures[depth] = decode(path.substring(start, segmentEnd));
+                return terminal;
+            }
+        }
+        return node.remainder;
+    }
+
+    private static String decode(String segment) {
+        return segment.indexOf('%') < 0 ? segment : StringUtils.uriDecode(segment, StandardCharsets.UTF_8);
+    }
+
+    public record Match<T>(T value, Map<String, String> variables) {
+    }
+
+    private record Terminal<T>(T value, String[] variables) {
+    }
+
+    private static final class Node<T> {
+        private Map<String, Node<T>> literals;
+        private Node<T> variable;
+        private Terminal<T> exact;
+        private Terminal<T> remainder;
+        private int maxVariables;
+    }
+
+    public static final class Builder<T> {
+
+        private final Node<T> root = new Node<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a pattern, the first value added for a pattern is kept
+         */
+        public Builder<T> add(String pattern, T value) {
+            String[] segments = StringUtils.tokenizeToStringArray(pattern, "/");
+            List<String> variables = new ArrayList<>();
+            Node<T> node = root;
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+                if (segment.equals("**")) {
+                    if (i != segments.length - 1) {
+                        throw new IllegalArgumentException("'**' is only supported at the end of " + pattern);
+                    }
+                    if (node.remainder == null) {
+                        node.remainder = new Terminal<>(value, variables.toArray(String[]::new));
+                    }
+                    root.maxVariables = Math.max(root.maxVariables, variables.size());
+                    return this;
+                }
+                if (segment.startsWith("{") && segment.endsWith("}")) {
+                    String name = segment.substring(1, segment.length() - 1);
+                    if (name.isEmpty() || name.startsWith("*") || variables.contains(name)) {
+                        throw new IllegalArgumentException("Unsupported variable " + segment + " in " + pattern);
+                    }
+                    variables.add(name);
+                    if (node.variable == null) {
+                        node.variable = new Node<>();
+                    }
+                    node = node.variable;
+                } else {
+                    if (segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('{') >= 0) {
+                        throw new IllegalArgumentException("Unsupported segment " + segment + " in " + pattern);
+                    }
+                    if (node.literals == null) {
+                        node.literals = new HashMap<>();
+                    }
+                    node = node.literals.computeIfAbsent(segment, key -> new Node<>());
+                }
+            }
+            if (node.exact == null) {
+                node.exact = new Terminal<>(value, variables.toArray(String[]::new));
+            }
+            root.maxVariables = Math.max(root.maxVariables, variables.size());
+            return this;
+        }
+
+        public PathTrie<T> build() {
+            return new PathTrie<>(root);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package ru.uni.ecop.gateway.route;
+
+import java.time.Duration;
+
+/**
+ * Versioned key-value source of the route configuration
+ */
+public interface RouteConfigStore {
+
+    /**
+     * Returns the value of the key once its version differs from index, or the current
+     * value after wait elapsed. A null value means the key does not exist.
+     */
+    Versioned watch(String key, long index, Duration wait);
+
+    record Versioned(String value, long index) {
+    }
+}
@@ -0,0 +1,154 @@
+package ru.uni.ecop.gateway.route;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.stereotype.Component;
+import ru.uni.ecop.gateway.config.RateLimitingProperties;
+import ru.uni.ecop.gateway.config.RouteTableProperties;
+import ru.uni.ecop.gateway.ratelimit.HybridRateLimiter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Watches the route configuration key in Consul KV and installs changes without a restart.
+ * The key holds a YAML document with a routes section (same layout as gateway.routes) and an
+ * optional rate-limiting section (policies, tiers and route mappings of gateway.rate-limiting).
+ * A section present in the document replaces the local one, a missing section keeps it.
+ * <p>
+ * A new document is bound and compiled off the request path and installed only when all of
+ * it is valid, otherwise the current table stays in place.
+ */
+@Component
+@Slf4j
+public class RouteConfigWatcher {
+
+    private final RouteTableProperties properties;
+    private final RateLimitingProperties rateLimitingProperties;
+    private final RouteConfigStore store;
+    private final RouteTableCompiler compiler;
+    private final RouteTableLocator locator;
+    private final HybridRateLimiter rateLimiter;
+    private final Counter appliedReloads;
+    private final Counter rejectedReloads;
+    private volatile boolean running;
+    private Thread watchThread;
+    // Only touched by the watch thread
+    private long index;
+    private String lastDocument;
+
+    public RouteConfigWatcher(RouteTableProperties properties,
+                              RateLimitingProperties rateLimitingProperties,
+                              RouteConfigStore store,
+                              RouteTableCompiler compiler,
+                              RouteTableLocator locator,
+                              HybridRateLimiter rateLimiter,
+                              MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.rateLimitingProperties = rateLimitingProperties;
+        this.store = store;
+        this.compiler = compiler;
+        this.locator = locator;
+        this.rateLimiter = rateLimiter;
+        this.appliedReloads = Counter.builder("gateway.routes.reloads")
+            .tag("outcome", "applied")
+            .register(meterRegistry);
+        this.rejectedReloads = Counter.builder("gateway.routes.reloads")
+            .tag("outcome", "rejected")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void startWatching() {
+        if (!properties.getConsul().isEnabled()) {
+            return;
+        }
+        running = true;
+        // Blocking queries hold a connection for up to wait-time, so they get their own thread
+        watchThread = new Thread(this::watch, "route-config-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    @PreDestroy
+    public void stopWatching() {
+        running = false;
+        if (watchThread != null) {
+            watchThread.interrupt();
+        }
+    }
+
+    private void watch() {
+        while (running) {
+            try {
+                poll();
+            } catch (RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Watching route configuration key {} failed: {}", properties.getConsul().getKey(), e.getMessage());
+                try {
+                    Thread.sleep(properties.getConsul().getRetryInterval().toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the next version of the key and installs it when its content changed
+     */
+    boolean poll() {
+        RouteTableProperties.Consul consul = properties.getConsul();
+        RouteConfigStore.Versioned versioned = store.watch(consul.getKey(), index, consul.getWaitTime());
+        // Consul indexes can go backwards (snapshot restore), the next query has to start over then
+        index = versioned.index() < index ? 0 : versioned.index();
+        String document = versioned.value();
+        if (document == null || document.equals(lastDocument)) {
+            return false;
+        }
+        lastDocument = document;
+        return apply(document);
+    }
+
+    boolean apply(String document) {
+        try {
+            Binder binder = new Binder(new MapConfigurationPropertySource(parse(document)));
+            Map<String, RouteTableProperties.Group> groups = binder.bind("routes", RouteTableProperties.class)
+                .map(RouteTableProperties::getGroups)
+                .orElseGet(properties::getGroups);
+            RateLimitingProperties limits = binder.bind("rate-limiting", RateLimitingProperties.class)
+                .orElse(rateLimitingProperties);
+
+            // Before compiling: the compiler keeps the filter chains of the table it returns
+            rateLimiter.validatePolicies(limits);
+            RouteTable table = compiler.compile(groups);
+            rateLimiter.updatePolicies(limits);
+            locator.swap(table);
+            appliedReloads.increment();
+            log.info("Installed route configuration from {} with {} routes", properties.getConsul().getKey(),
+                table.getRoutes().size());
+            return true;
+        } catch (RuntimeException e) {
+            rejectedReloads.increment();
+            log.error("Rejected route configuration from {}: {}", properties.getConsul().getKey(), e.getMessage());
+            return false;
+        }
+    }
+
+    private static Properties parse(String document) {
+        YamlPropertiesFactoryBean yaml = new YamlPropertiesFactoryBean();
+        yaml.setResources(new ByteArrayResource(document.getBytes(StandardCharsets.UTF_8)));
+        return yaml.getObject();
+    }
+}
@@ -0,0 +1,35 @@
+package ru.uni.ecop.gateway.route;
+
+import org.springframework.cloud.gateway.route.Route;
+
+import java.util.List;
+
+/**
+ * Immutable set of compiled routes with their path index. A new table is built
+ * for every change and swapped in as a whole.
+ */
+public final class RouteTable {
+
+    private final List<Route> routes;
+    private final PathTrie<Route> paths;
+
+    RouteTable(List<Route> routes, PathTrie<Route> paths) {
+        this.routes = List.copyOf(routes);
+        this.paths = paths;
+    }
+
+    public static RouteTable empty() {
+        return new RouteTable(List.of(), PathTrie.<Route>builder().build());
+    }
+
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * The route for a request path with its URI template variables, or null
+     */
+    public PathTrie.Match<Route> match(String path) {
+        return paths.match(path);
+    }
+}
@@ -0,0 +1,186 @@
+package ru.uni.ecop.gateway.route;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.RequestRateLimiterGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import ru.uni.ecop.gateway.config.RouteTableProperties;
+import ru.uni.ecop.gateway.filter.AuthenticationFilter;
+import ru.uni.ecop.gateway.filter.CachingFilter;
+import ru.uni.ecop.gateway.filter.CircuitBreakerFilter;
+import ru.uni.ecop.gateway.filter.ConcurrencyLimitFilter;
+import ru.uni.ecop.gateway.filter.HedgingFilter;
+import ru.uni.ecop.gateway.filter.SecurityFilter;
+import ru.uni.ecop.gateway.ratelimit.HybridRateLimiter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds a RouteTable from route groups. Filters are created once per distinct group
+ * filter settings and the same instances are shared by all routes using them, also
+ * across reloads, so recompiling an unchanged configuration allocates only the routes.
+ */
+@Component
+public class RouteTableCompiler {
+
+    // Route metadata key holding the authenticated flag of its group, read by the security rules
+    public static final String AUTHENTICATED_METADATA = "authenticated";
+    // Route metadata key holding the admission Priority of its group
+    public static final String PRIORITY_METADATA = "priority";
+    // Route metadata key holding the streaming flag of its group
+    public static final String STREAMING_METADATA = "streaming";
+
+    private final AuthenticationFilter authenticationFilter;
+    private final SecurityFilter securityFilter;
+    private final CachingFilter cachingFilter;
+    private final ConcurrencyLimitFilter concurrencyLimitFilter;
+    private final CircuitBreakerFilter circuitBreakerFilter;
+    private final HedgingFilter hedgingFilter;
+    private final RequestRateLimiterGatewayFilterFactory requestRateLimiter;
+    private final HybridRateLimiter rateLimiter;
+    private final KeyResolver userKeyResolver;
+    private final PathRoutePredicateFactory pathPredicates;
+    // Chains of the last compiled table, reused by the next compile for unchanged groups
+    private volatile Map<FilterSpec, List<GatewayFilter>> filterChains = Map.of();
+
+    public RouteTableCompiler(AuthenticationFilter authenticationFilter,
+                              SecurityFilter securityFilter,
+                              CachingFilter cachingFilter,
+                              ConcurrencyLimitFilter concurrencyLimitFilter,
+                              CircuitBreakerFilter circuitBreakerFilter,
+                              HedgingFilter hedgingFilter,
+                              RequestRateLimiterGatewayFilterFactory requestRateLimiter,
+                              HybridRateLimiter rateLimiter,
+                              KeyResolver userKeyResolver,
+                              PathRoutePredicateFactory pathPredicates) {
+        this.authenticationFilter = authenticationFilter;
+        this.securityFilter = securityFilter;
+        this.cachingFilter = cachingFilter;
+        this.concurrencyLimitFilter = concurrencyLimitFilter;
+        this.circuitBreakerFilter = circuitBreakerFilter;
+        this.hedgingFilter = hedgingFilter;
+        this.requestRateLimiter = requestRateLimiter;
+        this.rateLimiter = rateLimiter;
+        this.userKeyResolver = userKeyResolver;
+        this.pathPredicates = pathPredicates;
+    }
+
+    /**
+     * Fails with IllegalArgumentException on a missing uri, a duplicate route id or path
+     * or a path pattern the trie does not support, so an invalid set is never installed
+     */
+    public RouteTable compile(Map<String, RouteTableProperties.Group> groups) {
+        List<Route> routes = new ArrayList<>();
+        PathTrie.Builder<Route> paths = PathTrie.builder();
+        Set<String> ids = new HashSet<>();
+        Set<String> patterns = new HashSet<>();
+        Map<FilterSpec, List<GatewayFilter>> previousChains = filterChains;
+        Map<FilterSpec, List<GatewayFilter>> chains = new HashMap<>();
+
+        groups.forEach((name, group) -> {
+            if (group.getUri() == null) {
+                throw new IllegalArgumentException("Route group " + name + " has no uri");
+            }
+            List<GatewayFilter> filters = chains.computeIfAbsent(FilterSpec.of(group), spec -> {
+                List<GatewayFilter> previous = previousChains.get(spec);
+                return previous != null ? previous : filtersFor(spec);
+            });
+            group.getRoutes().forEach((id, path) -> {
+                if (!ids.add(id)) {
+                    throw new IllegalArgumentException("Duplicate route id " + id);
+                }
+                if (!patterns.add(path)) {
+                    throw new IllegalArgumentException("Path " + path + " of route " + id + " is already routed");
+                }
+                Route route = Route.async()
+                    .id(id)
+                    .uri(group.getUri())
+                    .order(0)
+                    .metadata(AUTHENTICATED_METADATA, group.isAuthenticated())
+                    .metadata(PRIORITY_METADATA, group.getPriority())
+                    .metadata(STREAMING_METADATA, group.isStreaming())
+                    .asyncPredicate(pathPredicates.applyAsync(new PathRoutePredicateFactory.Config().setPatterns(List.of(path))))
+                    .filters(filters)
+                    .build();
+                paths.add(path, route);
+                routes.add(route);
+            });
+        });
+        RouteTable table = new RouteTable(routes, paths.build());
+        // Chains no longer referenced by any group are dropped with the table that used them
+        filterChains = chains;
+        return table;
+    }
+
+    private List<GatewayFilter> filtersFor(FilterSpec spec) {
+        List<GatewayFilter> filters = new ArrayList<>();
+        if (spec.authenticated()) {
+            filters.add(authenticationFilter.apply(new AuthenticationFilter.Config()));
+        }
+        if (spec.inspectBody()) {
+            // Body only: the strict parameter rules would turn away names like o'brien in searches
+            SecurityFilter.Config config = new SecurityFilter.Config();
+            config.setInspectParameters(false);
+            config.setInspectBody(true);
+            filters.add(ordered(securityFilter.apply(config)));
+        }
+        if (spec.cache() != null) {
+            filters.add(cachingFilter.apply(cacheConfig(spec.cache())));
+        }
+        if (spec.rateLimited()) {
+            // Ahead of the cache, so answers from cache count against the caller's budget too
+            filters.add(new OrderedGatewayFilter(requestRateLimiter.apply(c -> c.setRateLimiter(rateLimiter)
+                .setKeyResolver(userKeyResolver)), CachingFilter.ORDER - 1));
+        }
+        if (spec.concurrencyLimited()) {
+            // Ahead of the breaker, so time spent waiting for a slot does not count as upstream latency
+            filters.add(ordered(concurrencyLimitFilter.apply(new ConcurrencyLimitFilter.Config())));
+        }
+        if (spec.circuitBreaker()) {
+            // After the filters answering without the upstream, so their requests never count against it
+            filters.add(ordered(circuitBreakerFilter.apply(new CircuitBreakerFilter.Config())));
+        }
+        if (spec.hedged()) {
+            // Last, each hedged call runs only the routing filters after it
+            filters.add(ordered(hedgingFilter.apply(new HedgingFilter.Config())));
+        }
+        return List.copyOf(filters);
+    }
+
+    private static CachingFilter.Config cacheConfig(CacheSpec cache) {
+        CachingFilter.Config config = new CachingFilter.Config();
+        config.setTtl(cache.ttl());
+        config.setStaleWhileRevalidate(cache.staleWhileRevalidate());
+        config.setStaleIfError(cache.staleIfError());
+        return config;
+    }
+
+    // Same as the route DSL: unordered filters run in declaration order at 0
+    private static GatewayFilter ordered(GatewayFilter filter) {
+        return filter instanceof Ordered ? filter : new OrderedGatewayFilter(filter, 0);
+    }
+
+    private record FilterSpec(boolean authenticated, boolean inspectBody, CacheSpec cache, boolean rateLimited,
+                              boolean concurrencyLimited, boolean circuitBreaker, boolean hedged) {
+
+        static FilterSpec of(RouteTableProperties.Group group) {
+            RouteTableProperties.Cache cache = group.getCache();
+            return new FilterSpec(group.isAuthenticated(), group.isInspectBody(),
+                cache.isEnabled() ? new CacheSpec(cache.getTtl(), cache.getStaleWhileRevalidate(), cache.getStaleIfError()) : null,
+                group.isRateLimited(), group.isConcurrencyLimited(), group.isCircuitBreaker(), group.isHedged());
+        }
+    }
+
+    private record CacheSpec(Duration ttl, Duration staleWhileRevalidate, Duration staleIfError) {
+    }
+}
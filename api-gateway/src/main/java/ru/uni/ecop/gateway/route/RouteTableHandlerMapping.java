@@ -0,0 +1,48 @@
+package ru.uni.ecop.gateway.route;
+
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.core.env.Environment;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_PREDICATE_ROUTE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.putUriTemplateVariables;
+
+/**
+ * Looks table routes up in the path trie instead of evaluating every route predicate
+ * in turn. Paths not in the table fall back to the usual scan over the other routes
+ * (spring.cloud.gateway.routes, discovery locator).
+ */
+public class RouteTableHandlerMapping extends RoutePredicateHandlerMapping {
+
+    private final RouteTableLocator routeTable;
+
+    public RouteTableHandlerMapping(FilteringWebHandler webHandler,
+                                    RouteLocator routeLocator,
+                                    RouteTableLocator routeTable,
+                                    GlobalCorsProperties globalCorsProperties,
+                                    Environment environment) {
+        super(webHandler, routeLocator, globalCorsProperties, environment);
+        this.routeTable = routeTable;
+    }
+
+    @Override
+    protected Mono<Route> lookupRoute(ServerWebExchange exchange) {
+        PathTrie.Match<Route> match = routeTable.getTable()
+            .match(exchange.getRequest().getPath().pathWithinApplication().value());
+        if (match == null) {
+            return super.lookupRoute(exchange);
+        }
+
+        Route route = match.value();
+        exchange.getAttributes().put(GATEWAY_PREDICATE_ROUTE_ATTR, route.getId());
+        if (!match.variables().isEmpty()) {
+            putUriTemplateVariables(exchange, match.variables());
+        }
+        return Mono.just(route);
+    }
+}
@@ -0,0 +1,46 @@
+package ru.uni.ecop.gateway.route;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import ru.uni.ecop.gateway.config.RouteTableProperties;
+
+/**
+ * Serves the routes of gateway.routes. Requests are matched against the current table
+ * through its path trie by RouteTableHandlerMapping. A reload replaces the table with a
+ * single volatile write: requests already routed keep the Route they resolved, new ones
+ * see the new table.
+ */
+@Component
+@Slf4j
+public class RouteTableLocator implements RouteLocator {
+
+    private final ApplicationEventPublisher eventPublisher;
+    private volatile RouteTable table;
+
+    public RouteTableLocator(RouteTableProperties properties, RouteTableCompiler compiler,
+                             ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+        this.table = compiler.compile(properties.getGroups());
+        log.info("Route table compiled with {} routes", table.getRoutes().size());
+    }
+
+    @Override
+    public Flux<Route> getRoutes() {
+        return Flux.fromIterable(table.getRoutes());
+    }
+
+    public RouteTable getTable() {
+        return table;
+    }
+
+    public void swap(RouteTable updated) {
+        this.table = updated;
+        // Lets the cached composite locator (actuator, fallback lookup) pick up the change
+        eventPublisher.publishEvent(new RefreshRoutesEvent(this));
+    }
+}
@@ -0,0 +1,81 @@
+package ru.uni.ecop.gateway.route;
+
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import ru.uni.ecop.gateway.config.UpstreamPoolProperties;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One HttpClient with its own connection pool per upstream service, created on first use.
+ * Connections are reused most recently used first, so connections beyond what the load
+ * needs stay idle and get evicted instead of being cycled through. Event streams use a
+ * second pool per service sized for connections rather than requests, whose client has
+ * no response timeout, so a quiet stream is not cut off between events.
+ */
+@Component
+@Slf4j
+public class UpstreamHttpClients implements DisposableBean {
+
+    private final UpstreamPoolProperties properties;
+    private final HttpClientProperties gatewayProperties;
+    private final ConcurrentHashMap<String, ConnectionProvider> providers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, HttpClient> clients = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, HttpClient> streamingClients = new ConcurrentHashMap<>();
+
+    public UpstreamHttpClients(UpstreamPoolProperties properties, HttpClientProperties gatewayProperties) {
+        this.properties = properties;
+        this.gatewayProperties = gatewayProperties;
+    }
+
+    public HttpClient forUpstream(String upstream) {
+        HttpClient client = clients.get(upstream);
+        return client != null ? client : clients.computeIfAbsent(upstream,
+            name -> create(name, properties.poolFor(name), true));
+    }
+
+    public HttpClient forStreaming(String upstream) {
+        HttpClient client = streamingClients.get(upstream);
+        return client != null ? client : streamingClients.computeIfAbsent(upstream,
+            name -> create(name + "-streaming", properties.getStreaming(), false));
+    }
+
+    @Override
+    public void destroy() {
+        providers.values().forEach(ConnectionProvider::dispose);
+    }
+
+    private HttpClient create(String upstream, UpstreamPoolProperties.Pool pool, boolean responseTimeout) {
+        ConnectionProvider provider = ConnectionProvider.builder("upstream-" + upstream)
+            .maxConnections(pool.getMaxConnections())
+            .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+            .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+            .maxIdleTime(pool.getMaxIdleTime())
+            .maxLifeTime(pool.getMaxLifeTime())
+            .evictInBackground(pool.getEvictionInterval())
+            .lifo()
+            .metrics(properties.isMetrics())
+            .build();
+        providers.put(upstream, provider);
+        log.info("Connection pool for {}: {} connections, protocols {}", upstream, pool.getMaxConnections(), pool.getProtocols());
+
+        HttpClient client = HttpClient.create(provider)
+            .keepAlive(true)
+            .option(ChannelOption.SO_KEEPALIVE, pool.isTcpKeepAlive())
+            .protocol(pool.getProtocols().toArray(HttpProtocol[]::new));
+        // Same timeouts as the default gateway client
+        if (gatewayProperties.getConnectTimeout() != null) {
+            client = client.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, gatewayProperties.getConnectTimeout());
+        }
+        if (responseTimeout && gatewayProperties.getResponseTimeout() != null) {
+            client = client.responseTimeout(gatewayProperties.getResponseTimeout());
+        }
+        return client;
+    }
+}
@@ -0,0 +1,140 @@
+package ru.uni.ecop.gateway.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.uni.ecop.gateway.config.AuthProperties;
+import ru.uni.ecop.gateway.dto.AuthenticatedUser;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Compact signed identity header forwarded to upstreams, so they can trust the user the
+ * gateway verified instead of validating the token again. The value is
+ * base64url(claims) "." base64url(HMAC-SHA256(base64url(claims))) where claims is a query
+ * string of URL encoded values: sub=42&roles=STUDENT%2CADMIN&tier=premium&exp=1700000000&iat=1699990000.
+ * exp is the token expiry and iat the time the gateway forwarded the request, empty values
+ * are left out. Calls the gateway makes on its own, without a client request, carry the
+ * gateway's service identity: sub=api-gateway&roles=SERVICE.
+ */
+@Component
+@Slf4j
+public class IdentityHeaders {
+
+    public static final String SERVICE_SUBJECT = "api-gateway";
+    public static final String SERVICE_ROLE = "SERVICE";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final String headerName;
+    private final ThreadLocal<Mac> macs;
+
+    public IdentityHeaders(AuthProperties properties) {
+        this.headerName = properties.getIdentity().getHeader();
+        String secret = properties.getIdentity().getSecret();
+        if (secret == null || secret.isEmpty()) {
+            log.warn("gateway.auth.identity.secret is not set, verified users are not forwarded to upstreams");
+            this.macs = null;
+        } else {
+            SecretKeySpec key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+            this.macs = ThreadLocal.withInitial(() -> {
+                try {
+                    Mac mac = Mac.getInstance(ALGORITHM);
+                    mac.init(key);
+                    return mac;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("HmacSHA256 is not available", e);
+                }
+            });
+        }
+    }
+
+    public String getHeaderName() {
+        return headerName;
+    }
+
+    /**
+     * Header value for the user, or null when no signing key is configured
+     */
+    public String encode(AuthenticatedUser user, Instant now) {
+        if (macs == null) {
+            return null;
+        }
+        StringBuilder claims = new StringBuilder(96);
+        append(claims, "sub", user.getUserId());
+        append(claims, "roles", user.getRoles() == null || user.getRoles().isEmpty() ? null : String.join(",", user.getRoles()));
+        append(claims, "tier", user.getTier());
+        append(claims, "exp", user.getExpiresAt() != null ? String.valueOf(user.getExpiresAt().getEpochSecond()) : null);
+        append(claims, "iat", String.valueOf(now.getEpochSecond()));
+
+        String payload = ENCODER.encodeToString(claims.toString().getBytes(StandardCharsets.UTF_8));
+        return payload + '.' + ENCODER.encodeToString(sign(payload));
+    }
+
+    /**
+     * Header value for calls the gateway makes on its own behalf, or null when no signing key is configured
+     */
+    public String encodeService(Instant now) {
+        return encode(new AuthenticatedUser(SERVICE_SUBJECT, List.of(SERVICE_ROLE), null, null), now);
+    }
+
+    /**
+     * The user of a header value made by encode, or null when it is malformed or its
+     * signature does not match. Reference for the services reading the header.
+     */
+    public AuthenticatedUser decode(String value) {
+        int dot = value.indexOf('.');
+        if (macs == null || dot <= 0) {
+            return null;
+        }
+        String payload = value.substring(0, dot);
+        try {
+            if (!MessageDigest.isEqual(sign(payload), DECODER.decode(value.substring(dot + 1)))) {
+                return null;
+            }
+            AuthenticatedUser user = new AuthenticatedUser(null, List.of(), null, null);
+            for (String claim : new String(DECODER.decode(payload), StandardCharsets.UTF_8).split("&")) {
+                int eq = claim.indexOf('=');
+                String name = claim.substring(0, eq);
+                String claimValue = URLDecoder.decode(claim.substring(eq + 1), StandardCharsets.UTF_8);
+                switch (name) {
+                    case "sub" -> user.setUserId(claimValue);
+                    case "roles" -> user.setRoles(new ArrayList<>(List.of(claimValue.split(","))));
+                    case "tier" -> user.setTier(claimValue);
+                    case "exp" -> user.setExpiresAt(Instant.ofEpochSecond(Long.parseLong(claimValue)));
+                    default -> {
+                        // iat and claims added later
+                    }
+                }
+            }
+            return user;
+        } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private byte[] sign(String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void append(StringBuilder claims, String name, String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        if (claims.length() > 0) {
+            claims.append('&');
+        }
+        claims.append(name).append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+    }
+}
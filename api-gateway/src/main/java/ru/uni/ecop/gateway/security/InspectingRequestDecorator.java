@@ -0,0 +1,116 @@
+package ru.uni.ecop.gateway.security;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import reactor.core.publisher.Flux;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Scans the request body chunk by chunk while it is streamed to the upstream service.
+ * Nothing is buffered: the scan keeps a few ints of state, so signatures split across
+ * chunk boundaries are still found, and only the first maxInspectSize bytes are read.
+ * On a match the body stream fails with MaliciousContentException, which aborts the
+ * upstream request.
+ */
+public class InspectingRequestDecorator extends ServerHttpRequestDecorator {
+
+    private final InspectionPatterns patterns;
+    private final int maxInspectSize;
+    private final boolean formEncoded;
+
+    public InspectingRequestDecorator(ServerHttpRequest delegate, InspectionPatterns patterns, int maxInspectSize,
+                                      boolean formEncoded) {
+        super(delegate);
+        this.patterns = patterns;
+        this.maxInspectSize = maxInspectSize;
+        this.formEncoded = formEncoded;
+    }
+
+    @Override
+    public Flux<DataBuffer> getBody() {
+        return Flux.defer(() -> {
+            BodyScan scan = new BodyScan(patterns.newScan(), maxInspectSize, formEncoded);
+            return super.getBody().handle((buffer, sink) -> {
+                if (scan.inspect(buffer)) {
+                    DataBufferUtils.release(buffer);
+                    sink.error(new MaliciousContentException(scan.getMatchedRule()));
+                } else {
+                    sink.next(buffer);
+                }
+            });
+        });
+    }
+
+    private static final class BodyScan {
+
+        private final InspectionPatterns.Scan scan;
+        private final boolean formEncoded;
+        private int remaining;
+        // Percent-decoding of form bodies: hex digits seen after '%' (0-2) and their value
+        private int escapeDigits;
+        private int escapeValue;
+
+        BodyScan(InspectionPatterns.Scan scan, int maxInspectSize, boolean formEncoded) {
+            this.scan = scan;
+            this.remaining = maxInspectSize;
+            this.formEncoded = formEncoded;
+        }
+
+        /**
+         * Returns true once a signature has matched
+         */
+        boolean inspect(DataBuffer buffer) {
+            if (remaining <= 0) {
+                return scan.isMatched();
+            }
+            // Reads through ByteBuffer views, the read position forwarded upstream is untouched
+            try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                while (iterator.hasNext() && remaining > 0) {
+                    ByteBuffer chunk = iterator.next();
+                    int length = Math.min(chunk.remaining(), remaining);
+                    remaining -= length;
+                    for (int i = 0; i < length; i++) {
+                        if (feed(chunk.get(chunk.position() + i) & 0xFF)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        String getMatchedRule() {
+            return scan.getMatchedRule();
+        }
+
+        private boolean feed(int b) {
+            if (!formEncoded) {
+                return scan.next(b);
+            }
+            if (escapeDigits > 0) {
+                int digit = Character.digit(b, 16);
+                if (digit < 0) {
+                    // Not an escape after all, inspect it as written
+                    boolean matched = scan.next('%') || (escapeDigits == 2 && scan.next(Character.forDigit(escapeValue, 16)));
+                    escapeDigits = 0;
+                    return matched || scan.next(b);
+                }
+                escapeValue = escapeValue * 16 + digit;
+                if (++escapeDigits == 3) {
+                    escapeDigits = 0;
+                    return scan.next(escapeValue);
+                }
+                return false;
+            }
+            if (b == '%') {
+                escapeDigits = 1;
+                escapeValue = 0;
+                return false;
+            }
+            return scan.next(b == '+' ? ' ' : b);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package ru.uni.ecop.gateway.security;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Compiled set of attack signatures, matched in one pass over the input with an Aho-Corasick
+ * automaton turned into a full DFA (one table lookup per character, no backtracking).
+ * Input is lower-cased and runs of whitespace are collapsed to a single space, so signatures
+ * are written as lower-case literals with single spaces. A rule may consist of several
+ * literals that have to appear in order, e.g. "cast(" followed later by "as".
+ */
+public final class InspectionPatterns {
+
+    private static final int ALPHABET = 256;
+
+    private final String[] ruleNames;
+    private final int[] ruleSteps;
+    // transitions[state * ALPHABET + symbol]
+    private final int[] transitions;
+    // Per state: pairs of (rule, step) whose literal ends in that state
+    private final int[][] outputs;
+
+    private InspectionPatterns(List<Rule> rules) {
+        this.ruleNames = new String[rules.size()];
+        this.ruleSteps = new int[rules.size()];
+
+        List<int[]> gotos = new ArrayList<>();
+        List<List<int[]>> stateOutputs = new ArrayList<>();
+        gotos.add(newState());
+        stateOutputs.add(new ArrayList<>());
+
+        for (int rule = 0; rule < rules.size(); rule++) {
+            ruleNames[rule] = rules.get(rule).name();
+            ruleSteps[rule] = rules.get(rule).literals().length;
+            for (int step = 0; step < ruleSteps[rule]; step++) {
+                int state = 0;
+                for (char c : rules.get(rule).literals()[step].toCharArray()) {
+                    int symbol = c & 0xFF;
+                    if (gotos.get(state)[symbol] < 0) {
+                        gotos.get(state)[symbol] = gotos.size();
+                        gotos.add(newState());
+                        stateOutputs.add(new ArrayList<>());
+                    }
+                    state = gotos.get(state)[symbol];
+                }
+                stateOutputs.get(state).add(new int[]{rule, step});
+            }
+        }
+
+        // Breadth-first failure links, folded into the goto table so every state has all transitions
+        int states = gotos.size();
+        int[] failure = new int[states];
+        this.transitions = new int[states * ALPHABET];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int symbol = 0; symbol < ALPHABET; symbol++) {
+            int next = gotos.get(0)[symbol];
+            transitions[symbol] = Math.max(next, 0);
+            if (next > 0) {
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            stateOutputs.get(state).addAll(stateOutputs.get(failure[state]));
+            for (int symbol = 0; symbol < ALPHABET; symbol++) {
+                int next = gotos.get(state)[symbol];
+                if (next >= 0) {
+                    failure[next] = transitions[failure[state] * ALPHABET + symbol];
+                    transitions[state * ALPHABET + symbol] = next;
+                    queue.add(next);
+                } else {
+                    transitions[state * ALPHABET + symbol] = transitions[failure[state] * ALPHABET + symbol];
+                }
+            }
+        }
+
+        this.outputs = new int[states][];
+        for (int state = 0; state < states; state++) {
+            List<int[]> matches = stateOutputs.get(state);
+            outputs[state] = new int[matches.size() * 2];
+            for (int i = 0; i < matches.size(); i++) {
+                outputs[state][i * 2] = matches.get(i)[0];
+                outputs[state][i * 2 + 1] = matches.get(i)[1];
+            }
+        }
+    }
+
+    /**
+     * SQL injection and XSS signatures equivalent to the regular expressions SecurityFilter used before
+     */
+    public static InspectionPatterns defaults() {
+        List<Rule> rules = new ArrayList<>();
+        for (String literal : List.of("'", ";", "union", "having", "group by", "order by", "insert", "update", "delete",
+            "create", "drop", "truncate", "rename", "alter", "exec sp ", "exec xp ")) {
+            rules.add(new Rule("sql-injection", literal));
+        }
+        rules.add(new Rule("sql-injection", "cast(", "as"));
+        rules.add(new Rule("xss", "<script", ">", "</script>"));
+        rules.add(new Rule("xss", "javascript:"));
+        rules.add(new Rule("xss", "onload="));
+        rules.add(new Rule("xss", "onerror="));
+        return new InspectionPatterns(rules);
+    }
+
+    /**
+     * Narrow signatures for request bodies. Chat messages and documents are free text, so
+     * quotes, semicolons and SQL keywords on their own are normal there; only whole
+     * injection shapes are matched.
+     */
+    public static InspectionPatterns bodyDefaults() {
+        List<Rule> rules = new ArrayList<>();
+        for (String literal : List.of("' or '", "' or 1=1", "\" or \"", "union select", "union all select",
+            "'; drop table", "'; drop database")) {
+            rules.add(new Rule("sql-injection", literal));
+        }
+        rules.add(new Rule("xss", "<script"));
+        rules.add(new Rule("xss", "javascript:"));
+        rules.add(new Rule("xss", "onload="));
+        rules.add(new Rule("xss", "onerror="));
+        return new InspectionPatterns(rules);
+    }
+
+    public Scan newScan() {
+        return new Scan();
+    }
+
+    /**
+     * Name of the first rule matching within the first maxLength characters, or null
+     */
+    public String match(CharSequence value, int maxLength) {
+        Scan scan = newScan();
+        int length = Math.min(value.length(), maxLength);
+        for (int i = 0; i < length; i++) {
+            if (scan.next(value.charAt(i))) {
+                return scan.getMatchedRule();
+            }
+        }
+        return null;
+    }
+
+    private static int[] newState() {
+        int[] gotos = new int[ALPHABET];
+        Arrays.fill(gotos, -1);
+        return gotos;
+    }
+
+    private record Rule(String name, String... literals) {
+    }
+
+    /**
+     * Matching state of one input, can be fed in pieces (e.g. body chunks) and keeps literals
+     * that straddle piece boundaries. Holds a few ints regardless of how much input it has seen.
+     */
+    public final class Scan {
+
+        private int state;
+        private boolean afterSpace;
+        // Literals of each rule found so far, in order
+        private final int[] progress = new int[ruleNames.length];
+        private String matchedRule;
+
+        /**
+         * Feeds one character (or byte of UTF-8 input), returns true once a rule has matched
+         */
+        public boolean next(int c) {
+            if (matchedRule != null) {
+                return true;
+            }
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B) {
+                if (afterSpace) {
+                    return false;
+                }
+                afterSpace = true;
+                c = ' ';
+            } else {
+                afterSpace = false;
+                if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                }
+            }
+            // Signatures are ASCII, anything wider can only continue from the root
+            state = transitions[state * ALPHABET + (c < ALPHABET ? c : 0)];
+
+            int[] matches = outputs[state];
+            for (int i = 0; i < matches.length; i += 2) {
+                int rule = matches[i];
+                if (progress[rule] == matches[i + 1] && ++progress[rule] == ruleSteps[rule]) {
+                    matchedRule = ruleNames[rule];
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean isMatched() {
+            return matchedRule != null;
+        }
+
+        public String getMatchedRule() {
+            return matchedRule;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package ru.uni.ecop.gateway.security;
+
+/**
+ * Raised from an inspected request body stream when a signature matches
+ */
+public class MaliciousContentException extends RuntimeException {
+
+    private final String rule;
+
+    public MaliciousContentException(String rule) {
+        super("Request body matches " + rule + " signature");
+        this.rule = rule;
+    }
+
+    public String getRule() {
+        return rule;
+    }
+}
@@ -0,0 +1,103 @@
+package ru.uni.ecop.gateway.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks query parameters and header values against the inspection patterns. Header values
+ * repeat a lot between requests (user agents, accept lists, cookies of the same session),
+ * so their verdicts are cached. Request bodies use the narrower body patterns.
+ */
+@Component
+public class RequestInspector {
+
+    private static final String CLEAN = "";
+    // Bounds the cached header values by their characters, plus a rough per-entry overhead,
+    // so long attacker-chosen values cannot pin more than a few megabytes
+    private static final long MAX_CACHED_CHARS = 2 * 1024 * 1024;
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final InspectionPatterns patterns;
+    private final InspectionPatterns bodyPatterns;
+    // Header value -> matched rule, CLEAN when nothing matched
+    private final Cache<String, String> headerVerdicts;
+
+    public RequestInspector(MeterRegistry meterRegistry) {
+        this.patterns = InspectionPatterns.defaults();
+        this.bodyPatterns = InspectionPatterns.bodyDefaults();
+        this.headerVerdicts = Caffeine.newBuilder()
+            .maximumWeight(MAX_CACHED_CHARS)
+            .weigher((String value, String rule) -> value.length() + ENTRY_OVERHEAD)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, headerVerdicts, "gateway.security.verdicts");
+    }
+
+    public InspectionPatterns getPatterns() {
+        return patterns;
+    }
+
+    public InspectionPatterns getBodyPatterns() {
+        return bodyPatterns;
+    }
+
+    /**
+     * First matched rule in the query parameters, or null
+     */
+    public String inspectQueryParams(MultiValueMap<String, String> queryParams, int maxLength) {
+        for (List<String> values : queryParams.values()) {
+            String rule = inspectValues(values, maxLength);
+            if (rule != null) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * First matched rule in the header values, or null. Headers in skipHeaders (a case-insensitive
+     * set) are not inspected.
+     */
+    public String inspectHeaders(HttpHeaders headers, Set<String> skipHeaders, int maxLength) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (skipHeaders.contains(header.getKey())) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                // Longer values are truncated to maxLength, their verdict is not cached
+                String rule = value.length() <= maxLength ? headerVerdicts.get(value, this::matchOrClean) : patterns.match(value, maxLength);
+                if (rule != null && !rule.isEmpty()) {
+                    return rule;
+                }
+            }
+        }
+        return null;
+    }
+
+    private String matchOrClean(String value) {
+        String rule = patterns.match(value, value.length());
+        return rule != null ? rule : CLEAN;
+    }
+
+    private String inspectValues(Collection<String> values, int maxLength) {
+        for (String value : values) {
+            if (value != null) {
+                String rule = patterns.match(value, maxLength);
+                if (rule != null) {
+                    return rule;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,109 @@
+package ru.uni.ecop.gateway.security;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import ru.uni.ecop.gateway.dto.AuthenticatedUser;
+import ru.uni.ecop.gateway.filter.AuthenticationFilter;
+import ru.uni.ecop.gateway.service.TokenValidationService;
+import ru.uni.ecop.gateway.streaming.StreamingRequests;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * The only place a bearer token is verified. The user is stored on the exchange under
+ * AuthenticationFilter.AUTHENTICATED_USER_ATTR, in the Reactor context and as the Spring
+ * Security authentication, so authorization rules, rate limit keys, the cache and the
+ * identity header all reuse the one verification. A missing or invalid token leaves the
+ * request anonymous, the authorization rules decide whether that is enough. The identity
+ * header is removed from every incoming request, clients cannot pose as a verified user.
+ * Browsers cannot set headers on WebSocket and EventSource requests, so those may carry the
+ * token as the access_token query parameter instead; it is moved to the Authorization header
+ * and never forwarded in the URI. A stream is authenticated once, when it is opened.
+ */
+public class TokenAuthenticationWebFilter implements WebFilter {
+
+    public static final String AUTHENTICATION_ERROR_ATTR = TokenAuthenticationWebFilter.class.getName() + ".error";
+    public static final String ACCESS_TOKEN_PARAM = "access_token";
+
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final AuthenticatedUser ANONYMOUS = new AuthenticatedUser();
+
+    private final TokenValidationService tokenValidationService;
+    private final String identityHeader;
+
+    public TokenAuthenticationWebFilter(TokenValidationService tokenValidationService, String identityHeader) {
+        this.tokenValidationService = tokenValidationService;
+        this.identityHeader = identityHeader;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerWebExchange stripped = fromQueryToken(exchange.getRequest().getHeaders().containsKey(identityHeader)
+            ? exchange.mutate().request(request -> request.headers(headers -> headers.remove(identityHeader))).build()
+            : exchange);
+
+        String authorization = stripped.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization == null) {
+            return chain.filter(stripped);
+        }
+        if (!authorization.startsWith(BEARER_PREFIX)) {
+            stripped.getAttributes().put(AUTHENTICATION_ERROR_ATTR, "Invalid authorization header format");
+            return chain.filter(stripped);
+        }
+
+        return tokenValidationService.validate(authorization.substring(BEARER_PREFIX.length()))
+            .onErrorResume(e -> {
+                stripped.getAttributes().put(AUTHENTICATION_ERROR_ATTR, "Authentication failed: " + e.getMessage());
+                return Mono.just(ANONYMOUS);
+            })
+            .defaultIfEmpty(ANONYMOUS)
+            .flatMap(user -> user == ANONYMOUS ? chain.filter(stripped) : authenticated(stripped, chain, user));
+    }
+
+    private static ServerWebExchange fromQueryToken(ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        String token = request.getQueryParams().getFirst(ACCESS_TOKEN_PARAM);
+        if (token == null) {
+            return exchange;
+        }
+        // Only taken where no header can be set, but never forwarded either way
+        boolean usable = StreamingRequests.typeOf(request) != null
+            && !request.getHeaders().containsKey(HttpHeaders.AUTHORIZATION);
+        return withoutQueryToken(exchange, usable ? BEARER_PREFIX + token : null);
+    }
+
+    private static ServerWebExchange withoutQueryToken(ServerWebExchange exchange, String authorization) {
+        URI uri = UriComponentsBuilder.fromUri(exchange.getRequest().getURI())
+            .replaceQueryParam(ACCESS_TOKEN_PARAM)
+            .build(true)
+            .toUri();
+        return exchange.mutate().request(request -> request.uri(uri).headers(headers -> {
+            if (authorization != null) {
+                headers.set(HttpHeaders.AUTHORIZATION, authorization);
+            }
+        })).build();
+    }
+
+    private static Mono<Void> authenticated(ServerWebExchange exchange, WebFilterChain chain, AuthenticatedUser user) {
+        exchange.getAttributes().put(AuthenticationFilter.AUTHENTICATED_USER_ATTR, user);
+        List<SimpleGrantedAuthority> authorities = user.getRoles() == null ? List.of() : user.getRoles().stream()
+            .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
+            .toList();
+        Authentication authentication = new UsernamePasswordAuthenticationToken(user, null, authorities);
+        return chain.filter(exchange)
+            .contextWrite(ReactiveSecurityContextHolder.withAuthentication(authentication))
+            // Also in the Reactor context, for code that only sees the reactive chain such as rate limiters
+            .contextWrite(Context.of(AuthenticatedUser.class, user));
+    }
+}
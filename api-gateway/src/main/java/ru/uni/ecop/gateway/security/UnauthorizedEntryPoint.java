@@ -0,0 +1,39 @@
+package ru.uni.ecop.gateway.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.server.ServerAuthenticationEntryPoint;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.dto.ErrorResponse;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Answers anonymous requests to protected paths with 401 and the reason the token was not
+ * accepted, if one was sent
+ */
+@Slf4j
+public class UnauthorizedEntryPoint implements ServerAuthenticationEntryPoint {
+
+    @Override
+    public Mono<Void> commence(ServerWebExchange exchange, AuthenticationException ex) {
+        String message = exchange.getAttribute(TokenAuthenticationWebFilter.AUTHENTICATION_ERROR_ATTR);
+        if (message == null) {
+            message = "Authorization header is missing";
+        }
+        log.debug("Rejected {}: {}", exchange.getRequest().getPath(), message);
+
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.UNAUTHORIZED);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        ErrorResponse errorResponse = new ErrorResponse(HttpStatus.UNAUTHORIZED.value(),
+            HttpStatus.UNAUTHORIZED.getReasonPhrase(), message);
+        DataBuffer buffer = response.bufferFactory().wrap(errorResponse.toString().getBytes(StandardCharsets.UTF_8));
+        return response.writeWith(Mono.just(buffer));
+    }
+}
@@ -1,66 +1,462 @@
 package ru.uni.ecop.gateway.service;
 
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriTemplate;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.config.AggregationProperties;
+import ru.uni.ecop.gateway.config.AggregationProperties.Composition;
+import ru.uni.ecop.gateway.config.AggregationProperties.Source;
+import ru.uni.ecop.gateway.dto.AggregatedSection;
+import ru.uni.ecop.gateway.dto.AuthenticatedUser;
+import ru.uni.ecop.gateway.security.IdentityHeaders;
 
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * Executes compositions: the sources of a composition are called in parallel unless one
+ * depends on the result of another, and their results are merged into one document.
+ * Identical calls are made once per aggregation and shared by concurrent aggregations,
+ * results of sources with a ttl are cached per caller. Every call carries the caller's
+ * Authorization header and the signed identity header of the verified user.
+ */
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class AggregationService {
 
-    private final WebClient.Builder webClientBuilder;
-    private final Map<String, Object> cache = new ConcurrentHashMap<>();
+    private static final Composition USER_PROFILE = composition(
+        new Source("basicInfo", "http://core-service/api/users/{userId}"),
+        new Source("projects", "http://project-service/api/projects?userId={userId}"),
+        new Source("events", "http://events-service/api/events?userId={userId}"),
+        new Source("portfolio", "http://portfolio-service/api/portfolios?userId={userId}"));
+
+    private static final Composition DASHBOARD = composition(
+        new Source("coreData", "http://core-service/api/dashboards?userId={userId}"),
+        new Source("projectData", "http://project-service/api/projects?userId={userId}"),
+        new Source("eventData", "http://events-service/api/events?userId={userId}"),
+        new Source("analyticsData", "http://analytics-service/api/analytics/users/{userId}"));
+
+    private static final Composition SEARCH = composition(
+        new Source("users", "http://core-service/api/users/search?query={query}"),
+        new Source("projects", "http://project-service/api/projects/search?query={query}"),
+        new Source("events", "http://events-service/api/events/search?query={query}"),
+        new Source("portfolios", "http://portfolio-service/api/portfolios/search?query={query}"));
+
+    private final WebClient webClient;
+    private final AggregationProperties properties;
+    private final RequestCoalescer<String, JsonNode> sourceCalls;
+    private final Cache<String, CachedSource> cache;
+    private final IdentityHeaders identityHeaders;
+
+    public AggregationService(WebClient.Builder webClientBuilder, AggregationProperties properties,
+                              IdentityHeaders identityHeaders, MeterRegistry meterRegistry) {
+        // The load-balanced builder resolves http://<service-id> through Consul
+        this.webClient = webClientBuilder.build();
+        this.properties = properties;
+        this.identityHeaders = identityHeaders;
+        this.sourceCalls = new RequestCoalescer<>("aggregation-source", meterRegistry);
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(properties.getCacheMaximumSize())
+            .expireAfter(new Expiry<String, CachedSource>() {
+                @Override
+                public long expireAfterCreate(String key, CachedSource value, long currentTime) {
+                    return value.ttlNanos();
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, CachedSource value, long currentTime, long currentDuration) {
+                    return value.ttlNanos();
+                }
+
+                @Override
+                public long expireAfterRead(String key, CachedSource value, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "gateway.aggregation");
+    }
+
+    @PostConstruct
+    public void validateCompositions() {
+        properties.getCompositions().forEach(AggregationService::validate);
+    }
 
     /**
      * Aggregate user profile data from multiple services
      */
-    public Mono<Map<String, Object>> aggregateUserProfile(String userId) {
-        // This is a simplified example - in real implementation, 
-        // we would call multiple services and combine their responses
-        return Mono.fromCallable(() -> {
-            Map<String, Object> aggregatedData = new ConcurrentHashMap<>();
-            aggregatedData.put("userId", userId);
-            aggregatedData.put("basicInfo", "fetched from core service");
-            aggregatedData.put("projects", "fetched from project service");
-            aggregatedData.put("events", "fetched from events service");
-            aggregatedData.put("portfolio", "fetched from portfolio service");
-            return aggregatedData;
-        }).doOnError(error -> log.error("Error aggregating user profile data", error));
+    public Mono<Map<String, Object>> aggregateUserProfile(String userId, String authorization) {
+        return compose(USER_PROFILE, Map.of("userId", userId), authorization)
+            .doOnError(error -> log.error("Error aggregating user profile data", error));
     }
 
     /**
      * Aggregate dashboard data from multiple services
      */
-    public Mono<Map<String, Object>> aggregateDashboardData(String userId) {
-        return Mono.fromCallable(() -> {
-            Map<String, Object> aggregatedData = new ConcurrentHashMap<>();
-            aggregatedData.put("userId", userId);
-            aggregatedData.put("coreData", "fetched from core service");
-            aggregatedData.put("projectData", "fetched from project service");
-            aggregatedData.put("eventData", "fetched from events service");
-            aggregatedData.put("analyticsData", "fetched from analytics service");
-            return aggregatedData;
-        }).doOnError(error -> log.error("Error aggregating dashboard data", error));
+    public Mono<Map<String, Object>> aggregateDashboardData(String userId, String authorization) {
+        return compose(DASHBOARD, Map.of("userId", userId), authorization)
+            .doOnError(error -> log.error("Error aggregating dashboard data", error));
     }
 
     /**
      * Aggregate search results from multiple services
      */
-    public Mono<Map<String, Object>> aggregateSearchResults(String query) {
-        return Mono.fromCallable(() -> {
-            Map<String, Object> aggregatedData = new ConcurrentHashMap<>();
-            aggregatedData.put("query", query);
-            aggregatedData.put("users", "fetched from core service");
-            aggregatedData.put("projects", "fetched from project service");
-            aggregatedData.put("events", "fetched from events service");
-            aggregatedData.put("portfolios", "fetched from portfolio service");
+    public Mono<Map<String, Object>> aggregateSearchResults(String query, String authorization) {
+        return compose(SEARCH, Map.of("query", query), authorization)
+            .doOnError(error -> log.error("Error aggregating search results", error));
+    }
+
+    /**
+     * Aggregate a composition defined under gateway.aggregation.compositions, empty when there is none by that name
+     */
+    public Mono<Map<String, Object>> aggregate(String name, Map<String, String> variables, String authorization) {
+        Composition composition = properties.getCompositions().get(name);
+        if (composition == null) {
+            return Mono.empty();
+        }
+        return compose(composition, variables, authorization)
+            .doOnError(error -> log.error("Error aggregating composition {}", name, error));
+    }
+
+    /**
+     * Streaming variant of aggregateUserProfile
+     */
+    public Flux<AggregatedSection> streamUserProfile(String userId, String authorization) {
+        return composeStream(USER_PROFILE, Map.of("userId", userId), authorization);
+    }
+
+    /**
+     * Streaming variant of aggregateDashboardData
+     */
+    public Flux<AggregatedSection> streamDashboardData(String userId, String authorization) {
+        return composeStream(DASHBOARD, Map.of("userId", userId), authorization);
+    }
+
+    /**
+     * Streaming variant of aggregateSearchResults
+     */
+    public Flux<AggregatedSection> streamSearchResults(String query, String authorization) {
+        return composeStream(SEARCH, Map.of("query", query), authorization);
+    }
+
+    /**
+     * Streaming variant of aggregate, empty when there is no composition by that name
+     */
+    public Flux<AggregatedSection> stream(String name, Map<String, String> variables, String authorization) {
+        Composition composition = properties.getCompositions().get(name);
+        if (composition == null) {
+            return Flux.empty();
+        }
+        return composeStream(composition, variables, authorization);
+    }
+
+    /**
+     * Emits each section as soon as its source completes, so fast sources reach the client
+     * without waiting for slow ones and no section is held after it has been written
+     */
+    private Flux<AggregatedSection> composeStream(Composition composition, Map<String, String> variables, String authorization) {
+        Execution execution = new Execution(composition, variables, authorization);
+        List<Mono<SourceResult>> results = composition.getSources().stream()
+            .map(source -> execution.result(source.getName()))
+            .toList();
+
+        return Flux.merge(results)
+            .concatMapIterable(result -> {
+                if (composition.getShape().isEmpty()) {
+                    return List.of(new AggregatedSection(result.source(), result.data(), result.error()));
+                }
+                // Every output field taken from this source is complete now
+                List<AggregatedSection> sections = new ArrayList<>();
+                composition.getShape().forEach((field, reference) -> {
+                    if (sourceOf(reference).equals(result.source())) {
+                        JsonNode value = select(Map.of(result.source(), result), reference);
+                        sections.add(new AggregatedSection(field, value, result.error()));
+                    }
+                });
+                return sections;
+            });
+    }
+
+    /**
+     * The response takes as long as the longest dependency chain (each source bounded by its
+     * deadline) rather than the sum of all sources. Failed sources become null sections and
+     * the response is flagged partial.
+     */
+    private Mono<Map<String, Object>> compose(Composition composition, Map<String, String> variables, String authorization) {
+        Execution execution = new Execution(composition, variables, authorization);
+        List<Mono<SourceResult>> results = composition.getSources().stream()
+            .map(source -> execution.result(source.getName()))
+            .toList();
+
+        return Mono.zip(results, values -> {
+            Map<String, SourceResult> byName = new HashMap<>();
+            Map<String, String> errors = new LinkedHashMap<>();
+            for (Object value : values) {
+                SourceResult result = (SourceResult) value;
+                byName.put(result.source(), result);
+                if (result.error() != null) {
+                    errors.put(result.source(), result.error());
+                }
+            }
+
+            Map<String, Object> aggregatedData = new LinkedHashMap<>(variables);
+            if (composition.getShape().isEmpty()) {
+                composition.getSources().forEach(source -> aggregatedData.put(source.getName(), byName.get(source.getName()).data()));
+            } else {
+                composition.getShape().forEach((field, reference) -> aggregatedData.put(field, select(byName, reference)));
+            }
+            aggregatedData.put("partial", !errors.isEmpty());
+            if (!errors.isEmpty()) {
+                aggregatedData.put("errors", errors);
+            }
             return aggregatedData;
-        }).doOnError(error -> log.error("Error aggregating search results", error));
+        });
+    }
+
+    /**
+     * Result body of one upstream call, served from cache or shared with concurrent identical calls
+     */
+    private Mono<JsonNode> load(Source source, URI uri, String authorization) {
+        String key = uri + "|" + (authorization != null ? hash(authorization) : "anonymous");
+        CachedSource cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return Mono.just(cached.body());
+        }
+        // Callers sharing a key share the token, so the verified user of the first one is theirs too
+        return sourceCalls.execute(key, () -> Mono.deferContextual(context -> webClient.get()
+            .uri(uri)
+            .headers(headers -> {
+                if (authorization != null) {
+                    headers.set(HttpHeaders.AUTHORIZATION, authorization);
+                }
+                AuthenticatedUser user = context.getOrDefault(AuthenticatedUser.class, null);
+                String identity = user != null ? identityHeaders.encode(user, Instant.now()) : null;
+                if (identity != null) {
+                    headers.set(identityHeaders.getHeaderName(), identity);
+                }
+            })
+            .retrieve()
+            .bodyToMono(JsonNode.class)
+            .doOnNext(body -> {
+                Duration ttl = source.getTtl();
+                if (ttl != null && ttl.compareTo(Duration.ZERO) > 0) {
+                    cache.put(key, new CachedSource(body, ttl.toNanos()));
+                }
+            })));
+    }
+
+    private Duration timeoutFor(Source source) {
+        return source.getTimeout() != null ? source.getTimeout() : properties.timeoutFor(source.getName());
+    }
+
+    private static JsonNode select(Map<String, SourceResult> results, String reference) {
+        int dot = reference.indexOf('.');
+        SourceResult result = results.get(sourceOf(reference));
+        if (result.data() == null || dot < 0) {
+            return result.data();
+        }
+        JsonNode value = result.data().at(pointer(reference.substring(dot + 1)));
+        return value.isMissingNode() ? null : value;
+    }
+
+    private static String sourceOf(String reference) {
+        int dot = reference.indexOf('.');
+        return dot < 0 ? reference : reference.substring(0, dot);
+    }
+
+    private static String pointer(String path) {
+        return "/" + path.replace('.', '/');
+    }
+
+    private static String describe(Throwable error) {
+        if (error instanceof TimeoutException) {
+            return "timeout";
+        }
+        if (error instanceof WebClientResponseException responseException) {
+            return "status " + responseException.getStatusCode().value();
+        }
+        return "unavailable";
+    }
+
+    private static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static Composition composition(Source... sources) {
+        Composition composition = new Composition();
+        composition.setSources(List.of(sources));
+        return composition;
+    }
+
+    private static void validate(String name, Composition composition) {
+        Map<String, Source> sources = new HashMap<>();
+        for (Source source : composition.getSources()) {
+            if (source.getName() == null || source.getUri() == null) {
+                throw new IllegalStateException("Composition " + name + " has a source without name or uri");
+            }
+            if (sources.put(source.getName(), source) != null) {
+                throw new IllegalStateException("Composition " + name + " defines source " + source.getName() + " twice");
+            }
+        }
+        for (Source source : composition.getSources()) {
+            for (String dependency : source.getDependsOn()) {
+                if (!sources.containsKey(dependency)) {
+                    throw new IllegalStateException("Source " + source.getName() + " of composition " + name
+                        + " depends on unknown source " + dependency);
+                }
+            }
+            checkAcyclic(name, source, sources, new HashSet<>());
+        }
+        composition.getShape().forEach((field, reference) -> {
+            if (!sources.containsKey(sourceOf(reference))) {
+                throw new IllegalStateException("Field " + field + " of composition " + name + " refers to unknown source " + reference);
+            }
+        });
+    }
+
+    private static void checkAcyclic(String name, Source source, Map<String, Source> sources, Set<String> path) {
+        if (!path.add(source.getName())) {
+            throw new IllegalStateException("Composition " + name + " has a dependency cycle through " + source.getName());
+        }
+        for (String dependency : source.getDependsOn()) {
+            checkAcyclic(name, sources.get(dependency), sources, path);
+        }
+        path.remove(source.getName());
+    }
+
+    /**
+     * State of one aggregation: each source is resolved once, after the sources it depends on
+     */
+    private final class Execution {
+
+        private final Map<String, Source> sources = new HashMap<>();
+        private final Map<String, String> variables;
+        private final String authorization;
+        private final Map<String, Mono<SourceResult>> results = new HashMap<>();
+        // Identical calls from different sources of the same aggregation go upstream once
+        private final Map<URI, Mono<JsonNode>> calls = new ConcurrentHashMap<>();
+
+        Execution(Composition composition, Map<String, String> variables, String authorization) {
+            composition.getSources().forEach(source -> sources.put(source.getName(), source));
+            this.variables = variables;
+            this.authorization = authorization;
+        }
+
+        Mono<SourceResult> result(String name) {
+            Mono<SourceResult> result = results.get(name);
+            if (result != null) {
+                return result;
+            }
+            Source source = sources.get(name);
+            if (source.getDependsOn().isEmpty()) {
+                result = call(source, Map.of());
+            } else {
+                List<Mono<SourceResult>> dependencies = new ArrayList<>();
+                for (String dependency : source.getDependsOn()) {
+                    dependencies.add(result(dependency));
+                }
+                result = Mono.zip(dependencies, values -> values)
+                    .flatMap(values -> {
+                        Map<String, JsonNode> resolved = new HashMap<>();
+                        for (Object value : values) {
+                            SourceResult dependency = (SourceResult) value;
+                            if (dependency.data() == null) {
+                                return Mono.just(new SourceResult(name, null, dependency.source() + " unavailable"));
+                            }
+                            resolved.put(dependency.source(), dependency.data());
+                        }
+                        return call(source, resolved);
+                    });
+            }
+            result = result.cache();
+            results.put(name, result);
+            return result;
+        }
+
+        private Mono<SourceResult> call(Source source, Map<String, JsonNode> dependencies) {
+            URI uri;
+            try {
+                uri = expand(source, dependencies);
+            } catch (IllegalArgumentException e) {
+                log.warn("Aggregation source {} skipped: {}", source.getName(), e.getMessage());
+                return Mono.just(new SourceResult(source.getName(), null, "unresolved uri"));
+            }
+            return calls.computeIfAbsent(uri, key -> load(source, key, authorization).cache())
+                .map(body -> new SourceResult(source.getName(), body, null))
+                .timeout(timeoutFor(source))
+                .onErrorResume(e -> {
+                    log.warn("Aggregation source {} failed: {}", source.getName(), e.toString());
+                    return Mono.just(new SourceResult(source.getName(), null, describe(e)));
+                })
+                .defaultIfEmpty(new SourceResult(source.getName(), null, null));
+        }
+
+        private URI expand(Source source, Map<String, JsonNode> dependencies) {
+            UriTemplate template = new UriTemplate(source.getUri());
+            Map<String, Object> values = new HashMap<>();
+            for (String variable : template.getVariableNames()) {
+                int dot = variable.indexOf('.');
+                String value;
+                if (dot < 0) {
+                    value = variables.get(variable);
+                } else {
+                    JsonNode dependency = dependencies.get(variable.substring(0, dot));
+                    JsonNode node = dependency != null ? dependency.at(pointer(variable.substring(dot + 1))) : null;
+                    value = node != null && node.isValueNode() ? node.asText() : null;
+                }
+                if (value == null) {
+                    throw new IllegalArgumentException("no value for {" + variable + "}");
+                }
+                // Encoding turns / into %2F, so a value stays one segment, but "." or ".." would still climb the path
+                if (value.equals(".") || value.equals("..")) {
+                    throw new IllegalArgumentException("dot segment in {" + variable + "}");
+                }
+                values.put(variable, value);
+            }
+            // Values are encoded strictly, reserved characters such as / ? & # included
+            return UriComponentsBuilder.fromUriString(source.getUri())
+                .encode()
+                .buildAndExpand(values)
+                .toUri();
+        }
+    }
+
+    private record SourceResult(String source, JsonNode data, String error) {
+    }
+
+    private record CachedSource(JsonNode body, long ttlNanos) {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,361 @@
+package ru.uni.ecop.gateway.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.TextNode;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.AbstractServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebExchangeDecorator;
+import org.springframework.web.server.WebHandler;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.config.AuthProperties;
+import ru.uni.ecop.gateway.config.BatchProperties;
+import ru.uni.ecop.gateway.dto.BatchRequest;
+import ru.uni.ecop.gateway.dto.BatchResult;
+import ru.uni.ecop.gateway.filter.AuthenticationFilter;
+import ru.uni.ecop.gateway.ratelimit.HybridRateLimiter;
+import ru.uni.ecop.gateway.route.RouteTableHandlerMapping;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Executes batches of sub-requests chosen by the client. The batch is authenticated by the
+ * security filter chain and rate limited here once; each sub-request then runs through the
+ * route table and the filters of its route like a request of its own, rate limits of the
+ * route included, counted against the caller of the batch. It does not pass the web
+ * filters a second time. Sub-requests run in parallel up to the configured concurrency,
+ * their responses are collected in memory, so batches are meant for small calls.
+ */
+@Service
+@Slf4j
+public class BatchService {
+
+    // Rate limit route id of the batch endpoint, mapped to a policy under gateway.rate-limiting.routes
+    public static final String BATCH_ROUTE_ID = "gateway_batch_route";
+    // Marks the exchange of a sub-request
+    public static final String SUB_REQUEST_ATTR = BatchService.class.getName() + ".subRequest";
+
+    // Hop-by-hop and framing headers, meaningless for a request without its own connection
+    private static final Set<String> CONNECTION_HEADERS = Set.of(
+        HttpHeaders.CONNECTION.toLowerCase(), "keep-alive", HttpHeaders.PROXY_AUTHENTICATE.toLowerCase(),
+        HttpHeaders.PROXY_AUTHORIZATION.toLowerCase(), HttpHeaders.TE.toLowerCase(), HttpHeaders.TRAILER.toLowerCase(),
+        HttpHeaders.TRANSFER_ENCODING.toLowerCase(), HttpHeaders.UPGRADE.toLowerCase(),
+        HttpHeaders.CONTENT_LENGTH.toLowerCase(), HttpHeaders.EXPECT.toLowerCase());
+    // Describe the batch request itself rather than its sub-requests
+    private static final Set<String> REQUEST_HEADERS_NOT_INHERITED = Set.of(
+        HttpHeaders.CONTENT_TYPE.toLowerCase(), HttpHeaders.ACCEPT.toLowerCase(),
+        HttpHeaders.ACCEPT_ENCODING.toLowerCase(), HttpHeaders.ORIGIN.toLowerCase());
+    // Standard methods only, an unknown method would be sent upstream as is
+    private static final Set<String> METHODS = Set.of(
+        "GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS");
+    private static final Set<String> RESPONSE_HEADERS_NOT_RETURNED = Set.of(
+        HttpHeaders.CONTENT_LENGTH.toLowerCase(), HttpHeaders.TRANSFER_ENCODING.toLowerCase(),
+        HttpHeaders.CONNECTION.toLowerCase(), HttpHeaders.CONTENT_ENCODING.toLowerCase());
+
+    private final BatchProperties properties;
+    private final String identityHeader;
+    private final RouteTableHandlerMapping handlerMapping;
+    private final HybridRateLimiter rateLimiter;
+    private final KeyResolver keyResolver;
+    private final ObjectMapper objectMapper;
+    // Strict, a body with trailing garbage is not JSON either
+    private final ObjectReader jsonReader;
+
+    public BatchService(BatchProperties properties,
+                        AuthProperties authProperties,
+                        RouteTableHandlerMapping handlerMapping,
+                        HybridRateLimiter rateLimiter,
+                        KeyResolver keyResolver,
+                        ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.identityHeader = authProperties.getIdentity().getHeader();
+        this.handlerMapping = handlerMapping;
+        this.rateLimiter = rateLimiter;
+        this.keyResolver = keyResolver;
+        this.objectMapper = objectMapper;
+        this.jsonReader = objectMapper.reader().with(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+    }
+
+    /**
+     * Null when the batch is acceptable, otherwise the reason it is not
+     */
+    public String validate(BatchRequest batch) {
+        List<BatchRequest.SubRequest> requests = batch.getRequests();
+        if (requests == null || requests.isEmpty()) {
+            return "requests must not be empty";
+        }
+        if (requests.size() > properties.getMaxRequests()) {
+            return "at most " + properties.getMaxRequests() + " requests are accepted per batch";
+        }
+        for (BatchRequest.SubRequest request : requests) {
+            String path = request.getPath();
+            if (path == null || !path.startsWith("/") || path.startsWith("//") || path.startsWith("/gateway/")) {
+                return "path must be a routed path starting with /, was " + path;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Counts the whole batch as one request of the caller against the batch policy
+     */
+    public Mono<RateLimiter.Response> rateLimit(ServerWebExchange exchange) {
+        return keyResolver.resolve(exchange)
+            .flatMap(key -> rateLimiter.isAllowed(BATCH_ROUTE_ID, key));
+    }
+
+    /**
+     * Results in the order the sub-requests complete
+     */
+    public Flux<BatchResult> stream(BatchRequest batch, ServerWebExchange exchange) {
+        return Flux.range(0, batch.getRequests().size())
+            .flatMap(index -> execute(index, batch.getRequests().get(index), exchange), properties.getConcurrency());
+    }
+
+    /**
+     * Results in the order of the sub-requests
+     */
+    public Flux<BatchResult> execute(BatchRequest batch, ServerWebExchange exchange) {
+        return Flux.range(0, batch.getRequests().size())
+            .flatMapSequential(index -> execute(index, batch.getRequests().get(index), exchange), properties.getConcurrency());
+    }
+
+    private Mono<BatchResult> execute(int index, BatchRequest.SubRequest request, ServerWebExchange batchExchange) {
+        String id = request.getId() != null ? request.getId() : String.valueOf(index);
+        String method = request.getMethod() != null ? request.getMethod().toUpperCase() : null;
+        if (method == null || !METHODS.contains(method)) {
+            return Mono.just(error(id, HttpStatus.BAD_REQUEST, "unsupported method " + request.getMethod()));
+        }
+        SubRequestExchange exchange;
+        try {
+            exchange = new SubRequestExchange(batchExchange, subRequest(HttpMethod.valueOf(method), request, batchExchange));
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            return Mono.just(error(id, HttpStatus.BAD_REQUEST, e.getMessage()));
+        }
+
+        return handlerMapping.getHandler(exchange)
+            .flatMap(handler -> ((WebHandler) handler).handle(exchange)
+                .then(Mono.defer(() -> exchange.response.setComplete()))
+                .then(Mono.fromCallable(() -> result(id, exchange.response))))
+            .switchIfEmpty(Mono.fromSupplier(() -> error(id, HttpStatus.NOT_FOUND, "No route for " + request.getPath())))
+            .timeout(properties.getTimeout())
+            .onErrorResume(e -> {
+                log.debug("Batch sub-request {} {} failed: {}", request.getMethod(), request.getPath(), e.toString());
+                return Mono.just(error(id, statusOf(e), e.getMessage()));
+            })
+            .doFinally(signal -> exchange.response.release());
+    }
+
+    private ServerHttpRequest subRequest(HttpMethod method, BatchRequest.SubRequest request, ServerWebExchange batchExchange)
+        throws JsonProcessingException {
+        // Same scheme and host as the batch, the path and query of the sub-request
+        URI uri = batchExchange.getRequest().getURI().resolve(request.getPath());
+        byte[] body = request.getBody() != null ? objectMapper.writeValueAsBytes(request.getBody()) : null;
+
+        ServerHttpRequest mutated = batchExchange.getRequest().mutate()
+            .method(method)
+            .uri(uri)
+            .headers(headers -> {
+                headers.keySet().removeIf(name -> CONNECTION_HEADERS.contains(name.toLowerCase())
+                    || REQUEST_HEADERS_NOT_INHERITED.contains(name.toLowerCase()));
+                if (request.getHeaders() != null) {
+                    // Sub-requests act as the caller of the batch, never as someone else
+                    request.getHeaders().forEach((name, value) -> {
+                        if (!name.equalsIgnoreCase(HttpHeaders.AUTHORIZATION) && !name.equalsIgnoreCase(identityHeader)
+                            && !CONNECTION_HEADERS.contains(name.toLowerCase())) {
+                            headers.set(name, value);
+                        }
+                    });
+                }
+                // Results are embedded in the JSON batch response, whatever the client asked for
+                headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+                if (body != null) {
+                    headers.setContentType(MediaType.APPLICATION_JSON);
+                    headers.setContentLength(body.length);
+                }
+            })
+            .build();
+        DataBufferFactory bufferFactory = batchExchange.getResponse().bufferFactory();
+        return new ServerHttpRequestDecorator(mutated) {
+            @Override
+            public Flux<DataBuffer> getBody() {
+                // The batch body has been read already, a sub-request only has its own
+                return body != null ? Flux.defer(() -> Flux.just(bufferFactory.wrap(body))) : Flux.empty();
+            }
+        };
+    }
+
+    private BatchResult result(String id, CapturedResponse response) {
+        int status = response.getStatusCode() != null ? response.getStatusCode().value() : HttpStatus.OK.value();
+        Map<String, String> headers = new LinkedHashMap<>();
+        response.getHeaders().forEach((name, values) -> {
+            if (!RESPONSE_HEADERS_NOT_RETURNED.contains(name.toLowerCase()) && !values.isEmpty()) {
+                headers.put(name, String.join(", ", values));
+            }
+        });
+        return new BatchResult(id, status, headers.isEmpty() ? null : headers, body(response));
+    }
+
+    private JsonNode body(CapturedResponse response) {
+        byte[] body = response.getBody();
+        if (body == null || body.length == 0) {
+            return null;
+        }
+        MediaType contentType = response.getHeaders().getContentType();
+        if (contentType != null && (MediaType.APPLICATION_JSON.isCompatibleWith(contentType)
+            || contentType.getSubtype().endsWith("+json"))) {
+            // Parsed rather than copied, a malformed body must not break the whole batch document
+            try {
+                JsonNode tree = jsonReader.readTree(body);
+                if (!tree.isMissingNode()) {
+                    return tree;
+                }
+            } catch (IOException e) {
+                log.debug("Batch sub-response declared as JSON is not: {}", e.getMessage());
+            }
+        }
+        return TextNode.valueOf(new String(body, StandardCharsets.UTF_8));
+    }
+
+    private BatchResult error(String id, HttpStatus status, String message) {
+        return new BatchResult(id, status.value(), null,
+            objectMapper.valueToTree(Map.of("message", message != null ? message : status.getReasonPhrase())));
+    }
+
+    private static HttpStatus statusOf(Throwable error) {
+        if (error instanceof TimeoutException) {
+            return HttpStatus.GATEWAY_TIMEOUT;
+        }
+        if (error instanceof DataBufferLimitException) {
+            return HttpStatus.BAD_GATEWAY;
+        }
+        if (error instanceof ResponseStatusException statusException) {
+            HttpStatus status = HttpStatus.resolve(statusException.getStatusCode().value());
+            return status != null ? status : HttpStatus.BAD_GATEWAY;
+        }
+        return HttpStatus.BAD_GATEWAY;
+    }
+
+    /**
+     * Exchange of one sub-request: its own request, response and attributes, sharing only the
+     * verified user with the batch
+     */
+    private final class SubRequestExchange extends ServerWebExchangeDecorator {
+
+        private final ServerHttpRequest request;
+        private final CapturedResponse response;
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+        SubRequestExchange(ServerWebExchange batchExchange, ServerHttpRequest request) {
+            super(batchExchange);
+            this.request = request;
+            this.response = new CapturedResponse(batchExchange.getResponse().bufferFactory(),
+                (int) properties.getMaxResponseSize().toBytes());
+            Object user = batchExchange.getAttribute(AuthenticationFilter.AUTHENTICATED_USER_ATTR);
+            if (user != null) {
+                attributes.put(AuthenticationFilter.AUTHENTICATED_USER_ATTR, user);
+            }
+            attributes.put(SUB_REQUEST_ATTR, Boolean.TRUE);
+        }
+
+        @Override
+        public ServerHttpRequest getRequest() {
+            return request;
+        }
+
+        @Override
+        public CapturedResponse getResponse() {
+            return response;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+    }
+
+    /**
+     * Response of a sub-request, its body is joined in memory up to maxSize
+     */
+    static final class CapturedResponse extends AbstractServerHttpResponse {
+
+        private final int maxSize;
+        private volatile byte[] body;
+
+        CapturedResponse(DataBufferFactory bufferFactory, int maxSize) {
+            super(bufferFactory);
+            this.maxSize = maxSize;
+        }
+
+        byte[] getBody() {
+            return body;
+        }
+
+        void release() {
+            body = null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getNativeResponse() {
+            return (T) this;
+        }
+
+        @Override
+        protected Mono<Void> writeWithInternal(Publisher<? extends DataBuffer> content) {
+            return DataBufferUtils.join(content, maxSize)
+                .doOnNext(joined -> {
+                    byte[] bytes = new byte[joined.readableByteCount()];
+                    joined.read(bytes);
+                    DataBufferUtils.release(joined);
+                    body = bytes;
+                })
+                .then();
+        }
+
+        @Override
+        protected Mono<Void> writeAndFlushWithInternal(Publisher<? extends Publisher<? extends DataBuffer>> content) {
+            return writeWithInternal(Flux.from(content).flatMapSequential(Flux::from));
+        }
+
+        @Override
+        protected void applyStatusCode() {
+        }
+
+        @Override
+        protected void applyHeaders() {
+        }
+
+        @Override
+        protected void applyCookies() {
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package ru.uni.ecop.gateway.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.WeakKeyException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.config.JwtProperties;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the key material used for local JWT verification: the shared HMAC secret
+ * and, when a JWKS endpoint is configured, the RSA public keys refreshed in the background.
+ */
+@Component
+@Slf4j
+public class JwtKeyProvider extends SigningKeyResolverAdapter {
+
+    private final JwtProperties jwtProperties;
+    private final WebClient webClient;
+    private final Key hmacKey;
+    private volatile Map<String, Key> publicKeys = Map.of();
+    private Disposable refreshTask;
+
+    public JwtKeyProvider(JwtProperties jwtProperties) {
+        this.jwtProperties = jwtProperties;
+        // The JWKS endpoint is an external URL, not a service id, so not the load-balanced builder
+        this.webClient = WebClient.create();
+        this.hmacKey = createHmacKey(jwtProperties.getSecret());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!StringUtils.hasText(jwtProperties.getJwksUri())) {
+            return;
+        }
+        Duration interval = jwtProperties.getValidation().getKeyRefreshInterval();
+        refreshTask = Flux.interval(Duration.ZERO, interval)
+            .onBackpressureDrop()
+            .concatMap(tick -> refreshPublicKeys()
+                .onErrorResume(e -> {
+                    log.warn("Failed to refresh JWKS from {}: {}", jwtProperties.getJwksUri(), e.getMessage());
+                    return Mono.empty();
+                }))
+            .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refreshTask != null) {
+            refreshTask.dispose();
+        }
+    }
+
+    @Override
+    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+        String algorithm = header.getAlgorithm();
+        if (algorithm != null && algorithm.startsWith("HS")) {
+            if (hmacKey == null) {
+                throw new UnknownSigningKeyException("HMAC signing key is not configured");
+            }
+            return hmacKey;
+        }
+
+        Map<String, Key> keys = publicKeys;
+        String keyId = header.getKeyId();
+        Key key = keys.get(keyId != null ? keyId : "");
+        if (key == null && keyId == null && keys.size() == 1) {
+            key = keys.values().iterator().next();
+        }
+        if (key == null) {
+            throw new UnknownSigningKeyException("No signing key found for kid " + keyId);
+        }
+        return key;
+    }
+
+    Mono<Void> refreshPublicKeys() {
+        return webClient.get()
+            .uri(jwtProperties.getJwksUri())
+            .retrieve()
+            .bodyToMono(JsonNode.class)
+            .map(this::parseJwks)
+            .doOnNext(keys -> {
+                publicKeys = keys;
+                log.debug("Loaded {} signing keys from JWKS", keys.size());
+            })
+            .then();
+    }
+
+    private Map<String, Key> parseJwks(JsonNode jwks) {
+        Map<String, Key> keys = new HashMap<>();
+        for (JsonNode jwk : jwks.path("keys")) {
+            String keyId = jwk.path("kid").asText("");
+            if (!"RSA".equals(jwk.path("kty").asText())) {
+                continue;
+            }
+            try {
+                BigInteger modulus = new BigInteger(1, Base64.getUrlDecoder().decode(jwk.path("n").asText()));
+                BigInteger exponent = new BigInteger(1, Base64.getUrlDecoder().decode(jwk.path("e").asText()));
+                keys.put(keyId, KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(modulus, exponent)));
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                log.warn("Skipping invalid JWK {}: {}", keyId, e.getMessage());
+            }
+        }
+        return Map.copyOf(keys);
+    }
+
+    private static Key createHmacKey(String secret) {
+        if (!StringUtils.hasText(secret)) {
+            return null;
+        }
+        try {
+            return Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        } catch (WeakKeyException e) {
+            log.warn("jwt.secret is too short for HMAC-SHA signatures, local HS* verification is disabled");
+            return null;
+        }
+    }
+
+    /**
+     * Raised when the token references key material the gateway does not hold,
+     * the only local failure that may be retried against core-service.
+     */
+    public static class UnknownSigningKeyException extends JwtException {
+        public UnknownSigningKeyException(String message) {
+            super(message);
+        }
+    }
+}
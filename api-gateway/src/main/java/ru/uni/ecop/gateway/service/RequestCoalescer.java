@@ -0,0 +1,58 @@
+package ru.uni.ecop.gateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for reactive calls: concurrent callers with the same key share one
+ * in-flight Mono and all receive its result. The key is released as soon as the
+ * call terminates, so nothing is cached beyond the lifetime of the upstream request.
+ */
+public class RequestCoalescer<K, V> {
+
+    private final ConcurrentHashMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter executions;
+    private final Counter coalesced;
+
+    public RequestCoalescer(String name, MeterRegistry meterRegistry) {
+        this.executions = Counter.builder("gateway.coalescer.executions")
+            .tag("name", name)
+            .register(meterRegistry);
+        this.coalesced = Counter.builder("gateway.coalescer.coalesced")
+            .tag("name", name)
+            .register(meterRegistry);
+    }
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> loader) {
+        return Mono.defer(() -> {
+            Mono<V> existing = inFlight.get(key);
+            if (existing != null) {
+                coalesced.increment();
+                return existing;
+            }
+
+            AtomicReference<Mono<V>> self = new AtomicReference<>();
+            Mono<V> shared = Mono.defer(loader)
+                .doFinally(signal -> inFlight.remove(key, self.get()))
+                .cache();
+            self.set(shared);
+
+            existing = inFlight.putIfAbsent(key, shared);
+            if (existing != null) {
+                coalesced.increment();
+                return existing;
+            }
+            executions.increment();
+            return shared;
+        });
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
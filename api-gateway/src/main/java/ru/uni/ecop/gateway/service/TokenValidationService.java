@@ -0,0 +1,153 @@
+package ru.uni.ecop.gateway.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.config.JwtProperties;
+import ru.uni.ecop.gateway.dto.AuthenticatedUser;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+@Service
+@Slf4j
+public class TokenValidationService {
+
+    private final JwtProperties jwtProperties;
+    private final JwtParser jwtParser;
+    private final WebClient webClient;
+    private final ValidatedTokenCache tokenCache;
+    private final RequestCoalescer<String, AuthenticatedUser> validations;
+
+    public TokenValidationService(JwtProperties jwtProperties,
+                                  JwtKeyProvider keyProvider,
+                                  ValidatedTokenCache tokenCache,
+                                  WebClient.Builder webClientBuilder,
+                                  MeterRegistry meterRegistry) {
+        this.jwtProperties = jwtProperties;
+        this.tokenCache = tokenCache;
+        this.validations = new RequestCoalescer<>("token-validation", meterRegistry);
+        this.jwtParser = Jwts.parserBuilder()
+            .setSigningKeyResolver(keyProvider)
+            .setAllowedClockSkewSeconds(jwtProperties.getValidation().getClockSkew().getSeconds())
+            .build();
+        this.webClient = webClientBuilder.build();
+    }
+
+    /**
+     * Validate a bearer token, locally by default or against core-service in remote mode
+     */
+    public Mono<AuthenticatedUser> validate(String token) {
+        if (!tokenCache.isEnabled()) {
+            return validateUncached(token);
+        }
+
+        return Mono.defer(() -> {
+            String key = tokenCache.keyFor(token);
+            Mono<AuthenticatedUser> cached = tokenCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            // Concurrent requests carrying the same token share one validation
+            return validations.execute(key, () -> validateUncached(token)
+                .doOnNext(user -> tokenCache.putValid(key, user))
+                .doOnError(e -> {
+                    if (isRejection(e)) {
+                        tokenCache.putRejected(key, e.getMessage());
+                    }
+                }));
+        });
+    }
+
+    private Mono<AuthenticatedUser> validateUncached(String token) {
+        JwtProperties.Validation validation = jwtProperties.getValidation();
+        if (validation.getMode() == JwtProperties.ValidationMode.REMOTE) {
+            return validateRemotely(token);
+        }
+
+        return Mono.fromCallable(() -> validateLocally(token))
+            .onErrorResume(JwtKeyProvider.UnknownSigningKeyException.class, e -> {
+                if (!validation.isRemoteFallback()) {
+                    return Mono.error(e);
+                }
+                log.debug("Falling back to remote token validation: {}", e.getMessage());
+                return validateRemotely(token);
+            });
+    }
+
+    AuthenticatedUser validateLocally(String token) {
+        Claims claims = jwtParser.parseClaimsJws(token).getBody();
+
+        Object userId = claims.get("userId");
+        if (userId == null && claims.getSubject() == null) {
+            throw new JwtException("Token names no user");
+        }
+        List<String> roles = new ArrayList<>();
+        if (claims.get("roles") instanceof Collection<?> values) {
+            values.forEach(role -> roles.add(String.valueOf(role)));
+        }
+        Instant expiresAt = claims.getExpiration() != null ? claims.getExpiration().toInstant() : null;
+
+        return new AuthenticatedUser(
+            userId != null ? String.valueOf(userId) : claims.getSubject(),
+            roles,
+            expiresAt,
+            claims.get("tier") != null ? String.valueOf(claims.get("tier")) : null
+        );
+    }
+
+    /**
+     * Only definite verdicts are negatively cached, not outages or keys that may appear after a JWKS refresh
+     */
+    private static boolean isRejection(Throwable e) {
+        if (e instanceof JwtKeyProvider.UnknownSigningKeyException) {
+            return false;
+        }
+        if (e instanceof WebClientResponseException responseException) {
+            return responseException.getStatusCode().is4xxClientError();
+        }
+        return e instanceof JwtException;
+    }
+
+    private Mono<AuthenticatedUser> validateRemotely(String token) {
+        return webClient.get()
+            .uri(jwtProperties.getValidation().getRemoteUri())
+            .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+            .retrieve()
+            .bodyToMono(JsonNode.class)
+            .map(this::toAuthenticatedUser)
+            // A 2xx without a user is not a login, the id is the identity header and the rate limit key
+            .switchIfEmpty(Mono.error(() -> new JwtException("Remote validation returned no user")));
+    }
+
+    private AuthenticatedUser toAuthenticatedUser(JsonNode body) {
+        String userId = null;
+        for (String field : List.of("userId", "id", "sub")) {
+            if (body.hasNonNull(field)) {
+                userId = body.get(field).asText();
+                break;
+            }
+        }
+        if (userId == null) {
+            throw new JwtException("Remote validation returned no user id");
+        }
+
+        List<String> roles = new ArrayList<>();
+        body.path("roles").forEach(role -> roles.add(role.asText()));
+        Instant expiresAt = body.hasNonNull("exp") ? Instant.ofEpochSecond(body.get("exp").asLong()) : null;
+        String tier = body.hasNonNull("tier") ? body.get("tier").asText() : null;
+
+        return new AuthenticatedUser(userId, roles, expiresAt, tier);
+    }
+}
@@ -0,0 +1,101 @@
+package ru.uni.ecop.gateway.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.config.JwtProperties;
+import ru.uni.ecop.gateway.dto.AuthenticatedUser;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Bounded cache of token validation outcomes keyed by a SHA-256 hash of the token.
+ * Accepted tokens are kept until their exp claim (capped by max-ttl), rejected ones
+ * for a short negative TTL so repeated bad credentials don't reach core-service.
+ */
+@Component
+public class ValidatedTokenCache {
+
+    private final JwtProperties.Cache properties;
+    private final Cache<String, CachedValidation> cache;
+
+    public ValidatedTokenCache(JwtProperties jwtProperties, MeterRegistry meterRegistry) {
+        this.properties = jwtProperties.getValidation().getCache();
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(properties.getMaximumSize())
+            .expireAfter(new Expiry<String, CachedValidation>() {
+                @Override
+                public long expireAfterCreate(String key, CachedValidation value, long currentTime) {
+                    return value.ttlNanos();
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, CachedValidation value, long currentTime, long currentDuration) {
+                    return value.ttlNanos();
+                }
+
+                @Override
+                public long expireAfterRead(String key, CachedValidation value, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "auth.token");
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    public String keyFor(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Cached outcome as a Mono, or null when the token has not been seen recently
+     */
+    public Mono<AuthenticatedUser> get(String key) {
+        CachedValidation cached = cache.getIfPresent(key);
+        if (cached == null) {
+            return null;
+        }
+        return cached.user() != null ? Mono.just(cached.user()) : Mono.error(new JwtException(cached.error()));
+    }
+
+    public void putValid(String key, AuthenticatedUser user) {
+        Duration ttl = properties.getMaxTtl();
+        Instant expiresAt = user.getExpiresAt();
+        if (expiresAt != null) {
+            Duration untilExpiry = Duration.between(Instant.now(), expiresAt);
+            if (untilExpiry.compareTo(ttl) < 0) {
+                ttl = untilExpiry;
+            }
+        }
+        if (!ttl.isNegative() && !ttl.isZero()) {
+            cache.put(key, new CachedValidation(user, null, ttl.toNanos()));
+        }
+    }
+
+    public void putRejected(String key, String error) {
+        cache.put(key, new CachedValidation(null, error, properties.getNegativeTtl().toNanos()));
+    }
+
+    private record CachedValidation(AuthenticatedUser user, String error, long ttlNanos) {
+    }
+}
@@ -0,0 +1,56 @@
+package ru.uni.ecop.gateway.streaming;
+
+import io.micrometer.core.instrument.Counter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sits first in the pipeline of a client connection while it carries a stream: counts the
+ * bytes read and written and closes the connection once neither happened for the idle
+ * timeout. Closing the client side ends the proxied session or response, which releases
+ * the upstream connection as well. One timer per connection, no buffering.
+ */
+final class IdleConnectionHandler extends IdleStateHandler {
+
+    private final Counter bytesIn;
+    private final Counter bytesOut;
+    private final Runnable onReaped;
+
+    IdleConnectionHandler(long idleTimeoutNanos, Counter bytesIn, Counter bytesOut, Runnable onReaped) {
+        super(0, 0, idleTimeoutNanos, TimeUnit.NANOSECONDS);
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.onReaped = onReaped;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        bytesIn.increment(sizeOf(msg));
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        bytesOut.increment(sizeOf(msg));
+        super.write(ctx, msg, promise);
+    }
+
+    @Override
+    protected void channelIdle(ChannelHandlerContext ctx, IdleStateEvent evt) {
+        onReaped.run();
+        ctx.close();
+    }
+
+    private static int sizeOf(Object msg) {
+        if (msg instanceof ByteBuf buf) {
+            return buf.readableBytes();
+        }
+        return msg instanceof ByteBufHolder holder ? holder.content().readableBytes() : 0;
+    }
+}
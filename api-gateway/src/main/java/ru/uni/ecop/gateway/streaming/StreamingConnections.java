@@ -0,0 +1,130 @@
+package ru.uni.ecop.gateway.streaming;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelPipeline;
+import org.springframework.stereotype.Component;
+import ru.uni.ecop.gateway.config.StreamingProperties;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Open WebSocket sessions and event streams per route, with their meters created on first
+ * use: gateway.streaming.connections (open now), gateway.streaming.opened,
+ * gateway.streaming.reaped (closed for being idle) and gateway.streaming.bytes by direction,
+ * all tagged with the route and the stream type. Byte counts and idle reaping need the
+ * Netty channel of the client connection; without one a stream is only counted.
+ */
+@Component
+public class StreamingConnections {
+
+    static final String HANDLER_NAME = "gateway.streaming.idle";
+
+    private final long idleTimeoutNanos;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, Streams> streams = new ConcurrentHashMap<>();
+
+    public StreamingConnections(StreamingProperties properties, MeterRegistry meterRegistry) {
+        this.idleTimeoutNanos = properties.getIdleTimeout().toNanos();
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Counts a stream as open until the returned registration is closed, reaping its
+     * connection when it goes idle
+     */
+    public Registration open(String routeId, StreamingRequests.Type type, Channel channel) {
+        Streams route = forRoute(routeId, type);
+        route.active.incrementAndGet();
+        route.opened.increment();
+        IdleConnectionHandler handler = null;
+        if (channel != null && idleTimeoutNanos > 0 && channel.pipeline().get(HANDLER_NAME) == null) {
+            handler = new IdleConnectionHandler(idleTimeoutNanos, route.bytesIn, route.bytesOut, route.reaped::increment);
+            channel.pipeline().addFirst(HANDLER_NAME, handler);
+        }
+        return new Registration(route, channel, handler);
+    }
+
+    public int getActive(String routeId, StreamingRequests.Type type) {
+        return forRoute(routeId, type).active.get();
+    }
+
+    private Streams forRoute(String routeId, StreamingRequests.Type type) {
+        String key = routeId + '/' + type;
+        Streams route = streams.get(key);
+        return route != null ? route : streams.computeIfAbsent(key, ignored -> createStreams(routeId, type));
+    }
+
+    private Streams createStreams(String routeId, StreamingRequests.Type type) {
+        String typeTag = type.name().toLowerCase();
+        AtomicInteger active = new AtomicInteger();
+        Gauge.builder("gateway.streaming.connections", active, AtomicInteger::get)
+            .tag("route", routeId)
+            .tag("type", typeTag)
+            .register(meterRegistry);
+        return new Streams(active,
+            counter("gateway.streaming.opened", routeId, typeTag),
+            counter("gateway.streaming.reaped", routeId, typeTag),
+            bytes(routeId, typeTag, "in"),
+            bytes(routeId, typeTag, "out"));
+    }
+
+    private Counter counter(String name, String routeId, String type) {
+        return Counter.builder(name)
+            .tag("route", routeId)
+            .tag("type", type)
+            .register(meterRegistry);
+    }
+
+    private Counter bytes(String routeId, String type, String direction) {
+        return Counter.builder("gateway.streaming.bytes")
+            .tag("route", routeId)
+            .tag("type", type)
+            .tag("direction", direction)
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    private record Streams(AtomicInteger active, Counter opened, Counter reaped, Counter bytesIn, Counter bytesOut) {
+    }
+
+    /**
+     * An open stream, closing it more than once has no effect
+     */
+    public static final class Registration {
+
+        private final Streams route;
+        private final Channel channel;
+        private final IdleConnectionHandler handler;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Registration(Streams route, Channel channel, IdleConnectionHandler handler) {
+            this.route = route;
+            this.channel = channel;
+            this.handler = handler;
+        }
+
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            route.active.decrementAndGet();
+            if (handler != null) {
+                // A kept-alive connection goes back to ordinary requests without the stream's timer
+                ChannelPipeline pipeline = channel.pipeline();
+                try {
+                    if (pipeline.context(handler) != null) {
+                        pipeline.remove(handler);
+                    }
+                } catch (NoSuchElementException e) {
+                    // Removed along with the closed channel meanwhile
+                }
+            }
+        }
+    }
+}
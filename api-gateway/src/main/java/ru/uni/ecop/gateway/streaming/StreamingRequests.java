@@ -0,0 +1,51 @@
+package ru.uni.ecop.gateway.streaming;
+
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import ru.uni.ecop.gateway.route.RouteTableCompiler;
+
+/**
+ * Tells long-lived requests apart from ordinary calls. A WebSocket session lasts as long as
+ * the filter chain of its upgrade request; a server-sent event stream completes the route
+ * filters with its response headers and is written by the response filter afterwards.
+ */
+public final class StreamingRequests {
+
+    public enum Type {
+        WEBSOCKET, SSE
+    }
+
+    private static final String EVENT_STREAM = MediaType.TEXT_EVENT_STREAM_VALUE;
+
+    private StreamingRequests() {
+    }
+
+    /**
+     * WEBSOCKET for upgrade requests, SSE for requests accepting text/event-stream, null otherwise
+     */
+    public static Type typeOf(ServerHttpRequest request) {
+        if (isWebSocketUpgrade(request)) {
+            return Type.WEBSOCKET;
+        }
+        // A plain look at the header values, a malformed Accept header is not a stream either
+        for (String accept : request.getHeaders().getOrEmpty(HttpHeaders.ACCEPT)) {
+            if (accept.contains(EVENT_STREAM)) {
+                return Type.SSE;
+            }
+        }
+        return null;
+    }
+
+    public static boolean isWebSocketUpgrade(ServerHttpRequest request) {
+        return "websocket".equalsIgnoreCase(request.getHeaders().getUpgrade());
+    }
+
+    /**
+     * Whether the route belongs to a group with streaming enabled
+     */
+    public static boolean isStreamingRoute(Route route) {
+        return route != null && Boolean.TRUE.equals(route.getMetadata().get(RouteTableCompiler.STREAMING_METADATA));
+    }
+}
@@ -0,0 +1,106 @@
+package ru.uni.ecop.gateway.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import ru.uni.ecop.gateway.config.AggregationProperties;
+import ru.uni.ecop.gateway.config.AuthProperties;
+import ru.uni.ecop.gateway.security.IdentityHeaders;
+import ru.uni.ecop.gateway.service.AggregationService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the aggregated profile endpoint versus a client fetching the same four
+ * sections one after another. Every source is a loopback stub answering after a fixed delay.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregationBenchmark {
+
+    private static final String USER_ID = "42";
+    private static final List<String> PROFILE_SOURCES = List.of(
+        "/api/users/42",
+        "/api/projects?userId=42",
+        "/api/events?userId=42",
+        "/api/portfolios?userId=42"
+    );
+
+    @Param({"10", "50"})
+    public int sourceLatencyMillis;
+
+    private DisposableServer servicesStub;
+    private AggregationService aggregationService;
+    private WebClient client;
+
+    @Setup
+    public void setUp() {
+        Duration latency = Duration.ofMillis(sourceLatencyMillis);
+        servicesStub = HttpServer.create()
+            .port(0)
+            .handle((request, response) -> response
+                .header("Content-Type", "application/json")
+                .sendString(Mono.delay(latency).thenReturn("{\"id\":\"42\",\"items\":[1,2,3]}")))
+            .bindNow();
+
+        // Sends every http://<service-id> call to the stub instead of resolving it through Consul
+        WebClient.Builder stubbedServices = WebClient.builder()
+            .filter((request, next) -> next.exchange(ClientRequest.from(request)
+                .url(UriComponentsBuilder.fromUri(request.url())
+                    .host("localhost")
+                    .port(servicesStub.port())
+                    .build(true)
+                    .toUri())
+                .build()));
+
+        AggregationProperties properties = new AggregationProperties();
+        properties.setDefaultTimeout(Duration.ofSeconds(5));
+        aggregationService = new AggregationService(stubbedServices, properties,
+            new IdentityHeaders(new AuthProperties()), new SimpleMeterRegistry());
+        client = WebClient.create("http://localhost:" + servicesStub.port());
+    }
+
+    @TearDown
+    public void tearDown() {
+        servicesStub.disposeNow();
+    }
+
+    @Benchmark
+    public Map<String, Object> gatewayFanOut() {
+        return aggregationService.aggregateUserProfile(USER_ID, null).block();
+    }
+
+    @Benchmark
+    public List<JsonNode> sequentialClientCalls() {
+        List<JsonNode> sections = new ArrayList<>(PROFILE_SOURCES.size());
+        for (String source : PROFILE_SOURCES) {
+            sections.add(client.get().uri(source).retrieve().bodyToMono(JsonNode.class).block());
+        }
+        return sections;
+    }
+}
@@ -0,0 +1,105 @@
+package ru.uni.ecop.gateway.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.RoundRobinLoadBalancer;
+import org.springframework.cloud.loadbalancer.support.ServiceInstanceListSuppliers;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import ru.uni.ecop.gateway.config.LoadBalancingProperties;
+import ru.uni.ecop.gateway.loadbalancer.InstanceLatencyTracker;
+import ru.uni.ecop.gateway.loadbalancer.InstanceStats;
+import ru.uni.ecop.gateway.loadbalancer.LatencyAwareLoadBalancer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Call latency distribution across four local instances of one service, one of which
+ * answers 20 times slower than the others. Sample mode reports the percentiles: with
+ * round robin every fourth call waits for the slow instance, so p99 is its latency, while
+ * the latency aware balancer only sends it the occasional call once its peak has decayed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class LoadBalancingBenchmark {
+
+    private static final String SERVICE_ID = "core-service";
+    private static final Duration FAST = Duration.ofMillis(5);
+    private static final Duration SLOW = Duration.ofMillis(100);
+    private static final Request<?> REQUEST = new DefaultRequest<>();
+
+    @Param({"round-robin", "peak-ewma"})
+    public String strategy;
+
+    private final List<DisposableServer> instances = new ArrayList<>();
+    private InstanceLatencyTracker tracker;
+    private ReactorServiceInstanceLoadBalancer loadBalancer;
+    private WebClient client;
+
+    @Setup
+    public void setUp() {
+        List<ServiceInstance> serviceInstances = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Duration latency = i == 0 ? SLOW : FAST;
+            DisposableServer server = HttpServer.create()
+                .port(0)
+                .handle((request, response) -> response.sendString(Mono.delay(latency).thenReturn("ok")))
+                .bindNow();
+            instances.add(server);
+            serviceInstances.add(new DefaultServiceInstance("instance-" + i, SERVICE_ID, "localhost", server.port(), false));
+        }
+
+        tracker = new InstanceLatencyTracker(new LoadBalancingProperties());
+        ServiceInstance[] all = serviceInstances.toArray(ServiceInstance[]::new);
+        loadBalancer = strategy.equals("round-robin")
+            ? new RoundRobinLoadBalancer(ServiceInstanceListSuppliers.toProvider(SERVICE_ID, all), SERVICE_ID)
+            : new LatencyAwareLoadBalancer(ServiceInstanceListSuppliers.toProvider(SERVICE_ID, all), SERVICE_ID, tracker, 4);
+        client = WebClient.create();
+    }
+
+    @TearDown
+    public void tearDown() {
+        instances.forEach(DisposableServer::disposeNow);
+    }
+
+    @Benchmark
+    public String call() {
+        ServiceInstance instance = loadBalancer.choose(REQUEST).block().getServer();
+        // What UpstreamTimingFilter records for routed calls
+        InstanceStats stats = tracker.forInstance(instance);
+        stats.onStart();
+        long start = System.nanoTime();
+        try {
+            return client.get().uri(instance.getUri()).retrieve().bodyToMono(String.class).block();
+        } finally {
+            long now = System.nanoTime();
+            stats.onComplete(now - start, false, now);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package ru.uni.ecop.gateway.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.config.RateLimitingProperties;
+import ru.uni.ecop.gateway.ratelimit.HybridRateLimiter;
+import ru.uni.ecop.gateway.ratelimit.InMemoryRateLimitSyncStore;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Decisions/sec of the hybrid limiter (local buckets, batched sync) and the pure local mode
+ * versus the per-request RedisRateLimiter. Redis is a stand-in that evaluates the token bucket
+ * script in process after a simulated network round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class RateLimiterBenchmark {
+
+    private static final String ROUTE_ID = "user_profile_route";
+    private static final int KEYS = 1_000;
+    // High enough that every request is allowed, the cost of the decision is what is measured
+    private static final int REPLENISH_RATE = 1_000_000;
+    private static final int BURST_CAPACITY = 2_000_000;
+
+    @Param({"0", "250"})
+    public int redisRoundTripMicros;
+
+    private HybridRateLimiter hybridLimiter;
+    private HybridRateLimiter localLimiter;
+    private RedisRateLimiter redisLimiter;
+
+    @Setup
+    public void setUp() {
+        hybridLimiter = createHybridLimiter(RateLimitingProperties.Mode.HYBRID);
+        hybridLimiter.startSync();
+        localLimiter = createHybridLimiter(RateLimitingProperties.Mode.LOCAL);
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        RedisScript<List<Long>> script = (RedisScript) RedisScript.of("request_rate_limiter", List.class);
+        redisLimiter = new RedisRateLimiter(new StandInRedisTemplate(Duration.ofNanos(redisRoundTripMicros * 1_000L)), script, null);
+        redisLimiter.getConfig().put(ROUTE_ID, new RedisRateLimiter.Config()
+            .setReplenishRate(REPLENISH_RATE)
+            .setBurstCapacity(BURST_CAPACITY)
+            .setRequestedTokens(1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        hybridLimiter.stopSync();
+    }
+
+    @Benchmark
+    public RateLimiter.Response hybrid() {
+        return hybridLimiter.isAllowed(ROUTE_ID, randomKey()).block();
+    }
+
+    @Benchmark
+    public RateLimiter.Response local() {
+        return localLimiter.isAllowed(ROUTE_ID, randomKey()).block();
+    }
+
+    @Benchmark
+    public RateLimiter.Response redis() {
+        return redisLimiter.isAllowed(ROUTE_ID, randomKey()).block();
+    }
+
+    private static String randomKey() {
+        return "user-" + ThreadLocalRandom.current().nextInt(KEYS);
+    }
+
+    private static HybridRateLimiter createHybridLimiter(RateLimitingProperties.Mode mode) {
+        RateLimitingProperties properties = new RateLimitingProperties();
+        properties.setMode(mode);
+        properties.setReplenishRate(REPLENISH_RATE);
+        properties.setBurstCapacity(BURST_CAPACITY);
+        return new HybridRateLimiter(properties, new InMemoryRateLimitSyncStore(), null, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Answers the request_rate_limiter script the way Redis would, keys are [tokens, timestamp]
+     * and args are [rate, capacity, now, requested]
+     */
+    private static class StandInRedisTemplate extends ReactiveStringRedisTemplate {
+
+        private final Duration roundTrip;
+        private final ConcurrentHashMap<String, double[]> buckets = new ConcurrentHashMap<>();
+
+        StandInRedisTemplate(Duration roundTrip) {
+            super(mock(ReactiveRedisConnectionFactory.class));
+            this.roundTrip = roundTrip;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> Flux<T> execute(RedisScript<T> script, List<String> keys, List<?> args) {
+            double rate = Double.parseDouble(args.get(0).toString());
+            double capacity = Double.parseDouble(args.get(1).toString());
+            long requested = Long.parseLong(args.get(3).toString());
+            Mono<List<Long>> result = Mono.fromSupplier(() -> evaluate(keys.get(0), rate, capacity, requested));
+            if (!roundTrip.isZero()) {
+                result = Mono.delay(roundTrip).then(result);
+            }
+            return (Flux<T>) result.flux();
+        }
+
+        private List<Long> evaluate(String key, double rate, double capacity, long requested) {
+            double now = System.nanoTime() / 1e9;
+            double[] bucket = buckets.computeIfAbsent(key, k -> new double[]{capacity, now});
+            synchronized (bucket) {
+                double tokens = Math.min(capacity, bucket[0] + Math.max(0, now - bucket[1]) * rate);
+                boolean allowed = tokens >= requested;
+                bucket[0] = allowed ? tokens - requested : tokens;
+                bucket[1] = now;
+                return List.of(allowed ? 1L : 0L, (long) bucket[0]);
+            }
+        }
+    }
+}
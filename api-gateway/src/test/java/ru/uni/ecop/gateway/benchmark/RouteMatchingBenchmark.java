@@ -0,0 +1,90 @@
+package ru.uni.ecop.gateway.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import ru.uni.ecop.gateway.route.PathTrie;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Route lookup per request path: the predicate scan of RoutePredicateHandlerMapping, which
+ * tries each route's path pattern in order, versus the path trie. Half of the routes are
+ * /api/serviceN/items/{id}, the other half /api/serviceN/**, and requests hit routes
+ * uniformly, so the scan visits half of the table on average.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteMatchingBenchmark {
+
+    private static final int PATHS = 1024;
+
+    @Param({"20", "200", "2000"})
+    public int routes;
+
+    private List<PathPattern> patterns;
+    private PathTrie<Integer> trie;
+    private String[] paths;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        patterns = new ArrayList<>(routes);
+        PathTrie.Builder<Integer> builder = PathTrie.builder();
+        for (int i = 0; i < routes; i++) {
+            String pattern = i % 2 == 0 ? "/api/service" + i / 2 + "/items/{id}" : "/api/service" + i / 2 + "/**";
+            patterns.add(PathPatternParser.defaultInstance.parse(pattern));
+            builder.add(pattern, i);
+        }
+        trie = builder.build();
+
+        Random random = new Random(42);
+        paths = new String[PATHS];
+        for (int i = 0; i < PATHS; i++) {
+            int route = random.nextInt(routes);
+            paths[i] = route % 2 == 0
+                ? "/api/service" + route / 2 + "/items/" + random.nextInt(100_000)
+                : "/api/service" + route / 2 + "/reports/2024/summary";
+        }
+    }
+
+    @Benchmark
+    public int predicateScan() {
+        PathContainer path = PathContainer.parsePath(nextPath());
+        for (int i = 0; i < patterns.size(); i++) {
+            PathPattern.PathMatchInfo info = patterns.get(i).matchAndExtract(path);
+            if (info != null) {
+                return i + info.getUriVariables().size();
+            }
+        }
+        return -1;
+    }
+
+    @Benchmark
+    public int pathTrie() {
+        PathTrie.Match<Integer> match = trie.match(nextPath());
+        return match != null ? match.value() + match.variables().size() : -1;
+    }
+
+    private String nextPath() {
+        return paths[next++ & (PATHS - 1)];
+    }
+}
@@ -0,0 +1,105 @@
+package ru.uni.ecop.gateway.benchmark;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import ru.uni.ecop.gateway.config.JwtProperties;
+import ru.uni.ecop.gateway.dto.AuthenticatedUser;
+import ru.uni.ecop.gateway.service.JwtKeyProvider;
+import ru.uni.ecop.gateway.service.TokenValidationService;
+import ru.uni.ecop.gateway.service.ValidatedTokenCache;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests/sec of local JWT verification versus the remote call to a core-service stub
+ * listening on loopback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class TokenValidationBenchmark {
+
+    private static final String SECRET = "benchmark-secret-key-that-is-long-enough-for-hs256";
+
+    private DisposableServer coreServiceStub;
+    private TokenValidationService localValidation;
+    private TokenValidationService remoteValidation;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        coreServiceStub = HttpServer.create()
+            .port(0)
+            .route(routes -> routes.get("/api/auth/validate", (request, response) -> response
+                .header("Content-Type", "application/json")
+                .sendString(Mono.just("{\"userId\":\"42\",\"roles\":[\"STUDENT\"]}"))))
+            .bindNow();
+
+        localValidation = createService(JwtProperties.ValidationMode.LOCAL);
+        remoteValidation = createService(JwtProperties.ValidationMode.REMOTE);
+
+        token = Jwts.builder()
+            .setSubject("42")
+            .claim("roles", List.of("STUDENT"))
+            .setExpiration(Date.from(Instant.now().plusSeconds(3600)))
+            .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+            .compact();
+    }
+
+    @TearDown
+    public void tearDown() {
+        coreServiceStub.disposeNow();
+    }
+
+    @Benchmark
+    public AuthenticatedUser localVerification() {
+        return localValidation.validate(token).block();
+    }
+
+    @Benchmark
+    public AuthenticatedUser remoteValidation() {
+        return remoteValidation.validate(token).block();
+    }
+
+    private TokenValidationService createService(JwtProperties.ValidationMode mode) {
+        JwtProperties properties = new JwtProperties();
+        properties.setSecret(SECRET);
+        properties.getValidation().setMode(mode);
+        properties.getValidation().setRemoteUri("http://localhost:" + coreServiceStub.port() + "/api/auth/validate");
+        // Measure the verification itself, not the validated-token cache in front of it
+        properties.getValidation().getCache().setEnabled(false);
+
+        WebClient.Builder webClientBuilder = WebClient.builder();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new TokenValidationService(properties,
+            new JwtKeyProvider(properties),
+            new ValidatedTokenCache(properties, meterRegistry),
+            webClientBuilder,
+            meterRegistry);
+    }
+}
@@ -0,0 +1,112 @@
+package ru.uni.ecop.gateway.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachePolicyTest {
+
+    private static final Duration TTL = Duration.ofMinutes(5);
+
+    private final CachePolicy policy = new CachePolicy(TTL, Duration.ofMinutes(10), Duration.ofMinutes(1),
+        Duration.ofMinutes(30), false);
+
+    @Test
+    void storesSuccessfulResponseWithComputedETag() {
+        long before = System.currentTimeMillis();
+        CachedResponse entry = policy.createEntry(HttpStatus.OK, new HttpHeaders(), body("hello"));
+
+        assertNotNull(entry);
+        assertNotNull(entry.getHeaders().getETag());
+        assertEquals(5, entry.getHeaders().getContentLength());
+        assertTrue(entry.getExpiryTime() >= before + TTL.toMillis());
+        assertEquals(entry.getExpiryTime() + Duration.ofMinutes(30).toMillis(), entry.getRetainUntil(),
+            "kept for the longest of the revalidation and stale windows");
+    }
+
+    @Test
+    void refusesWhatUpstreamForbidsToStore() {
+        assertNull(policy.createEntry(HttpStatus.NOT_FOUND, new HttpHeaders(), body("missing")));
+        assertNull(policy.createEntry(HttpStatus.OK, headers(HttpHeaders.CACHE_CONTROL, "no-store"), body("x")));
+        assertNull(policy.createEntry(HttpStatus.OK, headers(HttpHeaders.CACHE_CONTROL, "private, max-age=60"), body("x")));
+        assertNull(policy.createEntry(HttpStatus.OK, headers(HttpHeaders.VARY, "*"), body("x")));
+    }
+
+    @Test
+    void storesPrivateResponsesOnlyWhenKeyedPerUser() {
+        CachePolicy perUser = new CachePolicy(TTL, Duration.ZERO, Duration.ZERO, Duration.ZERO, true);
+
+        assertNotNull(perUser.createEntry(HttpStatus.OK, headers(HttpHeaders.CACHE_CONTROL, "private"), body("x")));
+    }
+
+    @Test
+    void neverStoresResponsesSettingCookies() {
+        HttpHeaders headers = headers(HttpHeaders.CACHE_CONTROL, "max-age=60");
+        headers.add(HttpHeaders.SET_COOKIE, "SESSION=abc; HttpOnly");
+
+        assertNull(policy.createEntry(HttpStatus.OK, headers, body("x")));
+    }
+
+    @Test
+    void stripsHopByHopHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONNECTION, "keep-alive, X-Upstream-Hop");
+        headers.add("Keep-Alive", "timeout=5");
+        headers.add(HttpHeaders.TRANSFER_ENCODING, "chunked");
+        headers.add(HttpHeaders.UPGRADE, "h2c");
+        headers.add("X-Upstream-Hop", "1");
+        headers.add(HttpHeaders.CONTENT_TYPE, "application/json");
+
+        HttpHeaders stored = policy.createEntry(HttpStatus.OK, headers, body("{}")).getHeaders();
+
+        assertFalse(stored.containsKey(HttpHeaders.CONNECTION));
+        assertFalse(stored.containsKey("Keep-Alive"));
+        assertFalse(stored.containsKey(HttpHeaders.TRANSFER_ENCODING));
+        assertFalse(stored.containsKey(HttpHeaders.UPGRADE));
+        assertFalse(stored.containsKey("X-Upstream-Hop"));
+        assertEquals("application/json", stored.getFirst(HttpHeaders.CONTENT_TYPE));
+    }
+
+    @Test
+    void freshnessFollowsUpstreamDirectives() {
+        assertEquals(Duration.ofSeconds(60), CacheDirectives.from(headers(HttpHeaders.CACHE_CONTROL, "max-age=60")).freshness(TTL));
+        assertEquals(Duration.ofSeconds(10),
+            CacheDirectives.from(headers(HttpHeaders.CACHE_CONTROL, "max-age=60, s-maxage=10")).freshness(TTL));
+        assertEquals(Duration.ZERO, CacheDirectives.from(headers(HttpHeaders.CACHE_CONTROL, "no-cache")).freshness(TTL));
+        assertEquals(TTL, CacheDirectives.from(new HttpHeaders()).freshness(TTL));
+    }
+
+    @Test
+    void keepsOwnETagAndRevalidatesOnlyValidatorHeaders() {
+        HttpHeaders headers = headers(HttpHeaders.ETAG, "\"v1\"");
+        headers.add("X-Request-Id", "first");
+        CachedResponse entry = policy.createEntry(HttpStatus.OK, headers, body("x"));
+
+        HttpHeaders notModified = headers(HttpHeaders.ETAG, "\"v2\"");
+        notModified.add("X-Request-Id", "second");
+        CachedResponse revalidated = entry.revalidated(notModified, entry.getExpiryTime() + 1000, entry.getRetainUntil());
+
+        assertEquals("\"v2\"", revalidated.getHeaders().getETag());
+        assertEquals("first", revalidated.getHeaders().getFirst("X-Request-Id"));
+    }
+
+    private static HttpHeaders headers(String name, String value) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(name, value);
+        return headers;
+    }
+
+    private static ByteBuffer body(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
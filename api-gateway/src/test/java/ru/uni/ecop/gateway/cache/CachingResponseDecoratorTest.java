@@ -0,0 +1,105 @@
+package ru.uni.ecop.gateway.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingResponseDecoratorTest {
+
+    private static final CachePolicy POLICY = new CachePolicy(Duration.ofMinutes(1), Duration.ofMinutes(5),
+        Duration.ZERO, Duration.ofMinutes(30), false);
+
+    private final MockServerHttpResponse response = new MockServerHttpResponse();
+    private final AtomicReference<CachedResponse> replayed = new AtomicReference<>();
+
+    @Test
+    void passesBodyThroughAndCapturesIt() {
+        CachingResponseDecorator decorator = decorator(1024, null);
+        decorator.setStatusCode(HttpStatus.OK);
+
+        decorator.writeWith(Flux.just(buffer("hello "), buffer("world"))).block();
+
+        assertEquals("hello world", response.getBodyAsString().block());
+        assertEquals("hello world", text(decorator.toCachedResponse().getBody()));
+    }
+
+    @Test
+    void doesNotCaptureOversizedOrFailedResponses() {
+        CachingResponseDecorator oversized = decorator(4, null);
+        oversized.setStatusCode(HttpStatus.OK);
+        oversized.writeWith(Flux.just(buffer("hello"))).block();
+        assertNull(oversized.toCachedResponse());
+
+        CachingResponseDecorator failed = new CachingResponseDecorator(new MockServerHttpResponse(), 1024, POLICY, null,
+            entry -> Mono.empty());
+        failed.setStatusCode(HttpStatus.BAD_GATEWAY);
+        failed.writeWith(Flux.just(buffer("oops"))).block();
+        assertNull(failed.toCachedResponse());
+    }
+
+    @Test
+    void replaysRefreshedEntryOnNotModified() {
+        CachedResponse stale = staleEntry();
+        CachingResponseDecorator decorator = decorator(1024, stale);
+        decorator.setStatusCode(HttpStatus.NOT_MODIFIED);
+        decorator.getHeaders().setETag("\"v1\"");
+
+        decorator.setComplete().block();
+
+        CachedResponse refreshed = decorator.toCachedResponse();
+        assertSame(refreshed, replayed.get());
+        assertEquals("cached", text(refreshed.getBody()));
+        assertTrue(refreshed.getExpiryTime() > stale.getExpiryTime());
+    }
+
+    @Test
+    void servesStaleEntryOnUpstreamError() {
+        CachedResponse stale = staleEntry();
+        CachingResponseDecorator decorator = decorator(1024, stale);
+        decorator.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+
+        decorator.writeWith(Flux.just(buffer("unavailable"))).block();
+
+        assertSame(stale, replayed.get());
+        assertTrue(decorator.isServedStale());
+        assertNull(decorator.toCachedResponse());
+    }
+
+    private CachingResponseDecorator decorator(int maxEntrySize, CachedResponse stale) {
+        return new CachingResponseDecorator(response, maxEntrySize, POLICY, stale, entry -> {
+            replayed.set(entry);
+            return Mono.empty();
+        });
+    }
+
+    private static CachedResponse staleEntry() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag("\"v1\"");
+        long expired = System.currentTimeMillis() - 1000;
+        return new CachedResponse(HttpStatus.OK, headers, ByteBuffer.wrap("cached".getBytes(StandardCharsets.UTF_8)),
+            expired, POLICY.retainUntil(expired));
+    }
+
+    private static DataBuffer buffer(String text) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String text(ByteBuffer body) {
+        return StandardCharsets.UTF_8.decode(body.duplicate()).toString();
+    }
+}
@@ -0,0 +1,58 @@
+package ru.uni.ecop.gateway.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.config.ConcurrencyLimitProperties;
+import ru.uni.ecop.gateway.resilience.ConcurrencyLimiters;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimitFilterTest {
+
+    private final ConcurrencyLimitProperties properties = new ConcurrencyLimitProperties();
+    private final ConcurrencyLimiters limiters = new ConcurrencyLimiters(properties, new SimpleMeterRegistry());
+
+    @Test
+    void breakerRejectionsLeaveTheLimitAlone() {
+        GatewayFilterChain rejectedByBreaker = exchange -> {
+            exchange.getAttributes().put(CircuitBreakerFilter.REJECTED_ATTR, true);
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            return Mono.empty();
+        };
+
+        callRepeatedly(rejectedByBreaker);
+
+        assertEquals(properties.getInitialLimit(), limiters.forUpstream("core-service").getLimit());
+    }
+
+    @Test
+    void upstreamFailuresLowerTheLimit() {
+        GatewayFilterChain failingUpstream = exchange -> {
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            return Mono.empty();
+        };
+
+        callRepeatedly(failingUpstream);
+
+        assertTrue(limiters.forUpstream("core-service").getLimit() < properties.getInitialLimit());
+    }
+
+    private void callRepeatedly(GatewayFilterChain chain) {
+        ConcurrencyLimitFilter.Config config = new ConcurrencyLimitFilter.Config();
+        config.setName("core-service");
+        GatewayFilter filter = new ConcurrencyLimitFilter(limiters).apply(config);
+        for (int i = 0; i < 50; i++) {
+            MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/users/42"));
+            filter.filter(exchange, chain).block(Duration.ofSeconds(1));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package ru.uni.ecop.gateway.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.config.HedgingProperties;
+import ru.uni.ecop.gateway.loadbalancer.LatencyAwareLoadBalancer;
+import ru.uni.ecop.gateway.resilience.HedgeBudget;
+import ru.uni.ecop.gateway.resilience.Hedging;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class HedgingFilterTest {
+
+    private static final ServiceInstance SLOW_INSTANCE =
+        new DefaultServiceInstance("core-1", "core-service", "10.0.0.1", 8080, false);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final HedgingProperties properties = new HedgingProperties();
+
+    @Test
+    void hedgeToAnotherInstanceWinsAndPrimaryIsCancelled() {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+        List<Object> avoided = Collections.synchronizedList(new ArrayList<>());
+        GatewayFilterChain upstream = exchange -> {
+            if (calls.incrementAndGet() == 1) {
+                exchange.getAttributes().put(GATEWAY_LOADBALANCER_RESPONSE_ATTR, new DefaultResponse(SLOW_INSTANCE));
+                return Mono.delay(Duration.ofSeconds(5))
+                    .doOnCancel(() -> primaryCancelled.set(true))
+                    .then(Mono.fromRunnable(() -> exchange.getResponse().setStatusCode(HttpStatus.OK)));
+            }
+            avoided.add(exchange.getAttribute(LatencyAwareLoadBalancer.AVOID_INSTANCE_ATTR));
+            return Mono.delay(Duration.ofMillis(5)).then(Mono.fromRunnable(() -> {
+                exchange.getResponse().setStatusCode(HttpStatus.ACCEPTED);
+                exchange.getResponse().getHeaders().set("X-Instance", "core-2");
+            }));
+        };
+
+        MockServerWebExchange exchange = get();
+        filter(Duration.ofMillis(20)).filter(exchange, upstream).block(Duration.ofSeconds(2));
+
+        assertEquals(2, calls.get());
+        assertEquals(List.of(SLOW_INSTANCE), avoided, "the hedge stays away from the slow instance");
+        assertTrue(primaryCancelled.get(), "the losing call is cancelled");
+        assertEquals(HttpStatus.ACCEPTED, exchange.getResponse().getStatusCode());
+        assertEquals("core-2", exchange.getResponse().getHeaders().getFirst("X-Instance"));
+        assertEquals(1, hedges("won"));
+    }
+
+    @Test
+    void fastResponseIsNotHedged() {
+        AtomicInteger calls = new AtomicInteger();
+        GatewayFilterChain upstream = exchange -> {
+            calls.incrementAndGet();
+            return Mono.fromRunnable(() -> exchange.getResponse().setStatusCode(HttpStatus.OK));
+        };
+
+        MockServerWebExchange exchange = get();
+        filter(Duration.ofMillis(50)).filter(exchange, upstream).block(Duration.ofSeconds(2));
+
+        assertEquals(1, calls.get());
+        assertEquals(HttpStatus.OK, exchange.getResponse().getStatusCode());
+    }
+
+    @Test
+    void exhaustedBudgetStopsHedging() {
+        properties.getBudget().setRatio(0);
+        properties.getBudget().setMinPerSecond(0);
+        properties.getBudget().setMaxBalance(1);
+        AtomicInteger calls = new AtomicInteger();
+        GatewayFilterChain slowUpstream = exchange -> {
+            calls.incrementAndGet();
+            return Mono.delay(Duration.ofMillis(50)).then();
+        };
+
+        GatewayFilter filter = filter(Duration.ofMillis(5));
+        filter.filter(get(), slowUpstream).block(Duration.ofSeconds(2));
+        filter.filter(get(), slowUpstream).block(Duration.ofSeconds(2));
+
+        assertEquals(3, calls.get(), "only the first request is hedged");
+        assertEquals(1, meterRegistry.get("gateway.hedge.budget.exhausted").counter().count());
+    }
+
+    @Test
+    void budgetCapsHedgesToRatioOfRequests() {
+        HedgeBudget budget = new HedgeBudget(properties.getBudget(), 0);
+        int hedges = 0;
+        for (int i = 0; i < 10_000; i++) {
+            budget.onRequest(0);
+            if (budget.tryWithdraw(0)) {
+                hedges++;
+            }
+        }
+        // 10% of the requests plus what was saved up at the start
+        assertEquals(1_000 + 20, hedges, 1);
+    }
+
+    private GatewayFilter filter(Duration delay) {
+        HedgingFilter.Config config = new HedgingFilter.Config();
+        config.setDelay(delay);
+        return new HedgingFilter(new Hedging(properties, meterRegistry)).apply(config);
+    }
+
+    private double hedges(String outcome) {
+        return meterRegistry.get("gateway.hedge.requests").tag("outcome", outcome).counter().count();
+    }
+
+    private static MockServerWebExchange get() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/search/projects"));
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.async()
+            .id("search_route")
+            .uri("lb://core-service")
+            .predicate(e -> true)
+            .build());
+        return exchange;
+    }
+}
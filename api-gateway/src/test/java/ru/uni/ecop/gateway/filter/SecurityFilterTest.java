@@ -0,0 +1,69 @@
+package ru.uni.ecop.gateway.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import ru.uni.ecop.gateway.security.RequestInspector;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SecurityFilterTest {
+
+    // Reads the whole body the way the routing filter streams it upstream
+    private static final GatewayFilterChain UPSTREAM = exchange -> DataBufferUtils.join(exchange.getRequest().getBody())
+        .doOnNext(DataBufferUtils::release)
+        .then();
+
+    private final GatewayFilter bodyOnly = bodyOnlyFilter();
+
+    @Test
+    void passesOrdinaryChatAndProjectPayloads() {
+        assertNull(send("/api/chats/7/messages", "{\"text\":\"don't forget; I'll update the project\"}"));
+        assertNull(send("/api/projects/3",
+            "{\"name\":\"O'Brien's thesis\",\"description\":\"Create the schema, then alter and rename; order by deadline\"}"));
+    }
+
+    @Test
+    void leavesQueryAndHeadersOfBodyInspectedRoutesAlone() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/projects")
+            .queryParam("q", "o'brien")
+            .header("X-Comment", "update; delete")
+            .build());
+
+        bodyOnly.filter(exchange, UPSTREAM).block(Duration.ofSeconds(1));
+
+        assertNull(exchange.getResponse().getStatusCode());
+    }
+
+    @Test
+    void rejectsInjectionShapesInBodies() {
+        assertEquals(HttpStatus.FORBIDDEN, send("/api/chats/7/messages", "{\"text\":\"<script>alert(1)</script>\"}"));
+        assertEquals(HttpStatus.FORBIDDEN, send("/api/projects/3", "{\"name\":\"x' OR '1'='1\"}"));
+    }
+
+    private HttpStatusCode send(String path, String body) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post(path)
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(body));
+        bodyOnly.filter(exchange, UPSTREAM).block(Duration.ofSeconds(1));
+        return exchange.getResponse().getStatusCode();
+    }
+
+    // Same configuration RouteTableCompiler gives groups with inspect-body
+    private static GatewayFilter bodyOnlyFilter() {
+        SecurityFilter.Config config = new SecurityFilter.Config();
+        config.setInspectParameters(false);
+        config.setInspectBody(true);
+        return new SecurityFilter(new RequestInspector(new SimpleMeterRegistry())).apply(config);
+    }
+}
@@ -0,0 +1,61 @@
+package ru.uni.ecop.gateway.filter;
+
+import io.netty.channel.ChannelOption;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.WebsocketRoutingFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.netty.http.client.HttpClient;
+import ru.uni.ecop.gateway.config.UpstreamPoolProperties;
+import ru.uni.ecop.gateway.route.UpstreamHttpClients;
+
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@SuppressWarnings("unchecked")
+class UpstreamRoutingFilterTest {
+
+    private final UpstreamHttpClients upstreamClients = upstreamClients();
+    private final UpstreamRoutingFilter filter = new UpstreamRoutingFilter(HttpClient.create(),
+        mock(ObjectProvider.class), new HttpClientProperties(), upstreamClients);
+
+    @AfterEach
+    void tearDown() {
+        upstreamClients.destroy();
+    }
+
+    @Test
+    void runsAfterWebsocketRoutingFilter() {
+        // Lower order runs first: upgrades have to be switched to ws:// before the HTTP routing filter sees them
+        assertTrue(filter.getOrder() > WebsocketRoutingFilter.ORDER);
+    }
+
+    @Test
+    void appliesRouteConnectTimeoutToPooledClient() {
+        Route route = Route.async()
+            .id("user_route")
+            .uri(URI.create("lb://core-service"))
+            .predicate(exchange -> true)
+            .metadata(RouteMetadataUtils.CONNECT_TIMEOUT_ATTR, 250)
+            .build();
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/users/42"));
+
+        HttpClient client = filter.getHttpClient(route, exchange);
+
+        assertEquals(250, client.configuration().options().get(ChannelOption.CONNECT_TIMEOUT_MILLIS));
+    }
+
+    private static UpstreamHttpClients upstreamClients() {
+        UpstreamPoolProperties properties = new UpstreamPoolProperties();
+        properties.setMetrics(false);
+        return new UpstreamHttpClients(properties, new HttpClientProperties());
+    }
+}
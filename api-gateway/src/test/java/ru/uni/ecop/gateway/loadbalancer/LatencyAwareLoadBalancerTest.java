@@ -0,0 +1,98 @@
+package ru.uni.ecop.gateway.loadbalancer;
+
+import com.ecwid.consul.v1.health.model.Check;
+import com.ecwid.consul.v1.health.model.HealthService;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.consul.discovery.ConsulServiceInstance;
+import ru.uni.ecop.gateway.config.LoadBalancingProperties;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LatencyAwareLoadBalancerTest {
+
+    private static final long MILLI = 1_000_000L;
+    private static final long SECOND = 1_000 * MILLI;
+
+    private final InstanceLatencyTracker tracker = new InstanceLatencyTracker(new LoadBalancingProperties());
+    private final LatencyAwareLoadBalancer loadBalancer = new LatencyAwareLoadBalancer(null, "core-service", tracker, 4);
+
+    private final ServiceInstance fast = instance("10.0.0.1");
+    private final ServiceInstance slow = instance("10.0.0.2");
+
+    @Test
+    void prefersInstanceWithLowerPeakLatency() {
+        record(fast, 5 * MILLI, false, 0);
+        record(slow, 5 * MILLI, false, 0);
+        record(slow, 400 * MILLI, false, 0);
+
+        for (int i = 0; i < 20; i++) {
+            assertSame(fast, loadBalancer.choose(List.of(fast, slow), MILLI));
+        }
+    }
+
+    @Test
+    void outstandingCallsCountAgainstAnInstance() {
+        record(fast, 5 * MILLI, false, 0);
+        record(slow, 20 * MILLI, false, 0);
+        for (int i = 0; i < 10; i++) {
+            tracker.forInstance(fast).onStart();
+        }
+
+        assertSame(slow, loadBalancer.choose(List.of(fast, slow), MILLI));
+    }
+
+    @Test
+    void failuresCountAsSlowAndPeaksFadeOver() {
+        record(fast, 5 * MILLI, false, 0);
+        record(slow, 2 * MILLI, true, 0);
+        assertSame(fast, loadBalancer.choose(List.of(fast, slow), MILLI));
+
+        // The failure latency of 1s has faded after a minute without calls
+        record(fast, 5 * MILLI, false, 60 * SECOND);
+        assertSame(slow, loadBalancer.choose(List.of(fast, slow), 60 * SECOND));
+    }
+
+    @Test
+    void skipsCriticalAndPenalizesWarningInstances() {
+        ServiceInstance critical = consulInstance("10.0.0.3", Check.CheckStatus.CRITICAL);
+        ServiceInstance warning = consulInstance("10.0.0.4", Check.CheckStatus.WARNING);
+        record(critical, MILLI, false, 0);
+        record(warning, 5 * MILLI, false, 0);
+        record(slow, 10 * MILLI, false, 0);
+
+        for (int i = 0; i < 20; i++) {
+            assertSame(slow, loadBalancer.choose(List.of(critical, warning, slow), MILLI));
+        }
+        assertSame(critical, loadBalancer.choose(List.of(critical), MILLI), "an all critical service stays routable");
+    }
+
+    private void record(ServiceInstance instance, long latency, boolean failed, long now) {
+        InstanceStats stats = tracker.forInstance(instance);
+        stats.onStart();
+        stats.onComplete(latency, failed, now);
+    }
+
+    private static ServiceInstance instance(String host) {
+        return new DefaultServiceInstance(host, "core-service", host, 8080, false);
+    }
+
+    private static ServiceInstance consulInstance(String host, Check.CheckStatus status) {
+        Check check = new Check();
+        check.setStatus(status);
+        HealthService health = new HealthService();
+        health.setChecks(List.of(check));
+
+        ConsulServiceInstance instance = mock(ConsulServiceInstance.class);
+        when(instance.getServiceId()).thenReturn("core-service");
+        when(instance.getHost()).thenReturn(host);
+        when(instance.getPort()).thenReturn(8080);
+        when(instance.getHealthService()).thenReturn(health);
+        return instance;
+    }
+}
@@ -0,0 +1,151 @@
+package ru.uni.ecop.gateway.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import ru.uni.ecop.gateway.config.RateLimitingProperties;
+import ru.uni.ecop.gateway.dto.AuthenticatedUser;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HybridRateLimiterTest {
+
+    @Test
+    void localModeAllowsBurstThenDenies() {
+        HybridRateLimiter limiter = createLimiter(RateLimitingProperties.Mode.LOCAL, new InMemoryRateLimitSyncStore());
+
+        int allowed = 0;
+        for (int i = 0; i < 25; i++) {
+            if (isAllowed(limiter, "user-1")) {
+                allowed++;
+            }
+        }
+
+        assertEquals(20, allowed);
+        assertTrue(isAllowed(limiter, "user-2"), "other keys keep their own bucket");
+    }
+
+    @Test
+    void nodesDebitEachOthersConsumptionOnSync() {
+        InMemoryRateLimitSyncStore store = new InMemoryRateLimitSyncStore();
+        HybridRateLimiter nodeA = createLimiter(RateLimitingProperties.Mode.HYBRID, store);
+        HybridRateLimiter nodeB = createLimiter(RateLimitingProperties.Mode.HYBRID, store);
+
+        assertTrue(isAllowed(nodeB, "user-1"));
+        nodeB.sync().block(Duration.ofSeconds(1));
+
+        // Node A alone spends the rest of the global burst
+        for (int i = 0; i < 19; i++) {
+            assertTrue(isAllowed(nodeA, "user-1"));
+        }
+        nodeA.sync().block(Duration.ofSeconds(1));
+
+        // Node B learns what node A took once it reports consumption of its own
+        assertTrue(isAllowed(nodeB, "user-1"));
+        nodeB.sync().block(Duration.ofSeconds(1));
+
+        assertFalse(isAllowed(nodeB, "user-1"));
+    }
+
+    @Test
+    void syncsOnlyKeysUsedSinceLastSync() {
+        List<List<String>> calls = new ArrayList<>();
+        InMemoryRateLimitSyncStore store = new InMemoryRateLimitSyncStore();
+        RateLimitSyncStore recording = (keys, deltas, ttl) -> {
+            calls.add(keys);
+            return store.addAndGet(keys, deltas, ttl);
+        };
+        HybridRateLimiter limiter = createLimiter(RateLimitingProperties.Mode.HYBRID, recording);
+
+        isAllowed(limiter, "user-1");
+        isAllowed(limiter, "user-2");
+        limiter.sync().block(Duration.ofSeconds(1));
+        limiter.sync().block(Duration.ofSeconds(1));
+        isAllowed(limiter, "user-2");
+        limiter.sync().block(Duration.ofSeconds(1));
+
+        assertEquals(2, calls.size(), "idle keys cost no Redis call");
+        assertEquals(2, calls.get(0).size());
+        assertEquals(List.of("gateway:ratelimit:default:user-2"), calls.get(1));
+    }
+
+    @Test
+    void routeArgumentsNamingTheSamePolicyKeepSeparateBuckets() {
+        HybridRateLimiter limiter = createLimiter(RateLimitingProperties.Mode.LOCAL, new InMemoryRateLimitSyncStore());
+        limiter.getConfig().put("narrow_route", routeConfig("shared", 2));
+        limiter.getConfig().put("wide_route", routeConfig("shared", 5));
+
+        assertEquals(2, countAllowed(limiter, "narrow_route", "user-1", null));
+        assertEquals(5, countAllowed(limiter, "wide_route", "user-1", null));
+    }
+
+    @Test
+    void routePolicyAndTierSelectLimits() {
+        RateLimitingProperties properties = properties(RateLimitingProperties.Mode.LOCAL);
+        RateLimitingProperties.Policy login = new RateLimitingProperties.Policy();
+        login.setAlgorithm(RateLimitingProperties.Algorithm.GCRA);
+        login.setReplenishRate(1);
+        login.setBurstCapacity(3);
+        RateLimitingProperties.Limits premium = new RateLimitingProperties.Limits();
+        premium.setReplenishRate(1);
+        premium.setBurstCapacity(10);
+        login.setTiers(Map.of("premium", premium));
+        properties.setPolicies(Map.of("login", login));
+        properties.setRoutes(Map.of("auth_login_route", "login"));
+        HybridRateLimiter limiter = new HybridRateLimiter(properties, new InMemoryRateLimitSyncStore(), null, new SimpleMeterRegistry());
+
+        assertEquals(3, countAllowed(limiter, "auth_login_route", "ip:10.0.0.1", null));
+        assertEquals(10, countAllowed(limiter, "auth_login_route", "user-1",
+            new AuthenticatedUser("user-1", List.of(), null, "premium")));
+        assertEquals(20, countAllowed(limiter, "other_route", "ip:10.0.0.1", null));
+    }
+
+    private static int countAllowed(HybridRateLimiter limiter, String routeId, String id, AuthenticatedUser user) {
+        int allowed = 0;
+        for (int i = 0; i < 25; i++) {
+            Mono<RateLimiter.Response> response = limiter.isAllowed(routeId, id);
+            if (user != null) {
+                response = response.contextWrite(Context.of(AuthenticatedUser.class, user));
+            }
+            if (response.block(Duration.ofSeconds(1)).isAllowed()) {
+                allowed++;
+            }
+        }
+        return allowed;
+    }
+
+    private static HybridRateLimiter.Config routeConfig(String policy, int burstCapacity) {
+        HybridRateLimiter.Config config = new HybridRateLimiter.Config();
+        config.setPolicy(policy);
+        config.setReplenishRate(1);
+        config.setBurstCapacity(burstCapacity);
+        return config;
+    }
+
+    private static boolean isAllowed(HybridRateLimiter limiter, String id) {
+        RateLimiter.Response response = limiter.isAllowed("route", id).block(Duration.ofSeconds(1));
+        return response != null && response.isAllowed();
+    }
+
+    private static HybridRateLimiter createLimiter(RateLimitingProperties.Mode mode, RateLimitSyncStore store) {
+        return new HybridRateLimiter(properties(mode), store, null, new SimpleMeterRegistry());
+    }
+
+    private static RateLimitingProperties properties(RateLimitingProperties.Mode mode) {
+        RateLimitingProperties properties = new RateLimitingProperties();
+        properties.setMode(mode);
+        // Slow refill so the assertions don't depend on timing
+        properties.setReplenishRate(1);
+        properties.setBurstCapacity(20);
+        return properties;
+    }
+}
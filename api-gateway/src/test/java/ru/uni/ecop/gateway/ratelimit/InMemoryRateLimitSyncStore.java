@@ -0,0 +1,28 @@
+package ru.uni.ecop.gateway.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the Redis counters, shared by limiter instances that play separate gateway nodes
+ */
+public class InMemoryRateLimitSyncStore implements RateLimitSyncStore {
+
+    private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<List<Long>> addAndGet(List<String> keys, List<Long> deltas, Duration ttl) {
+        return Mono.fromSupplier(() -> {
+            List<Long> totals = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                totals.add(counters.computeIfAbsent(keys.get(i), key -> new AtomicLong()).addAndGet(deltas.get(i)));
+            }
+            return totals;
+        });
+    }
+}
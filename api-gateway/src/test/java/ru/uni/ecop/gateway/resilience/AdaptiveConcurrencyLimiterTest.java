@@ -0,0 +1,159 @@
+package ru.uni.ecop.gateway.resilience;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.test.StepVerifier;
+import ru.uni.ecop.gateway.config.ConcurrencyLimitProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long BASE_LATENCY_MICROS = 5_000;
+    private static final int CLIENTS = 100;
+    private static final Duration MAX_QUEUE_WAIT = Duration.ofMillis(20);
+
+    private final List<AdaptiveConcurrencyLimiter.Rejection> rejections = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger capacity = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private AdaptiveConcurrencyLimiter limiter;
+    private DisposableServer upstream;
+    private ConnectionProvider connections;
+    private HttpClient client;
+
+    @BeforeEach
+    void setUp() {
+        ConcurrencyLimitProperties settings = new ConcurrencyLimitProperties();
+        settings.setMaxQueueSize(10);
+        limiter = new AdaptiveConcurrencyLimiter(settings, rejections::add);
+
+        // Serves capacity requests at the base latency, beyond that they share it
+        upstream = HttpServer.create()
+            .port(0)
+            .handle((request, response) -> {
+                int concurrent = active.incrementAndGet();
+                long latency = BASE_LATENCY_MICROS * Math.max(capacity.get(), concurrent) / capacity.get();
+                return Mono.delay(Duration.ofNanos(latency * 1_000))
+                    .then(response.sendString(Mono.just("ok")).then())
+                    .doFinally(signal -> active.decrementAndGet());
+            })
+            .bindNow();
+        connections = ConnectionProvider.create("simulation", CLIENTS * 2);
+        client = HttpClient.create(connections).port(upstream.port());
+    }
+
+    @AfterEach
+    void tearDown() {
+        connections.disposeLater().block();
+        upstream.disposeNow();
+    }
+
+    @Test
+    void followsCapacityOfUpstreamWhoseLatencyVaries() {
+        Phase healthy = run(32, Duration.ofMillis(1500));
+        assertTrue(healthy.limit() >= 20, "limit grows to the capacity of a healthy upstream, was " + healthy.limit());
+
+        Phase degraded = run(4, Duration.ofMillis(1500));
+        assertTrue(degraded.limit() <= 16 && degraded.limit() < healthy.limit(),
+            "limit follows the capacity down, was " + degraded.limit());
+        // Unlimited, 100 clients on a capacity of 4 would wait 125ms per call
+        assertTrue(degraded.medianLatencyMicros() < 8 * BASE_LATENCY_MICROS,
+            "admitted calls stay close to the no-load latency, median was " + degraded.medianLatencyMicros() + "us");
+        assertTrue(degraded.rejected() > 0, "excess requests are turned away");
+    }
+
+    @Test
+    void queuedRequestTakesFreedSlot() {
+        ConcurrencyLimitProperties settings = new ConcurrencyLimitProperties();
+        settings.setMinLimit(1);
+        settings.setInitialLimit(1);
+        AdaptiveConcurrencyLimiter single = new AdaptiveConcurrencyLimiter(settings, rejections::add);
+        assertTrue(single.tryAcquire());
+
+        StepVerifier.create(single.acquire(Duration.ofSeconds(5)))
+            .then(single::release)
+            .verifyComplete();
+        assertEquals(1, single.getInFlight());
+        assertEquals(0, single.getQueued());
+    }
+
+    @Test
+    void rejectsWhenQueueIsFullOrWaitRunsOut() {
+        ConcurrencyLimitProperties settings = new ConcurrencyLimitProperties();
+        settings.setMinLimit(1);
+        settings.setInitialLimit(1);
+        settings.setMaxQueueSize(1);
+        AdaptiveConcurrencyLimiter single = new AdaptiveConcurrencyLimiter(settings, rejections::add);
+        assertTrue(single.tryAcquire());
+
+        Mono<Void> waiting = single.acquire(Duration.ofMillis(50));
+        StepVerifier.create(waiting)
+            .then(() -> StepVerifier.create(single.acquire(Duration.ofMillis(50)))
+                .verifyError(ConcurrencyLimitExceededException.class))
+            .verifyError(ConcurrencyLimitExceededException.class);
+
+        assertEquals(List.of(AdaptiveConcurrencyLimiter.Rejection.QUEUE_FULL, AdaptiveConcurrencyLimiter.Rejection.QUEUE_TIMEOUT),
+            rejections);
+        // The slot is still held by the first caller only
+        assertEquals(1, single.getInFlight());
+        assertEquals(0, single.getQueued());
+    }
+
+    private Phase run(int upstreamCapacity, Duration duration) {
+        capacity.set(upstreamCapacity);
+        rejections.clear();
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        long deadline = System.nanoTime() + duration.toNanos();
+        // Only the second half is measured, once the limit has settled
+        long measureFrom = System.nanoTime() + duration.toNanos() / 2;
+
+        Flux.range(0, CLIENTS)
+            .flatMap(user -> Mono.defer(() -> call(latencies, measureFrom))
+                .repeat(() -> System.nanoTime() < deadline), CLIENTS)
+            .blockLast(duration.plusSeconds(30));
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return new Phase(limiter.getLimit(), sorted.isEmpty() ? 0 : sorted.get(sorted.size() / 2),
+            rejections.size());
+    }
+
+    private Mono<Void> call(List<Long> latencies, long measureFrom) {
+        return limiter.acquire(MAX_QUEUE_WAIT)
+            .then(Mono.defer(() -> {
+                long start = System.nanoTime();
+                return client.get()
+                    .uri("/")
+                    .responseContent()
+                    .aggregate()
+                    .then()
+                    .doOnSuccess(ignored -> {
+                        long now = System.nanoTime();
+                        limiter.onSample(now - start, false, now);
+                        if (start >= measureFrom) {
+                            latencies.add((now - start) / 1_000);
+                        }
+                    })
+                    .doFinally(signal -> limiter.release());
+            }))
+            // A turned away client backs off briefly, as a caller receiving 503 would
+            .onErrorResume(ConcurrencyLimitExceededException.class, e -> Mono.delay(Duration.ofMillis(5)).then());
+    }
+
+    private record Phase(int limit, long medianLatencyMicros, int rejected) {
+    }
+}
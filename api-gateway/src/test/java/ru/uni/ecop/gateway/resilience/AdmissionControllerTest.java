@@ -0,0 +1,110 @@
+package ru.uni.ecop.gateway.resilience;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.test.scheduler.VirtualTimeScheduler;
+import ru.uni.ecop.gateway.config.AdmissionProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControllerTest {
+
+    private static final Duration TARGET = Duration.ofMillis(5);
+    private static final Duration INTERVAL = Duration.ofMillis(100);
+
+    private final VirtualTimeScheduler time = VirtualTimeScheduler.create();
+    private final List<String> events = new ArrayList<>();
+    private final List<AdmissionController.Rejection> rejections = new ArrayList<>();
+    private AdmissionController controller;
+
+    @BeforeEach
+    void setUp() {
+        AdmissionProperties settings = new AdmissionProperties();
+        settings.setMaxConcurrent(1);
+        settings.setTarget(TARGET);
+        settings.setInterval(INTERVAL);
+        settings.setMaxQueueSize(2);
+        controller = new AdmissionController(settings, (priority, reason) -> rejections.add(reason),
+            () -> time.now(TimeUnit.NANOSECONDS), time);
+        request("first", Priority.NORMAL);
+    }
+
+    @Test
+    void higherPriorityIsAdmittedFirstThenArrivalOrder() {
+        request("low", Priority.LOW);
+        request("normal-1", Priority.NORMAL);
+        request("high", Priority.HIGH);
+        request("normal-2", Priority.NORMAL);
+
+        for (int i = 0; i < 4; i++) {
+            controller.release();
+        }
+
+        assertEquals(List.of("first admitted", "high admitted", "normal-1 admitted", "normal-2 admitted", "low admitted"),
+            events);
+        assertEquals(1, controller.getInFlight());
+    }
+
+    @Test
+    void burstWaitsUpToInterval() {
+        request("burst", Priority.LOW);
+
+        time.advanceTimeBy(INTERVAL.minusMillis(1));
+        assertEquals(List.of("first admitted"), events, "a queue that was just empty absorbs the burst");
+
+        time.advanceTimeBy(Duration.ofMillis(1));
+        assertEquals(List.of("first admitted", "burst shed"), events);
+        assertEquals(List.of(AdmissionController.Rejection.QUEUE_DELAY), rejections);
+    }
+
+    @Test
+    void standingQueueIsShedAfterTarget() {
+        request("a", Priority.LOW);
+        time.advanceTimeBy(Duration.ofMillis(60));
+        request("b", Priority.LOW);
+        // a gives up at the interval, b keeps the queue busy past it
+        time.advanceTimeBy(Duration.ofMillis(50));
+        assertTrue(controller.isOverloaded(Priority.LOW));
+        assertFalse(controller.isOverloaded(Priority.HIGH));
+
+        request("c", Priority.LOW);
+        time.advanceTimeBy(TARGET);
+
+        assertEquals(List.of("first admitted", "a shed", "c shed"), events);
+        assertEquals(1, controller.getQueued(Priority.LOW), "b still waits for its interval");
+    }
+
+    @Test
+    void fullQueueIsShedAtOnce() {
+        request("a", Priority.LOW);
+        request("b", Priority.LOW);
+        request("c", Priority.LOW);
+
+        assertEquals(List.of("first admitted", "c shed"), events);
+        assertEquals(List.of(AdmissionController.Rejection.QUEUE_FULL), rejections);
+    }
+
+    @Test
+    void cancelledWaiterLeavesItsPlace() {
+        request("a", Priority.LOW).dispose();
+        request("b", Priority.LOW);
+
+        controller.release();
+
+        assertEquals(List.of("first admitted", "b admitted"), events);
+        assertEquals(0, controller.getQueued(Priority.LOW));
+        assertEquals(1, controller.getInFlight());
+    }
+
+    private Disposable request(String name, Priority priority) {
+        return controller.acquire(priority).subscribe(null, e -> events.add(name + " shed"), () -> events.add(name + " admitted"));
+    }
+}
@@ -0,0 +1,109 @@
+package ru.uni.ecop.gateway.resilience;
+
+import org.junit.jupiter.api.Test;
+import ru.uni.ecop.gateway.config.ResilienceProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CircuitBreakerTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    private static final long FAST = 10_000_000L;
+
+    private final List<String> transitions = new ArrayList<>();
+    private final CircuitBreaker breaker = new CircuitBreaker(settings(),
+        (from, to) -> transitions.add(from + "->" + to));
+
+    @Test
+    void opensWhenFailureRateReachesThreshold() {
+        record(0, 5, false);
+        record(0, 4, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        record(0, 1, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire(SECOND));
+        assertEquals(9 * SECOND, breaker.remainingOpenNanos(SECOND));
+    }
+
+    @Test
+    void opensOnSlowCalls() {
+        for (int i = 0; i < 10; i++) {
+            CircuitBreaker.Phase phase = breaker.tryAcquire(0);
+            breaker.onResult(phase, 3 * SECOND, false, 0);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void halfOpenProbesCloseAgainOnSuccess() {
+        record(0, 10, true);
+        long afterWait = 10 * SECOND;
+
+        List<CircuitBreaker.Phase> probes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            probes.add(breaker.tryAcquire(afterWait));
+        }
+        probes.forEach(phase -> assertNotNull(phase));
+        assertNull(breaker.tryAcquire(afterWait), "only the permitted probes pass");
+
+        probes.forEach(phase -> breaker.onResult(phase, FAST, false, afterWait));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(List.of("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED"), transitions);
+    }
+
+    @Test
+    void failedProbesReopenAndStaleOutcomesAreDropped() {
+        CircuitBreaker.Phase beforeOpening = breaker.tryAcquire(0);
+        record(0, 10, true);
+        long afterWait = 10 * SECOND;
+
+        CircuitBreaker.Phase probe = breaker.tryAcquire(afterWait);
+        assertNotNull(probe);
+        // Outcome of a call admitted while closed does not count for the probes
+        breaker.onResult(beforeOpening, FAST, false, afterWait);
+        for (int i = 0; i < 2; i++) {
+            breaker.onResult(breaker.tryAcquire(afterWait), FAST, true, afterWait);
+        }
+        breaker.onResult(probe, FAST, false, afterWait);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void cancelledProbeGivesItsPermitBack() {
+        record(0, 10, true);
+        long afterWait = 10 * SECOND;
+        List<CircuitBreaker.Phase> probes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            probes.add(breaker.tryAcquire(afterWait));
+        }
+
+        breaker.release(probes.get(0));
+        assertNotNull(breaker.tryAcquire(afterWait));
+    }
+
+    private void record(long now, int calls, boolean failed) {
+        for (int i = 0; i < calls; i++) {
+            breaker.onResult(breaker.tryAcquire(now), FAST, failed, now);
+        }
+    }
+
+    private static ResilienceProperties.CircuitBreaker settings() {
+        ResilienceProperties.CircuitBreaker settings = new ResilienceProperties.CircuitBreaker();
+        settings.setSlidingWindowSize(10);
+        settings.setMinimumNumberOfCalls(10);
+        settings.setFailureRateThreshold(50);
+        settings.setSlowCallRateThreshold(80);
+        settings.setSlowCallDurationThreshold(Duration.ofSeconds(2));
+        settings.setWaitDurationInOpenState(Duration.ofSeconds(10));
+        settings.setPermittedNumberOfCallsInHalfOpenState(3);
+        return settings;
+    }
+}
@@ -0,0 +1,36 @@
+package ru.uni.ecop.gateway.route;
+
+import java.time.Duration;
+
+/**
+ * Stand-in for Consul KV with blocking query semantics
+ */
+public class InMemoryRouteConfigStore implements RouteConfigStore {
+
+    private String value;
+    private long index = 1;
+
+    public synchronized void put(String value) {
+        this.value = value;
+        this.index++;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized Versioned watch(String key, long index, Duration wait) {
+        long deadline = System.nanoTime() + wait.toNanos();
+        try {
+            while (this.index == index) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                wait(Math.max(1, remaining / 1_000_000));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while watching " + key, e);
+        }
+        return new Versioned(value, this.index);
+    }
+}
@@ -0,0 +1,64 @@
+package ru.uni.ecop.gateway.route;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PathTrieTest {
+
+    private final PathTrie<String> trie = PathTrie.<String>builder()
+        .add("/api/users/{id}", "user_get_route")
+        .add("/api/users/search", "user_search_route")
+        .add("/api/users/{id}/skills/{skill}", "user_skill_route")
+        .add("/api/projects/**", "project_route")
+        .add("/api/projects/{id}/archive", "project_archive_route")
+        .build();
+
+    @Test
+    void prefersLiteralSegmentsOverVariables() {
+        assertEquals("user_search_route", trie.match("/api/users/search").value());
+        PathTrie.Match<String> match = trie.match("/api/users/42");
+        assertEquals("user_get_route", match.value());
+        assertEquals(Map.of("id", "42"), match.variables());
+    }
+
+    @Test
+    void capturesEveryVariable() {
+        PathTrie.Match<String> match = trie.match("/api/users/42/skills/java%20ee");
+        assertEquals("user_skill_route", match.value());
+        assertEquals(Map.of("id", "42", "skill", "java ee"), match.variables());
+    }
+
+    @Test
+    void matchesRemainderIncludingTheBarePrefix() {
+        assertEquals("project_route", trie.match("/api/projects").value());
+        assertEquals("project_route", trie.match("/api/projects/7/members").value());
+        assertEquals("project_archive_route", trie.match("/api/projects/7/archive").value());
+        // Backtracks to the remainder when the more specific branch dead-ends
+        assertEquals("project_route", trie.match("/api/projects/7/archive/history").value());
+    }
+
+    @Test
+    void treatsTrailingSeparatorAsOptional() {
+        assertEquals("user_search_route", trie.match("/api/users/search/").value());
+    }
+
+    @Test
+    void returnsNullWithoutMatch() {
+        assertNull(trie.match("/api/users"));
+        assertNull(trie.match("/api/users/42/connections"));
+        assertNull(trie.match("/"));
+    }
+
+    @Test
+    void rejectsUnsupportedPatterns() {
+        PathTrie.Builder<String> builder = PathTrie.builder();
+        assertThrows(IllegalArgumentException.class, () -> builder.add("/api/**/core", "core"));
+        assertThrows(IllegalArgumentException.class, () -> builder.add("/api/*.json", "json"));
+        assertThrows(IllegalArgumentException.class, () -> builder.add("/api/{*rest}", "rest"));
+    }
+}
@@ -0,0 +1,153 @@
+package ru.uni.ecop.gateway.route;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.route.Route;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.config.RateLimitingProperties;
+import ru.uni.ecop.gateway.config.RouteTableProperties;
+import ru.uni.ecop.gateway.filter.CachingFilter;
+import ru.uni.ecop.gateway.ratelimit.HybridRateLimiter;
+import ru.uni.ecop.gateway.ratelimit.InMemoryRateLimitSyncStore;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RouteConfigWatcherTest {
+
+    private static final String EVENTS_ONLY = """
+        routes:
+          groups:
+            events:
+              uri: lb://events-service
+              authenticated: false
+              rate-limited: false
+              concurrency-limited: false
+              circuit-breaker: false
+              routes:
+                "[event_route]": /api/events/**
+                "[event_get_route]": /api/events/{id}
+        rate-limiting:
+          policies:
+            events:
+              replenish-rate: 5
+              burst-capacity: 10
+          routes:
+            "[event_route]": events
+        """;
+
+    // The core group as configured locally, goes right after the events group
+    private static final String KEEP_CORE = """
+            core:
+              uri: lb://core-service
+              authenticated: false
+              rate-limited: false
+              concurrency-limited: false
+              circuit-breaker: false
+              cache:
+                enabled: true
+                ttl: 1m
+              routes:
+                "[search_route]": /api/search/**
+        """;
+
+    private final InMemoryRouteConfigStore store = new InMemoryRouteConfigStore();
+    private RouteTableLocator locator;
+    private RouteConfigWatcher watcher;
+
+    @BeforeEach
+    void setUp() {
+        PathRoutePredicateFactory pathPredicates = mock(PathRoutePredicateFactory.class);
+        when(pathPredicates.applyAsync(any(PathRoutePredicateFactory.Config.class))).thenReturn(exchange -> Mono.just(true));
+        CachingFilter cachingFilter = mock(CachingFilter.class);
+        when(cachingFilter.apply(any(CachingFilter.Config.class))).thenAnswer(invocation -> mock(GatewayFilter.class));
+        RouteTableCompiler compiler = new RouteTableCompiler(null, null, cachingFilter, null, null, null, null, null, null,
+            pathPredicates);
+
+        RouteTableProperties properties = new RouteTableProperties();
+        RouteTableProperties.Group core = new RouteTableProperties.Group();
+        core.setUri(URI.create("lb://core-service"));
+        core.setAuthenticated(false);
+        core.setRateLimited(false);
+        core.setConcurrencyLimited(false);
+        core.setCircuitBreaker(false);
+        core.getCache().setEnabled(true);
+        core.getCache().setTtl(Duration.ofMinutes(1));
+        core.setRoutes(Map.of("search_route", "/api/search/**"));
+        properties.setGroups(Map.of("core", core));
+        properties.getConsul().setWaitTime(Duration.ofMillis(50));
+
+        RateLimitingProperties rateLimiting = new RateLimitingProperties();
+        HybridRateLimiter rateLimiter = new HybridRateLimiter(rateLimiting, new InMemoryRateLimitSyncStore(), null,
+            new SimpleMeterRegistry());
+        locator = new RouteTableLocator(properties, compiler, event -> { });
+        watcher = new RouteConfigWatcher(properties, rateLimiting, store, compiler, locator, rateLimiter,
+            new SimpleMeterRegistry());
+    }
+
+    @Test
+    void installsChangedDocument() {
+        store.put(EVENTS_ONLY);
+
+        assertTrue(watcher.poll());
+        RouteTable table = locator.getTable();
+        assertNull(table.match("/api/search/projects"));
+        assertEquals("event_get_route", table.match("/api/events/42").value().getId());
+        assertEquals("event_route", table.match("/api/events/42/members").value().getId());
+    }
+
+    @Test
+    void keepsCurrentTableWhenDocumentIsInvalid() {
+        RouteTable before = locator.getTable();
+
+        store.put(EVENTS_ONLY.replace("/api/events/{id}", "/api/**/events"));
+        assertFalse(watcher.poll());
+        store.put(EVENTS_ONLY.replace("\"[event_route]\": events", "\"[event_route]\": unknown"));
+        assertFalse(watcher.poll());
+
+        assertSame(before, locator.getTable());
+        Route search = locator.getTable().match("/api/search/projects").value();
+        assertEquals("search_route", search.getId());
+    }
+
+    @Test
+    void rejectedDocumentKeepsFilterChains() {
+        GatewayFilter cache = locator.getTable().match("/api/search/projects").value().getFilters().get(0);
+
+        // Routes compile, the policy mapping is rejected
+        store.put(EVENTS_ONLY.replace("\"[event_route]\": events", "\"[event_route]\": unknown"));
+        assertFalse(watcher.poll());
+        store.put(EVENTS_ONLY.replace("rate-limiting:", KEEP_CORE + "rate-limiting:"));
+        assertTrue(watcher.poll());
+
+        assertSame(cache, locator.getTable().match("/api/search/projects").value().getFilters().get(0));
+    }
+
+    @Test
+    void ignoresWakeUpsWithoutChange() {
+        store.put(EVENTS_ONLY);
+        assertTrue(watcher.poll());
+        RouteTable installed = locator.getTable();
+
+        // Blocking query times out with the same index
+        assertFalse(watcher.poll());
+        // Index moved but the content is the same
+        store.put(EVENTS_ONLY);
+        assertFalse(watcher.poll());
+
+        assertSame(installed, locator.getTable());
+    }
+}
@@ -0,0 +1,85 @@
+package ru.uni.ecop.gateway.route;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.RequestRateLimiterGatewayFilterFactory;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.config.RouteTableProperties;
+import ru.uni.ecop.gateway.filter.CachingFilter;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RouteTableCompilerTest {
+
+    private final GatewayFilter rateLimitFilter = mock(GatewayFilter.class);
+    private RouteTableCompiler compiler;
+
+    @BeforeEach
+    void setUp() {
+        PathRoutePredicateFactory pathPredicates = mock(PathRoutePredicateFactory.class);
+        when(pathPredicates.applyAsync(any(PathRoutePredicateFactory.Config.class))).thenReturn(exchange -> Mono.just(true));
+        CachingFilter cachingFilter = mock(CachingFilter.class);
+        when(cachingFilter.apply(any(CachingFilter.Config.class)))
+            .thenAnswer(invocation -> new OrderedGatewayFilter(mock(GatewayFilter.class), CachingFilter.ORDER));
+        RequestRateLimiterGatewayFilterFactory requestRateLimiter = mock(RequestRateLimiterGatewayFilterFactory.class);
+        when(requestRateLimiter.apply(any(Consumer.class))).thenReturn(rateLimitFilter);
+        compiler = new RouteTableCompiler(null, null, cachingFilter, null, null, null, requestRateLimiter, null, null,
+            pathPredicates);
+    }
+
+    @Test
+    void reusesChainsOfUnchangedGroupsOnly() {
+        GatewayFilter first = cacheFilterOf(compiler.compile(groups(Duration.ofMinutes(1))));
+
+        assertSame(first, cacheFilterOf(compiler.compile(groups(Duration.ofMinutes(1)))), "unchanged group keeps its filters");
+
+        compiler.compile(groups(Duration.ofMinutes(2)));
+        // The one-minute chain went with the table that used it
+        assertNotSame(first, cacheFilterOf(compiler.compile(groups(Duration.ofMinutes(1)))));
+    }
+
+    @Test
+    void rateLimitsBeforeAnsweringFromCache() {
+        Map<String, RouteTableProperties.Group> groups = groups(Duration.ofMinutes(1));
+        groups.get("portfolios").setRateLimited(true);
+        List<GatewayFilter> filters = new ArrayList<>(compiler.compile(groups).match("/api/portfolios/42").value().getFilters());
+
+        // The order the gateway runs them in
+        AnnotationAwareOrderComparator.sort(filters);
+
+        assertEquals(rateLimitFilter, ((OrderedGatewayFilter) filters.get(0)).getDelegate());
+    }
+
+    private static GatewayFilter cacheFilterOf(RouteTable table) {
+        return table.match("/api/portfolios/42").value().getFilters().get(0);
+    }
+
+    private static Map<String, RouteTableProperties.Group> groups(Duration ttl) {
+        RouteTableProperties.Group group = new RouteTableProperties.Group();
+        group.setUri(URI.create("lb://portfolio-service"));
+        group.setAuthenticated(false);
+        group.setRateLimited(false);
+        group.setConcurrencyLimited(false);
+        group.setCircuitBreaker(false);
+        group.getCache().setEnabled(true);
+        group.getCache().setTtl(ttl);
+        group.setRoutes(Map.of("portfolio_route", "/api/portfolios/**"));
+        return Map.of("portfolios", group);
+    }
+}
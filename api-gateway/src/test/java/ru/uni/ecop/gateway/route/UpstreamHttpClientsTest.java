@@ -0,0 +1,80 @@
+package ru.uni.ecop.gateway.route;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import ru.uni.ecop.gateway.config.UpstreamPoolProperties;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load test of connection churn: the same burst of calls through a client that opens a
+ * connection per call, as a client built per request without a shared pool does, and
+ * through the pooled upstream client.
+ */
+class UpstreamHttpClientsTest {
+
+    private static final int CALLS = 2000;
+    private static final int CONCURRENCY = 50;
+
+    private final AtomicInteger connectionsOpened = new AtomicInteger();
+    private DisposableServer upstream;
+    private UpstreamHttpClients clients;
+
+    @BeforeEach
+    void setUp() {
+        upstream = HttpServer.create()
+            .port(0)
+            .doOnConnection(connection -> connectionsOpened.incrementAndGet())
+            .handle((request, response) -> response.sendString(Mono.delay(Duration.ofMillis(2)).thenReturn("ok")))
+            .bindNow();
+
+        UpstreamPoolProperties properties = new UpstreamPoolProperties();
+        properties.setMetrics(false);
+        clients = new UpstreamHttpClients(properties, new HttpClientProperties());
+    }
+
+    @AfterEach
+    void tearDown() {
+        clients.destroy();
+        upstream.disposeNow();
+    }
+
+    @Test
+    void pooledClientReusesConnectionsAcrossBurst() {
+        int unpooled = burst(HttpClient.newConnection());
+        assertEquals(CALLS, unpooled, "every call opens and closes a connection");
+
+        connectionsOpened.set(0);
+        int pooled = burst(clients.forUpstream("core-service"));
+        assertTrue(pooled <= CONCURRENCY, "no more connections than calls in flight, opened " + pooled);
+
+        // A second burst runs on the connections of the first one
+        connectionsOpened.set(0);
+        assertEquals(0, burst(clients.forUpstream("core-service")));
+    }
+
+    @Test
+    void servicesGetPoolsOfTheirOwn() {
+        assertTrue(clients.forUpstream("core-service") == clients.forUpstream("core-service"));
+        assertTrue(clients.forUpstream("core-service") != clients.forUpstream("project-service"));
+    }
+
+    private int burst(HttpClient client) {
+        HttpClient target = client.port(upstream.port());
+        Flux.range(0, CALLS)
+            .flatMap(i -> target.get().uri("/").responseContent().aggregate().asString(), CONCURRENCY)
+            .blockLast(Duration.ofSeconds(60));
+        return connectionsOpened.get();
+    }
+}
@@ -0,0 +1,57 @@
+package ru.uni.ecop.gateway.security;
+
+import org.junit.jupiter.api.Test;
+import ru.uni.ecop.gateway.config.AuthProperties;
+import ru.uni.ecop.gateway.dto.AuthenticatedUser;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IdentityHeadersTest {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1_700_000_000L);
+
+    private final IdentityHeaders identityHeaders = new IdentityHeaders(properties("identity-secret"));
+
+    @Test
+    void roundTripsVerifiedUser() {
+        AuthenticatedUser user = new AuthenticatedUser("42", List.of("STUDENT", "ADMIN"), NOW.plusSeconds(3600), "premium");
+
+        String header = identityHeaders.encode(user, NOW);
+
+        assertEquals(user, identityHeaders.decode(header));
+    }
+
+    @Test
+    void rejectsTamperedOrForeignHeaders() {
+        String header = identityHeaders.encode(new AuthenticatedUser("42", List.of("STUDENT"), null, null), NOW);
+        String otherUser = identityHeaders.encode(new AuthenticatedUser("1", List.of("ADMIN"), null, null), NOW);
+
+        // Claims of one header with the signature of another
+        assertNull(identityHeaders.decode(otherUser.substring(0, otherUser.indexOf('.')) + header.substring(header.indexOf('.'))));
+        assertNull(new IdentityHeaders(properties("other-secret")).decode(header));
+        assertNull(identityHeaders.decode("not-a-header"));
+    }
+
+    @Test
+    void signsGatewayServiceIdentity() {
+        AuthenticatedUser service = identityHeaders.decode(identityHeaders.encodeService(NOW));
+
+        assertEquals(IdentityHeaders.SERVICE_SUBJECT, service.getUserId());
+        assertEquals(List.of(IdentityHeaders.SERVICE_ROLE), service.getRoles());
+    }
+
+    @Test
+    void forwardsNothingWithoutSigningKey() {
+        assertNull(new IdentityHeaders(properties(null)).encode(new AuthenticatedUser("42", List.of(), null, null), NOW));
+    }
+
+    private static AuthProperties properties(String secret) {
+        AuthProperties properties = new AuthProperties();
+        properties.getIdentity().setSecret(secret);
+        return properties;
+    }
+}
@@ -0,0 +1,65 @@
+package ru.uni.ecop.gateway.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+
+class InspectingRequestDecoratorTest {
+
+    private final InspectionPatterns patterns = InspectionPatterns.bodyDefaults();
+
+    @Test
+    void findsSignatureSplitAcrossChunks() {
+        InspectingRequestDecorator request = decorate(4096, false, "{\"text\":\"<scr", "ipt>alert(1)\"}");
+
+        StepVerifier.create(request.getBody())
+            .expectNextCount(1)
+            .expectError(MaliciousContentException.class)
+            .verify();
+    }
+
+    @Test
+    void passesCleanBodyUnchanged() {
+        InspectingRequestDecorator request = decorate(4096, false, "{\"text\":", "\"hello\"}");
+
+        StepVerifier.create(request.getBody().map(InspectingRequestDecoratorTest::asString))
+            .expectNext("{\"text\":", "\"hello\"}")
+            .verifyComplete();
+    }
+
+    @Test
+    void decodesFormBodiesAcrossChunks() {
+        InspectingRequestDecorator request = decorate(4096, true, "q=1%27+OR", "+%2", "71%27%3D%271");
+
+        StepVerifier.create(request.getBody())
+            .expectNextCount(2)
+            .expectError(MaliciousContentException.class)
+            .verify();
+    }
+
+    @Test
+    void stopsAtMaxInspectSize() {
+        InspectingRequestDecorator request = decorate(16, false, "a".repeat(16), "javascript:");
+
+        StepVerifier.create(request.getBody())
+            .expectNextCount(2)
+            .verifyComplete();
+    }
+
+    private InspectingRequestDecorator decorate(int maxInspectSize, boolean formEncoded, String... chunks) {
+        Flux<DataBuffer> body = Flux.fromArray(chunks)
+            .map(chunk -> DefaultDataBufferFactory.sharedInstance.wrap(chunk.getBytes(StandardCharsets.UTF_8)));
+        MockServerHttpRequest request = MockServerHttpRequest.method(HttpMethod.POST, "/api/chats").body(body);
+        return new InspectingRequestDecorator(request, patterns, maxInspectSize, formEncoded);
+    }
+
+    private static String asString(DataBuffer buffer) {
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+}
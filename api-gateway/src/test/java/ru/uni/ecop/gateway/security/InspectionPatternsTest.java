@@ -0,0 +1,62 @@
+package ru.uni.ecop.gateway.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InspectionPatternsTest {
+
+    private final InspectionPatterns patterns = InspectionPatterns.defaults();
+
+    @Test
+    void matchesSignaturesOfThePreviousRegularExpressions() {
+        assertEquals("sql-injection", patterns.match("1' OR '1'='1", 4096));
+        assertEquals("sql-injection", patterns.match("x UNION   SELECT password", 4096));
+        assertEquals("sql-injection", patterns.match("name GROUP\tBY id", 4096));
+        assertEquals("sql-injection", patterns.match("CAST(id AS varchar)", 4096));
+        assertEquals("xss", patterns.match("<SCRIPT src=x>alert(1)</script>", 4096));
+        assertEquals("xss", patterns.match("JavaScript:alert(1)", 4096));
+        assertEquals("xss", patterns.match("<img onerror=alert(1)>", 4096));
+    }
+
+    @Test
+    void ignoresBenignValuesAndIncompleteSequences() {
+        assertNull(patterns.match("student portfolio 2024", 4096));
+        assertNull(patterns.match("groupby", 4096));
+        assertNull(patterns.match("forecast(", 4096));
+        assertNull(patterns.match("<script</script>", 4096));
+        assertNull(patterns.match("харьков", 4096));
+    }
+
+    @Test
+    void bodySignaturesLetOrdinaryTextThrough() {
+        InspectionPatterns body = InspectionPatterns.bodyDefaults();
+
+        assertNull(body.match("{\"text\":\"don't forget; I'll update the project\"}", 4096));
+        assertNull(body.match("{\"name\":\"Create, alter & rename\",\"description\":\"order by deadline, having fun\"}", 4096));
+        assertEquals("sql-injection", body.match("{\"text\":\"1' OR '1'='1\"}", 4096));
+        assertEquals("sql-injection", body.match("{\"q\":\"x UNION  SELECT password\"}", 4096));
+        assertEquals("xss", body.match("{\"text\":\"<script>alert(1)\"}", 4096));
+    }
+
+    @Test
+    void stopsAtMaxLength() {
+        assertNull(patterns.match("a".repeat(100) + "javascript:", 100));
+    }
+
+    @Test
+    void matchesLiteralsSplitAcrossChunks() {
+        InspectionPatterns.Scan scan = patterns.newScan();
+        for (String chunk : new String[]{"{\"text\":\"<scr", "ipt>alert(1)</scr", "ipt>\"}"}) {
+            for (byte b : chunk.getBytes(StandardCharsets.UTF_8)) {
+                scan.next(b & 0xFF);
+            }
+        }
+        assertTrue(scan.isMatched());
+        assertEquals("xss", scan.getMatchedRule());
+    }
+}
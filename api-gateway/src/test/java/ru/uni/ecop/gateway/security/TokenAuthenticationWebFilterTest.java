@@ -0,0 +1,97 @@
+package ru.uni.ecop.gateway.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.dto.AuthenticatedUser;
+import ru.uni.ecop.gateway.filter.AuthenticationFilter;
+import ru.uni.ecop.gateway.service.TokenValidationService;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TokenAuthenticationWebFilterTest {
+
+    private static final String HEADER = "X-Gateway-Identity";
+
+    private final TokenValidationService tokenValidationService = mock(TokenValidationService.class);
+    private final TokenAuthenticationWebFilter filter = new TokenAuthenticationWebFilter(tokenValidationService, HEADER);
+    private final AtomicReference<ServerWebExchange> passed = new AtomicReference<>();
+    private final AtomicReference<Object> principal = new AtomicReference<>();
+
+    @Test
+    void verifiesTokenOnceAndSharesTheUser() {
+        AuthenticatedUser user = new AuthenticatedUser("42", List.of("STUDENT"), null, null);
+        when(tokenValidationService.validate("valid")).thenReturn(Mono.just(user));
+
+        run(MockServerHttpRequest.get("/api/projects").header(HttpHeaders.AUTHORIZATION, "Bearer valid"));
+
+        assertSame(user, passed.get().getAttribute(AuthenticationFilter.AUTHENTICATED_USER_ATTR));
+        assertSame(user, principal.get());
+        verify(tokenValidationService).validate("valid");
+    }
+
+    @Test
+    void stripsIdentityHeadersSentByClients() {
+        run(MockServerHttpRequest.get("/api/auth/login").header(HEADER, "forged.signature"));
+
+        assertFalse(passed.get().getRequest().getHeaders().containsKey(HEADER));
+        assertNull(passed.get().getAttribute(AuthenticationFilter.AUTHENTICATED_USER_ATTR));
+    }
+
+    @Test
+    void invalidTokenLeavesRequestAnonymousWithReason() {
+        when(tokenValidationService.validate("expired")).thenReturn(Mono.error(new IllegalStateException("JWT expired")));
+
+        run(MockServerHttpRequest.get("/api/projects").header(HttpHeaders.AUTHORIZATION, "Bearer expired"));
+
+        assertNull(passed.get().getAttribute(AuthenticationFilter.AUTHENTICATED_USER_ATTR));
+        assertNull(principal.get());
+        assertEquals("Authentication failed: JWT expired",
+            passed.get().getAttribute(TokenAuthenticationWebFilter.AUTHENTICATION_ERROR_ATTR));
+    }
+
+    @Test
+    void eventStreamsMayCarryTheTokenInTheQuery() {
+        AuthenticatedUser user = new AuthenticatedUser("42", List.of("STUDENT"), null, null);
+        when(tokenValidationService.validate("valid")).thenReturn(Mono.just(user));
+
+        run(MockServerHttpRequest.get("/api/notifications/stream?access_token=valid&since=7")
+            .header(HttpHeaders.ACCEPT, "text/event-stream"));
+
+        assertSame(user, passed.get().getAttribute(AuthenticationFilter.AUTHENTICATED_USER_ATTR));
+        assertEquals("Bearer valid", passed.get().getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+        assertEquals("since=7", passed.get().getRequest().getURI().getRawQuery(), "the token is not forwarded");
+    }
+
+    @Test
+    void queryTokenOfOrdinaryRequestIsDropped() {
+        run(MockServerHttpRequest.get("/api/projects?access_token=valid"));
+
+        assertNull(passed.get().getAttribute(AuthenticationFilter.AUTHENTICATED_USER_ATTR));
+        assertNull(passed.get().getRequest().getURI().getRawQuery());
+    }
+
+    private void run(MockServerHttpRequest.BaseBuilder<?> request) {
+        filter.filter(MockServerWebExchange.from(request), exchange -> {
+            passed.set(exchange);
+            return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .doOnNext(authentication -> principal.set(authentication.getPrincipal()))
+                .then();
+        }).block();
+    }
+}
@@ -0,0 +1,93 @@
+package ru.uni.ecop.gateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.util.context.Context;
+import ru.uni.ecop.gateway.config.AggregationProperties;
+import ru.uni.ecop.gateway.config.AuthProperties;
+import ru.uni.ecop.gateway.dto.AuthenticatedUser;
+import ru.uni.ecop.gateway.security.IdentityHeaders;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AggregationServiceTest {
+
+    private final List<String> requested = new CopyOnWriteArrayList<>();
+    private final List<String> identities = new CopyOnWriteArrayList<>();
+    private IdentityHeaders identityHeaders;
+    private DisposableServer upstream;
+    private AggregationService service;
+
+    @BeforeEach
+    void setUp() {
+        upstream = HttpServer.create()
+            .port(0)
+            .handle((request, response) -> {
+                requested.add(request.uri());
+                String identity = request.requestHeaders().get("X-Gateway-Identity");
+                if (identity != null) {
+                    identities.add(identity);
+                }
+                return response.header("Content-Type", "application/json").sendString(Mono.just("{\"id\":1}"));
+            })
+            .bindNow();
+
+        AggregationProperties.Composition composition = new AggregationProperties.Composition();
+        composition.setSources(List.of(
+            new AggregationProperties.Source("user", "http://localhost:" + upstream.port() + "/api/users/{userId}"),
+            new AggregationProperties.Source("search", "http://localhost:" + upstream.port() + "/api/search?query={query}")));
+        AggregationProperties properties = new AggregationProperties();
+        properties.getCompositions().put("profile", composition);
+        AuthProperties authProperties = new AuthProperties();
+        authProperties.getIdentity().setSecret("identity-secret");
+        identityHeaders = new IdentityHeaders(authProperties);
+        service = new AggregationService(WebClient.builder(), properties, identityHeaders, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        upstream.disposeNow();
+    }
+
+    @Test
+    void encodesReservedCharactersInsideVariables() {
+        Map<String, Object> result = service.aggregate("profile", Map.of("userId", "../../admin", "query", "a&b=c#d"), null)
+            .block();
+
+        assertEquals(false, result.get("partial"));
+        assertTrue(requested.contains("/api/users/..%2F..%2Fadmin"), "the value stays one segment, got " + requested);
+        assertTrue(requested.contains("/api/search?query=a%26b%3Dc%23d"), "the value stays one parameter, got " + requested);
+    }
+
+    @Test
+    void rejectsDotSegmentValues() {
+        Map<String, Object> result = service.aggregate("profile", Map.of("userId", "..", "query", "x"), null).block();
+
+        assertEquals(true, result.get("partial"));
+        assertEquals("unresolved uri", ((Map<?, ?>) result.get("errors")).get("user"));
+        assertTrue(requested.stream().noneMatch(uri -> uri.startsWith("/api/users")), "never sent upstream, got " + requested);
+    }
+
+    @Test
+    void forwardsIdentityOfVerifiedCaller() {
+        AuthenticatedUser user = new AuthenticatedUser("42", List.of("STUDENT"), null, null);
+
+        service.aggregate("profile", Map.of("userId", "42", "query", "x"), "Bearer token")
+            .contextWrite(Context.of(AuthenticatedUser.class, user))
+            .block();
+
+        assertEquals(2, identities.size(), "every source gets the identity");
+        identities.forEach(identity -> assertEquals(user, identityHeaders.decode(identity)));
+    }
+}
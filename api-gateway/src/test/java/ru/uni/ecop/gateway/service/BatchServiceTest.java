@@ -0,0 +1,200 @@
+package ru.uni.ecop.gateway.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebHandler;
+import reactor.core.publisher.Mono;
+import ru.uni.ecop.gateway.config.AdditionalConfig;
+import ru.uni.ecop.gateway.config.AuthProperties;
+import ru.uni.ecop.gateway.config.BatchProperties;
+import ru.uni.ecop.gateway.dto.AuthenticatedUser;
+import ru.uni.ecop.gateway.dto.BatchRequest;
+import ru.uni.ecop.gateway.dto.BatchResult;
+import ru.uni.ecop.gateway.filter.AuthenticationFilter;
+import ru.uni.ecop.gateway.ratelimit.HybridRateLimiter;
+import ru.uni.ecop.gateway.route.RouteTableHandlerMapping;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BatchServiceTest {
+
+    private static final AuthenticatedUser USER = new AuthenticatedUser("42", List.of("STUDENT"), null, null);
+
+    private final BatchProperties properties = new BatchProperties();
+    private final RouteTableHandlerMapping handlerMapping = mock(RouteTableHandlerMapping.class);
+    private final HybridRateLimiter rateLimiter = mock(HybridRateLimiter.class);
+    private final KeyResolver keyResolver = exchange -> Mono.just("42");
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final List<ServerWebExchange> dispatched = Collections.synchronizedList(new ArrayList<>());
+
+    // Answers with the request path as JSON after a short delay, cut short for /api/broken;
+    // unknown paths have no route
+    private final WebHandler upstream = exchange -> {
+        dispatched.add(exchange);
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        String path = exchange.getRequest().getPath().value();
+        byte[] body = (path.equals("/api/broken") ? "{\"path\":" : "{\"path\":\"" + path + "\"}")
+            .getBytes(StandardCharsets.UTF_8);
+        return Mono.delay(Duration.ofMillis(20))
+            .then(Mono.defer(() -> {
+                inFlight.decrementAndGet();
+                exchange.getResponse().setStatusCode(HttpStatus.OK);
+                exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                return exchange.getResponse().writeWith(Mono.just(exchange.getResponse().bufferFactory().wrap(body)));
+            }));
+    };
+
+    BatchServiceTest() {
+        when(handlerMapping.getHandler(any())).thenAnswer(invocation -> {
+            ServerWebExchange exchange = invocation.getArgument(0);
+            return exchange.getRequest().getPath().value().startsWith("/api/")
+                ? Mono.just(upstream)
+                : Mono.empty();
+        });
+        when(rateLimiter.isAllowed(anyString(), anyString()))
+            .thenReturn(Mono.just(new RateLimiter.Response(true, Map.of())));
+    }
+
+    @Test
+    void subRequestsRunThroughTheRouteTableAsTheBatchUser() {
+        BatchService service = service();
+        MockServerWebExchange exchange = batchExchange();
+        BatchRequest batch = batch("/api/projects/1", "/api/users/42", "/unknown");
+
+        assertNull(service.validate(batch));
+        RateLimiter.Response limit = service.rateLimit(exchange).block(Duration.ofSeconds(2));
+        List<BatchResult> results = service.execute(batch, exchange).collectList().block(Duration.ofSeconds(2));
+
+        assertTrue(limit.isAllowed());
+        verify(rateLimiter, times(1)).isAllowed(BatchService.BATCH_ROUTE_ID, "42");
+        assertEquals(List.of("r0", "r1", "r2"), results.stream().map(BatchResult::getId).toList());
+        assertEquals(200, results.get(0).getStatus());
+        assertEquals("/api/projects/1", results.get(0).getBody().get("path").asText());
+        assertEquals(404, results.get(2).getStatus(), "paths without a route are answered per sub-request");
+        for (ServerWebExchange sub : dispatched) {
+            assertEquals(USER, sub.getAttribute(AuthenticationFilter.AUTHENTICATED_USER_ATTR));
+            assertNotNull(sub.getAttribute(BatchService.SUB_REQUEST_ATTR));
+        }
+    }
+
+    @Test
+    void invalidMethodFailsOnlyItsSubRequest() {
+        BatchRequest batch = batch("/api/a", "/api/b", "/api/c");
+        batch.getRequests().get(0).setMethod(null);
+        batch.getRequests().get(1).setMethod("CONNECT");
+
+        List<BatchResult> results = service().execute(batch, batchExchange()).collectList().block(Duration.ofSeconds(2));
+
+        assertEquals(400, results.get(0).getStatus());
+        assertEquals(400, results.get(1).getStatus());
+        assertEquals(200, results.get(2).getStatus());
+        assertEquals(1, dispatched.size(), "invalid sub-requests never reach a route");
+    }
+
+    @Test
+    void malformedJsonIsEmbeddedAsString() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<BatchResult> results = service().execute(batch("/api/broken", "/api/a"), batchExchange())
+            .collectList().block(Duration.ofSeconds(2));
+
+        JsonNode document = objectMapper.readTree(objectMapper.writeValueAsString(Map.of("responses", results)));
+
+        assertEquals("{\"path\":", document.at("/responses/0/body").asText());
+        assertEquals("/api/a", document.at("/responses/1/body/path").asText());
+    }
+
+    @Test
+    void subRequestHeadersNeverOverrideAcceptOrConnection() {
+        BatchRequest batch = batch("/api/a");
+        batch.getRequests().get(0).setHeaders(Map.of(
+            "Accept", "text/html", "Upgrade", "websocket", "Connection", "Upgrade", "X-Request-Id", "abc"));
+
+        service().execute(batch, batchExchange()).collectList().block(Duration.ofSeconds(2));
+
+        HttpHeaders headers = dispatched.get(0).getRequest().getHeaders();
+        assertEquals(List.of(MediaType.APPLICATION_JSON), headers.getAccept());
+        assertNull(headers.getUpgrade());
+        assertTrue(headers.getConnection().isEmpty());
+        assertEquals("abc", headers.getFirst("X-Request-Id"));
+    }
+
+    @Test
+    void subRequestsAreRateLimitedAsTheBatchUser() {
+        service().execute(batch("/api/a"), batchExchange()).collectList().block(Duration.ofSeconds(2));
+
+        assertEquals("42", new AdditionalConfig().userKeyResolver().resolve(dispatched.get(0)).block());
+    }
+
+    @Test
+    void subRequestsRunWithBoundedConcurrency() {
+        properties.setConcurrency(2);
+        BatchRequest batch = batch("/api/a", "/api/b", "/api/c", "/api/d", "/api/e", "/api/f");
+
+        List<BatchResult> results = service().stream(batch, batchExchange()).collectList().block(Duration.ofSeconds(2));
+
+        assertEquals(6, results.size());
+        assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    void rejectsOversizedBatchesAndGatewayPaths() {
+        properties.setMaxRequests(2);
+        BatchService service = service();
+
+        assertNotNull(service.validate(batch("/api/a", "/api/b", "/api/c")));
+        assertNotNull(service.validate(batch("/gateway/batch")));
+        assertNotNull(service.validate(batch("api/a")));
+    }
+
+    private BatchService service() {
+        return new BatchService(properties, new AuthProperties(), handlerMapping, rateLimiter, keyResolver,
+            new ObjectMapper());
+    }
+
+    private static MockServerWebExchange batchExchange() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+            MockServerHttpRequest.post("http://localhost/gateway/batch").header("Authorization", "Bearer valid"));
+        exchange.getAttributes().put(AuthenticationFilter.AUTHENTICATED_USER_ATTR, USER);
+        return exchange;
+    }
+
+    private static BatchRequest batch(String... paths) {
+        List<BatchRequest.SubRequest> requests = new ArrayList<>();
+        for (int i = 0; i < paths.length; i++) {
+            BatchRequest.SubRequest request = new BatchRequest.SubRequest();
+            request.setId("r" + i);
+            request.setPath(paths[i]);
+            requests.add(request);
+        }
+        BatchRequest batch = new BatchRequest();
+        batch.setRequests(requests);
+        return batch;
+    }
+}
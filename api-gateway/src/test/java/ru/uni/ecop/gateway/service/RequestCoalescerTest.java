@@ -0,0 +1,64 @@
+package ru.uni.ecop.gateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestCoalescerTest {
+
+    private final RequestCoalescer<String, String> coalescer =
+        new RequestCoalescer<>("test", new SimpleMeterRegistry());
+
+    @Test
+    void thunderingHerdSharesSingleUpstreamCall() {
+        AtomicInteger upstreamCalls = new AtomicInteger();
+
+        List<String> results = Flux.range(0, 200)
+            .flatMap(i -> coalescer.execute("GET:/api/dashboards/1", () -> {
+                upstreamCalls.incrementAndGet();
+                return Mono.delay(Duration.ofMillis(100)).thenReturn("dashboard");
+            }), 200)
+            .collectList()
+            .block(Duration.ofSeconds(5));
+
+        assertEquals(200, results.size());
+        assertTrue(results.stream().allMatch("dashboard"::equals));
+        assertEquals(1, upstreamCalls.get());
+    }
+
+    @Test
+    void completedCallIsNotReused() {
+        AtomicInteger upstreamCalls = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            coalescer.execute("token", () -> Mono.fromCallable(upstreamCalls::incrementAndGet).map(String::valueOf))
+                .block(Duration.ofSeconds(1));
+        }
+
+        assertEquals(3, upstreamCalls.get());
+    }
+
+    @Test
+    void errorsAreSharedAndReleased() {
+        AtomicInteger upstreamCalls = new AtomicInteger();
+
+        List<String> results = Flux.range(0, 50)
+            .flatMap(i -> coalescer.execute("bad-token", () -> {
+                upstreamCalls.incrementAndGet();
+                return Mono.delay(Duration.ofMillis(50)).then(Mono.<String>error(new IllegalStateException("rejected")));
+            }).onErrorReturn("rejected"), 50)
+            .collectList()
+            .block(Duration.ofSeconds(5));
+
+        assertTrue(results.stream().allMatch("rejected"::equals));
+        assertEquals(1, upstreamCalls.get());
+    }
+}
@@ -0,0 +1,200 @@
+package ru.uni.ecop.gateway.service;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import ru.uni.ecop.gateway.config.JwtProperties;
+import ru.uni.ecop.gateway.dto.AuthenticatedUser;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TokenValidationServiceTest {
+
+    private static final Instant NOW = Instant.now();
+
+    private final KeyPair firstKey = rsaKeyPair();
+    private final KeyPair secondKey = rsaKeyPair();
+    private final AtomicReference<String> jwks = new AtomicReference<>();
+    private final AtomicInteger remoteCalls = new AtomicInteger();
+    private final JwtProperties properties = new JwtProperties();
+    private DisposableServer identityProvider;
+    private DisposableServer coreService;
+    private JwtKeyProvider keyProvider;
+
+    @BeforeEach
+    void setUp() {
+        identityProvider = HttpServer.create()
+            .port(0)
+            .route(routes -> routes.get("/jwks", (request, response) -> response
+                .header("Content-Type", "application/json")
+                .sendString(Mono.fromSupplier(jwks::get))))
+            .bindNow();
+        coreService = HttpServer.create()
+            .port(0)
+            .route(routes -> routes
+                .get("/api/auth/validate", (request, response) -> response
+                    .header("Content-Type", "application/json")
+                    .sendString(Mono.just("{\"userId\":\"7\",\"roles\":[\"TEACHER\"]}")))
+                .get("/api/auth/empty", (request, response) -> {
+                    remoteCalls.incrementAndGet();
+                    return response.status(200).send();
+                })
+                .get("/api/auth/anonymous", (request, response) -> {
+                    remoteCalls.incrementAndGet();
+                    return response.header("Content-Type", "application/json").sendString(Mono.just("{\"roles\":[]}"));
+                }))
+            .bindNow();
+
+        properties.setJwksUri("http://localhost:" + identityProvider.port() + "/jwks");
+        properties.getValidation().setRemoteUri("http://localhost:" + coreService.port() + "/api/auth/validate");
+        properties.getValidation().getCache().setEnabled(false);
+        keyProvider = new JwtKeyProvider(properties);
+        jwks.set(jwks(jwk("first", firstKey)));
+        keyProvider.refreshPublicKeys().block();
+    }
+
+    @AfterEach
+    void tearDown() {
+        identityProvider.disposeNow();
+        coreService.disposeNow();
+    }
+
+    @Test
+    void verifiesTokenSignedWithPublishedKey() {
+        AuthenticatedUser user = service().validate(token("first", firstKey, NOW.plusSeconds(3600))).block();
+
+        assertEquals("42", user.getUserId());
+        assertEquals(List.of("STUDENT"), user.getRoles());
+        assertEquals("premium", user.getTier());
+    }
+
+    @Test
+    void rejectsExpiredToken() {
+        String token = token("first", firstKey, NOW.minusSeconds(3600));
+
+        assertThrows(ExpiredJwtException.class, () -> service().validate(token).block());
+    }
+
+    @Test
+    void rejectsUnknownKeyIdAndForgedSignature() {
+        TokenValidationService service = service();
+
+        assertThrows(JwtKeyProvider.UnknownSigningKeyException.class,
+            () -> service.validate(token("other", firstKey, NOW.plusSeconds(3600))).block());
+        // Published kid, signed by a key the identity provider never published
+        assertThrows(JwtException.class,
+            () -> service.validate(token("first", secondKey, NOW.plusSeconds(3600))).block());
+    }
+
+    @Test
+    void picksUpRotatedKeysOnRefresh() {
+        TokenValidationService service = service();
+        String oldToken = token("first", firstKey, NOW.plusSeconds(3600));
+        String newToken = token("second", secondKey, NOW.plusSeconds(3600));
+
+        jwks.set(jwks(jwk("second", secondKey)));
+        keyProvider.refreshPublicKeys().block();
+
+        assertEquals("42", service.validate(newToken).block().getUserId());
+        assertThrows(JwtKeyProvider.UnknownSigningKeyException.class, () -> service.validate(oldToken).block());
+    }
+
+    @Test
+    void keepsLastKeysAndFallsBackToCoreServiceWhenJwksIsUnreachable() {
+        properties.getValidation().setRemoteFallback(true);
+        TokenValidationService service = service();
+        identityProvider.disposeNow();
+
+        assertThrows(RuntimeException.class, () -> keyProvider.refreshPublicKeys().block());
+        assertEquals("42", service.validate(token("first", firstKey, NOW.plusSeconds(3600))).block().getUserId(),
+            "keys loaded before the outage still verify");
+        assertEquals("7", service.validate(token("second", secondKey, NOW.plusSeconds(3600))).block().getUserId(),
+            "a key the gateway never saw is left to core-service");
+    }
+
+    @Test
+    void rejectsAndCachesRemoteAnswersWithoutUser() {
+        properties.getValidation().setMode(JwtProperties.ValidationMode.REMOTE);
+        properties.getValidation().getCache().setEnabled(true);
+
+        for (String path : List.of("/api/auth/empty", "/api/auth/anonymous")) {
+            properties.getValidation().setRemoteUri("http://localhost:" + coreService.port() + path);
+            TokenValidationService service = service();
+            String token = "opaque-token-" + path;
+            remoteCalls.set(0);
+
+            assertThrows(JwtException.class, () -> service.validate(token).block(), path);
+            assertThrows(JwtException.class, () -> service.validate(token).block(), path);
+            assertEquals(1, remoteCalls.get(), "the rejection of " + path + " is cached");
+        }
+    }
+
+    private TokenValidationService service() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new TokenValidationService(properties,
+            keyProvider,
+            new ValidatedTokenCache(properties, meterRegistry),
+            WebClient.builder(),
+            meterRegistry);
+    }
+
+    private static String token(String keyId, KeyPair key, Instant expiresAt) {
+        return Jwts.builder()
+            .setHeaderParam("kid", keyId)
+            .setSubject("42")
+            .claim("roles", List.of("STUDENT"))
+            .claim("tier", "premium")
+            .setExpiration(Date.from(expiresAt))
+            .signWith(key.getPrivate())
+            .compact();
+    }
+
+    private static String jwks(String... keys) {
+        return "{\"keys\":[" + String.join(",", keys) + "]}";
+    }
+
+    private static String jwk(String keyId, KeyPair key) {
+        RSAPublicKey publicKey = (RSAPublicKey) key.getPublic();
+        return "{\"kty\":\"RSA\",\"kid\":\"" + keyId + "\",\"n\":\"" + base64Url(publicKey.getModulus())
+            + "\",\"e\":\"" + base64Url(publicKey.getPublicExponent()) + "\"}";
+    }
+
+    private static String base64Url(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        int offset = bytes[0] == 0 ? 1 : 0;
+        byte[] unsigned = new byte[bytes.length - offset];
+        System.arraycopy(bytes, offset, unsigned, 0, unsigned.length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(unsigned);
+    }
+
+    private static KeyPair rsaKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
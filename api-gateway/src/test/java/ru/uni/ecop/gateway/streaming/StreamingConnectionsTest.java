@@ -0,0 +1,59 @@
+package ru.uni.ecop.gateway.streaming;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+import ru.uni.ecop.gateway.config.StreamingProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingConnectionsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final StreamingProperties properties = new StreamingProperties();
+
+    @Test
+    void idleConnectionIsReaped() throws InterruptedException {
+        properties.setIdleTimeout(Duration.ofMillis(50));
+        StreamingConnections connections = new StreamingConnections(properties, meterRegistry);
+        EmbeddedChannel channel = new EmbeddedChannel();
+
+        StreamingConnections.Registration registration =
+            connections.open("notification_route", StreamingRequests.Type.SSE, channel);
+        assertEquals(1, connections.getActive("notification_route", StreamingRequests.Type.SSE));
+
+        Thread.sleep(100);
+        channel.runScheduledPendingTasks();
+
+        assertFalse(channel.isOpen(), "closed after the idle timeout");
+        assertEquals(1, meterRegistry.get("gateway.streaming.reaped").counter().count());
+        registration.close();
+        registration.close();
+        assertEquals(0, connections.getActive("notification_route", StreamingRequests.Type.SSE));
+    }
+
+    @Test
+    void countsTrafficAndLeavesKeptAliveConnectionsAlone() {
+        StreamingConnections connections = new StreamingConnections(properties, meterRegistry);
+        EmbeddedChannel channel = new EmbeddedChannel();
+
+        StreamingConnections.Registration registration =
+            connections.open("chat_route", StreamingRequests.Type.WEBSOCKET, channel);
+        channel.writeInbound(Unpooled.copiedBuffer("hello", StandardCharsets.UTF_8));
+        channel.writeOutbound(Unpooled.copiedBuffer("hello back", StandardCharsets.UTF_8));
+        registration.close();
+
+        assertEquals(5, meterRegistry.get("gateway.streaming.bytes").tag("direction", "in").counter().count());
+        assertEquals(10, meterRegistry.get("gateway.streaming.bytes").tag("direction", "out").counter().count());
+        assertTrue(channel.isOpen());
+        assertNull(channel.pipeline().get(StreamingConnections.HANDLER_NAME), "the idle timer goes with the stream");
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,289 @@
+package ru.uni.ecop.gateway.streaming;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
+import org.springframework.cloud.gateway.filter.WebsocketRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import org.springframework.web.reactive.socket.server.support.HandshakeWebSocketService;
+import org.springframework.web.reactive.socket.server.upgrade.ReactorNettyRequestUpgradeStrategy;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import ru.uni.ecop.gateway.config.StreamingProperties;
+import ru.uni.ecop.gateway.config.UpstreamPoolProperties;
+import ru.uni.ecop.gateway.filter.StreamingConnectionFilter;
+import ru.uni.ecop.gateway.filter.UpstreamRoutingFilter;
+import ru.uni.ecop.gateway.route.RouteTableCompiler;
+import ru.uni.ecop.gateway.route.UpstreamHttpClients;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Soak test of the streaming proxy path: a local stub upstream serving an event stream and
+ * a WebSocket echo, and a gateway built from the real routing, response and streaming
+ * filters in front of it, with UpstreamRoutingFilter and its streaming pool as in production.
+ * Only service discovery is stubbed, lb://notification-service resolves to the stub.
+ * Half of the connections read events, the other half exchange messages, all held open at
+ * once for the soak duration. Idle connections are then opened and have to be reaped.
+ * Excluded from the regular test run, run it with mvn test -Psoak. It runs small by
+ * default; for the full size run e.g.
+ * mvn test -Psoak -Dsoak.connections=50000 -Dsoak.seconds=600
+ * after raising the open file limit (ulimit -n) and the local port range.
+ */
+@Tag("soak")
+@Slf4j
+class StreamingSoakTest {
+
+    private static final int CONNECTIONS = Integer.getInteger("soak.connections", 2000);
+    private static final Duration DURATION = Duration.ofSeconds(Long.getLong("soak.seconds", 5));
+    private static final Duration IDLE_TIMEOUT = Duration.ofMillis(500);
+    private static final Duration EVENT_INTERVAL = Duration.ofMillis(100);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong eventsReceived = new AtomicLong();
+    private final AtomicLong messagesEchoed = new AtomicLong();
+    private StreamingConnections connections;
+    private UpstreamHttpClients upstreamClients;
+    private DisposableServer upstream;
+    private DisposableServer gateway;
+
+    @BeforeEach
+    void setUp() {
+        upstream = HttpServer.create()
+            .port(0)
+            .route(routes -> routes
+                .get("/api/notifications/stream", (request, response) -> response
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_EVENT_STREAM_VALUE)
+                    .sendString(Flux.interval(EVENT_INTERVAL).map(i -> "data: " + i + "\n\n")))
+                .get("/api/notifications/quiet", (request, response) -> response
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_EVENT_STREAM_VALUE)
+                    .sendHeaders()
+                    .then(Mono.never()))
+                .ws("/api/chats/ws", (in, out) -> out.sendString(in.receive().asString())))
+            .bindNow();
+
+        StreamingProperties properties = new StreamingProperties();
+        properties.setIdleTimeout(IDLE_TIMEOUT);
+        connections = new StreamingConnections(properties, meterRegistry);
+        UpstreamPoolProperties poolProperties = new UpstreamPoolProperties();
+        poolProperties.setMetrics(false);
+        upstreamClients = new UpstreamHttpClients(poolProperties, new HttpClientProperties());
+
+        Route route = Route.async()
+            .id("streaming_route")
+            .uri(URI.create("lb://notification-service"))
+            .predicate(exchange -> true)
+            .metadata(RouteTableCompiler.STREAMING_METADATA, true)
+            .build();
+        List<GlobalFilter> filters = List.of(
+            new RouteToRequestUrlFilter(),
+            new StreamingConnectionFilter(connections),
+            new NettyWriteResponseFilter(List.of(MediaType.TEXT_EVENT_STREAM)),
+            new ResolveToStub(upstream.port()),
+            new UpstreamRoutingFilter(HttpClient.create(), noHeadersFilters(), new HttpClientProperties(), upstreamClients),
+            new WebsocketRoutingFilter(new ReactorNettyWebSocketClient(),
+                new HandshakeWebSocketService(new ReactorNettyRequestUpgradeStrategy()), noHeadersFilters()));
+        WebFilter routing = (exchange, chain) -> {
+            exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, route);
+            return chain.filter(exchange);
+        };
+        HttpHandler handler = WebHttpHandlerBuilder.webHandler(new FilteringWebHandler(filters))
+            .filter(routing)
+            .build();
+        gateway = HttpServer.create()
+            .port(0)
+            .handle(new ReactorHttpHandlerAdapter(handler))
+            .bindNow();
+    }
+
+    @AfterEach
+    void tearDown() {
+        gateway.disposeNow();
+        upstream.disposeNow();
+        upstreamClients.destroy();
+    }
+
+    @Test
+    void holdsStreamsOpenAndReapsIdleOnes() throws InterruptedException {
+        long heapBefore = usedHeap();
+        List<Disposable> clients = new ArrayList<>();
+        int streams = CONNECTIONS / 2;
+        for (int i = 0; i < streams; i++) {
+            clients.add(eventStream("/api/notifications/stream").subscribe());
+            clients.add(chat(Flux.interval(EVENT_INTERVAL).map(n -> "message " + n)).subscribe());
+        }
+
+        awaitActive(streams, streams, Duration.ofSeconds(60));
+        long perConnection = (usedHeap() - heapBefore) / (2L * streams);
+        Thread.sleep(DURATION.toMillis());
+        log.info("{} connections held for {}: {} events, {} echoed messages, ~{} heap bytes per connection "
+                + "(client and upstream included)",
+            2 * streams, DURATION, eventsReceived.get(), messagesEchoed.get(), perConnection);
+
+        long expected = streams * (DURATION.toMillis() / EVENT_INTERVAL.toMillis()) / 2;
+        assertTrue(eventsReceived.get() >= expected, "events flow through every stream, got " + eventsReceived.get());
+        assertTrue(messagesEchoed.get() >= expected, "messages flow both ways, got " + messagesEchoed.get());
+        assertEquals(streams, connections.getActive("streaming_route", StreamingRequests.Type.SSE),
+            "busy streams are never reaped");
+        assertEquals(streams, connections.getActive("streaming_route", StreamingRequests.Type.WEBSOCKET),
+            "busy sessions are never reaped");
+
+        clients.forEach(Disposable::dispose);
+        awaitActive(0, 0, Duration.ofSeconds(30));
+
+        // Neither side sends anything
+        int idle = Math.min(100, streams);
+        for (int i = 0; i < idle; i++) {
+            clients.add(eventStream("/api/notifications/quiet").subscribe());
+            clients.add(chat(Flux.never()).subscribe());
+        }
+        long deadline = System.nanoTime() + IDLE_TIMEOUT.multipliedBy(20).toNanos();
+        while (reaped() < 2 * idle && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(2 * idle, reaped());
+        awaitActive(0, 0, Duration.ofSeconds(5));
+        clients.forEach(Disposable::dispose);
+    }
+
+    private Flux<String> eventStream(String path) {
+        return HttpClient.newConnection()
+            .port(gateway.port())
+            .headers(headers -> headers.set(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE))
+            .get()
+            .uri(path)
+            .responseContent()
+            .asString()
+            .doOnNext(chunk -> eventsReceived.addAndGet(occurrences(chunk, "data:")))
+            .onErrorResume(e -> Mono.empty());
+    }
+
+    private Flux<Void> chat(Flux<String> messages) {
+        return HttpClient.newConnection()
+            .port(gateway.port())
+            .websocket()
+            .uri("/api/chats/ws")
+            .handle((in, out) -> Mono.when(
+                out.sendString(messages),
+                in.receive().asString().doOnNext(message -> messagesEchoed.incrementAndGet())))
+            .onErrorResume(e -> Mono.empty());
+    }
+
+    private int reaped() {
+        return (int) meterRegistry.find("gateway.streaming.reaped").counters().stream()
+            .mapToDouble(Counter::count)
+            .sum();
+    }
+
+    private void awaitActive(int sse, int websocket, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (connections.getActive("streaming_route", StreamingRequests.Type.SSE) != sse
+            || connections.getActive("streaming_route", StreamingRequests.Type.WEBSOCKET) != websocket) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("expected " + sse + " event streams and " + websocket + " sessions, have "
+                    + connections.getActive("streaming_route", StreamingRequests.Type.SSE) + " and "
+                    + connections.getActive("streaming_route", StreamingRequests.Type.WEBSOCKET));
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private static int occurrences(String text, String token) {
+        int count = 0;
+        for (int i = text.indexOf(token); i >= 0; i = text.indexOf(token, i + token.length())) {
+            count++;
+        }
+        return count;
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static ObjectProvider<List<HttpHeadersFilter>> noHeadersFilters() {
+        return new ObjectProvider<>() {
+            @Override
+            public List<HttpHeadersFilter> getObject(Object... args) {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public List<HttpHeadersFilter> getIfAvailable() {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public List<HttpHeadersFilter> getIfUnique() {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public List<HttpHeadersFilter> getObject() {
+                return new ArrayList<>();
+            }
+        };
+    }
+
+    /**
+     * Stands in for the load balancer at its order, resolves every lb:// request URL to the stub
+     */
+    private record ResolveToStub(int port) implements GlobalFilter, Ordered {
+
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+            URI url = exchange.getRequiredAttribute(GATEWAY_REQUEST_URL_ATTR);
+            if ("lb".equals(url.getScheme())) {
+                exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, UriComponentsBuilder.fromUri(url)
+                    .scheme("http")
+                    .host("localhost")
+                    .port(port)
+                    .build(true)
+                    .toUri());
+            }
+            return chain.filter(exchange);
+        }
+
+        @Override
+        public int getOrder() {
+            return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER;
+        }
+    }
+}